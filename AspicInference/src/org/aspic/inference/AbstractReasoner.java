@@ -12,6 +12,8 @@ import java.util.List;
  * @author mjs (matthew.south@cancer.org.uk)
  */
 abstract class AbstractReasoner {
+	// receives the trace of the dispute (null if nobody's listening)
+	ReasonerTraceListener listener = null;
 	
 	/**
 	 * A defeasible reasoner starts with a non-conflicting
@@ -26,4 +28,23 @@ abstract class AbstractReasoner {
 	 * @return ReasonerPair with either an empty proList and oppList combination or a proof for the support of your original arguments. 
 	 */
 	abstract ReasonerPair evaluate(ReasonerPair testPair, List<RuleArgument> proof);
+	
+	/**
+	 * Called by a Query before it presents it's first argument to <code>evaluate</code>.
+	 * A reasoner that keeps work between the evaluations of a single Query can set it up here.
+	 */
+	void beginQuery() {}
+	
+	/**
+	 * Called by a Query when it has finished with the reasoner.
+	 */
+	void endQuery() {}
+	
+	/**
+	 * Called by a Query before <code>beginQuery</code> to pass on the knowledge base's trace listener.
+	 * @param listener listener for the trace of the dispute, or null.
+	 */
+	void setTraceListener(ReasonerTraceListener listener) {
+		this.listener = listener;
+	}
 }
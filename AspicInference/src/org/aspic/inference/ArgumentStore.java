@@ -0,0 +1,456 @@
+package org.aspic.inference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>All the arguments of a ground knowledge base, developed bottom up, once, rather than top down
+ * for each literal of each query.  Used by KnowledgeBaseSource when it's materialized flag is set,
+ * (see <code>KnowledgeBaseSource.setMaterialized</code>), for agents that ask about most of the
+ * literals of their knowledge base, (and their negations), again and again.  The store is built
+ * from the knowledge base's propositional program, (see PropositionalProgram), so it's rebuilt
+ * whenever the knowledge base's rules change and not otherwise.</p>
+ *
+ * <p>The atoms are developed in the order of the strongly connected components of their dependency
+ * graph, (each atom after the atoms of it's rules' premises), and the arguments for each atom are
+ * the arguments of each of it's rules in turn, (one per list of arguments for the rule's premises),
+ * so an atom that isn't on a cycle gets the same arguments in the same order as when it's developed
+ * top down.  The atoms on a cycle are developed together by semi-naive iteration: each round only
+ * combines lists of premise arguments that include an argument developed in the round before, until
+ * a round develops no new arguments.  As in an ArgumentTable, the arguments for literals whose rules
+ * are recursive drop circular arguments and keep one argument per strength and top rule, so the
+ * iteration always ends.</p>
+ *
+ * <p>Each atom has main arguments, (whose distance from the top is 0, i.e. the arguments of a query
+ * and the attackers), and sub arguments, which share their sub arguments.  The arguments are valuated with the valuator the
+ * store was built with and are shared by every query that uses the store, but they're never handed to
+ * a query as they are: each query gets copies, (see <code>QueryContext.replay</code>), numbered by the
+ * query, so the status and attackers one query finds for an argument aren't seen by another.  The store isn't built, (the arguments are developed top
+ * down as usual), if the knowledge base isn't ground or a premise of one of it's rules is a built in
+ * predicate or a number, as those aren't developed from the knowledge base's rules.</p>
+ *
+ * <p>A store can be built for a slice of the knowledge base, (see <code>KnowledgeBase.getRelevantRuleTags</code>),
+ * in which case only the atoms whose rule tags are in the slice are developed.  As the slice includes
+ * everything those atoms' arguments and their attackers depend on, the store has all the arguments a
+ * query about the slice's literals needs, and the literals outside the slice are left to be developed
+ * top down.</p>
+ */
+class ArgumentStore {
+	private PropositionalProgram program;
+	private KnowledgeBase knowledgeBase;
+	private RuleArgumentValuator valuator;
+	private boolean restrictedRebutting;
+	private Set<String> slice; // the rule tags of the atoms developed, or null if they all are
+	private boolean[] developed; // whether each atom has been developed
+
+	// the sub arguments and main arguments for each atom
+	private List<List<RuleArgument>> arguments;
+	private List<List<RuleArgument>> mainArguments;
+	// the rule tags that the arguments of each atom depend on, found on demand
+	private Map<Integer, Set<String>> ruleTags = new HashMap<Integer, Set<String>>();
+
+	// only used while the store is being built
+	private boolean[] recursive; // whether each atom's rules are recursive, (see KnowledgeBase.isRecursive)
+	private List<Set<String>> answerKeys;
+
+	private ArgumentStore(KnowledgeBase kb, PropositionalProgram program, RuleArgumentValuator valuator, boolean restrictedRebutting, Set<String> slice) {
+		this.knowledgeBase = kb;
+		this.program = program;
+		this.valuator = valuator;
+		this.restrictedRebutting = restrictedRebutting;
+		this.slice = slice;
+	}
+
+	/**
+	 * Develop all the arguments of a knowledge base.
+	 * @param kb knowledge base.
+	 * @param valuator the valuator used to valuate the arguments.
+	 * @param restrictedRebutting restricted rebutting flag.
+	 * @return the store, or null if the knowledge base's arguments can't be developed bottom up.
+	 */
+	static ArgumentStore build(KnowledgeBase kb, RuleArgumentValuator valuator, boolean restrictedRebutting) {
+		return build(kb, valuator, restrictedRebutting, null);
+	}
+
+	/**
+	 * Develop the arguments of a slice of a knowledge base.
+	 * @param kb knowledge base.
+	 * @param valuator the valuator used to valuate the arguments.
+	 * @param restrictedRebutting restricted rebutting flag.
+	 * @param slice the rule tags of the slice, (see <code>KnowledgeBase.getRelevantRuleTags</code>), or null for all of them.
+	 * @return the store, or null if the knowledge base's arguments can't be developed bottom up.
+	 */
+	static ArgumentStore build(KnowledgeBase kb, RuleArgumentValuator valuator, boolean restrictedRebutting, Set<String> slice) {
+		PropositionalProgram program = kb.getPropositionalProgram();
+		if (program==null) return null;
+		ArgumentStore store = new ArgumentStore(kb, program, valuator, restrictedRebutting, slice);
+		// the arguments are developed in a context of their own, rather than the current query's, (and aren't
+		// given numbers from the global counter, as the queries number the copies they're handed).
+		QueryContext context = new QueryContext(kb, null);
+		context.setQueryNumbering(true);
+		QueryContext previous = context.enter();
+		try {
+			if (!store.develop()) return null;
+		} finally {
+			QueryContext.exit(previous);
+		}
+		return store;
+	}
+
+	/**
+	 * The knowledge base that the store was built from.
+	 * @return knowledge base.
+	 */
+	KnowledgeBase getKnowledgeBase() {
+		return knowledgeBase;
+	}
+
+	/**
+	 * The slice of the knowledge base that the store was built for.
+	 * @return the rule tags of the slice, or null if the store has all the knowledge base's arguments.
+	 */
+	Set<String> getSlice() {
+		return slice;
+	}
+
+	/**
+	 * Provide an iterator over the query's copies of the stored arguments for a literal.  See 
+	 * <code>Constant.argumentIterator</code> for the parameters.
+	 * @param context the query's context, (see <code>QueryContext.replay</code>).
+	 * @return Argument Iterator, or null if the literal isn't one of the knowledge base's atoms, (or it's
+	 * outside the store's slice).
+	 */
+	Iterator<RuleArgument> argumentIterator(Constant literal, Double needed, int d_top, final QueryContext context) {
+		int atom = program.getAtom(literal);
+		if (atom<0 || !developed[atom]) return null;
+		List<RuleArgument> result = (d_top==0) ? mainArguments.get(atom) : arguments.get(atom);
+		if (needed>0.0) {
+			List<RuleArgument> supported = new ArrayList<RuleArgument>();
+			for (RuleArgument argument : result) {
+				if (argument.getModifier()>=needed) supported.add(argument);
+			}
+			result = supported;
+		}
+		final Iterator<RuleArgument> stored = result.iterator();
+		return new Iterator<RuleArgument>() {
+			public boolean hasNext() {
+				return stored.hasNext();
+			}
+			public RuleArgument next() {
+				return context.replay(stored.next());
+			}
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Get the rule tags of the atoms that the arguments for a literal were developed from, (the literal's,
+	 * those of the premises of it's rules, and so on).  See <code>QueryContext.dependsOn</code>.
+	 * @param literal a literal that's one of the knowledge base's atoms.
+	 * @return rule tags.
+	 */
+	synchronized Set<String> getRuleTags(Constant literal) {
+		int atom = program.getAtom(literal);
+		Set<String> result = ruleTags.get(atom);
+		if (result==null) {
+			result = new HashSet<String>();
+			BitSet visited = new BitSet(program.size());
+			List<Integer> stack = new ArrayList<Integer>();
+			stack.add(atom);
+			visited.set(atom);
+			while (!stack.isEmpty()) {
+				int current = stack.remove(stack.size()-1);
+				result.add(program.getLiteral(current).ruleTag());
+				for (int rule : program.getRules(current)) {
+					for (int premise : program.getPremises(rule)) {
+						if (!visited.get(premise)) {
+							visited.set(premise);
+							stack.add(premise);
+						}
+					}
+				}
+			}
+			ruleTags.put(atom, result);
+		}
+		return result;
+	}
+
+	/*
+	 * Develop the arguments of the atoms, (unless one of them is a built in predicate or a number).
+	 * @return true if they've been developed.
+	 */
+	private boolean develop() {
+		int size = program.size();
+		List<int[]> components = components();
+		for (int[] component : components) {
+			for (int atom : component) {
+				Class<?> type = program.getLiteral(atom).getClass();
+				if (type!=Constant.class && type!=Term.class) return false;
+			}
+		}
+		List<RuleArgument> none = Collections.emptyList();
+		arguments = new ArrayList<List<RuleArgument>>(Collections.nCopies(size, none));
+		mainArguments = new ArrayList<List<RuleArgument>>(Collections.nCopies(size, none));
+		answerKeys = new ArrayList<Set<String>>(Collections.<Set<String>>nCopies(size, null));
+		recursive = new boolean[size];
+		developed = new boolean[size];
+		for (int[] component : components) {
+			for (int atom : component) {
+				developed[atom] = true;
+				arguments.set(atom, new ArrayList<RuleArgument>());
+				recursive[atom] = knowledgeBase.isRecursive(program.getLiteral(atom).ruleTag());
+			}
+		}
+		for (int[] component : components) {
+			if (component.length==1 && !isSelfDependent(component[0])) {
+				developAtom(component[0]);
+			} else {
+				developComponent(component);
+			}
+		}
+		for (int atom=0; atom<size; atom++) {
+			if (!developed[atom]) continue;
+			List<RuleArgument> main = new ArrayList<RuleArgument>(arguments.get(atom).size());
+			for (RuleArgument argument : arguments.get(atom)) {
+				main.add(new RuleArgument(argument.getTopRule(), argument.getModifier(), argument.getSubstitution(), argument.getSubArgumentList(), Party.PRO, 0, 0, valuator, restrictedRebutting));
+			}
+			mainArguments.set(atom, main);
+		}
+		answerKeys = null;
+		recursive = null;
+		return true;
+	}
+
+	/*
+	 * Develop an atom that isn't on a cycle, all of it's premises having been developed.
+	 */
+	private void developAtom(int atom) {
+		for (int rule : program.getRules(atom)) {
+			int[] premises = program.getPremises(rule);
+			int[] from = new int[premises.length];
+			int[] to = new int[premises.length];
+			for (int i=0; i<premises.length; i++) {
+				to[i] = arguments.get(premises[i]).size();
+			}
+			combine(atom, rule, from, to);
+		}
+	}
+
+	/*
+	 * Develop the atoms of a strongly connected component by semi-naive iteration, all of the
+	 * premises outside the component having been developed.
+	 */
+	private void developComponent(int[] component) {
+		Set<Integer> members = new HashSet<Integer>();
+		for (int atom : component) members.add(atom);
+		// the arguments developed in the round before are those from deltaStart to deltaEnd
+		int[] deltaStart = new int[program.size()];
+		int[] deltaEnd = new int[program.size()];
+		// the first round: the rules without premises in the component
+		for (int atom : component) {
+			for (int rule : program.getRules(atom)) {
+				int[] premises = program.getPremises(rule);
+				boolean external = true;
+				for (int premise : premises) {
+					if (members.contains(premise)) external = false;
+				}
+				if (external) {
+					int[] to = new int[premises.length];
+					for (int i=0; i<premises.length; i++) {
+						to[i] = arguments.get(premises[i]).size();
+					}
+					combine(atom, rule, new int[premises.length], to);
+				}
+			}
+		}
+		boolean developed = true;
+		while (developed) {
+			for (int atom : component) {
+				deltaStart[atom] = deltaEnd[atom];
+				deltaEnd[atom] = arguments.get(atom).size();
+			}
+			developed = false;
+			for (int atom : component) {
+				for (int rule : program.getRules(atom)) {
+					int[] premises = program.getPremises(rule);
+					// combine the new arguments of each premise in the component with the old arguments of the
+					// premises before it and all the arguments of the premises after it, (each combination once).
+					for (int i=0; i<premises.length; i++) {
+						if (!members.contains(premises[i]) || deltaStart[premises[i]]==deltaEnd[premises[i]]) continue;
+						int[] from = new int[premises.length];
+						int[] to = new int[premises.length];
+						for (int j=0; j<premises.length; j++) {
+							int premise = premises[j];
+							if (!members.contains(premise)) {
+								to[j] = arguments.get(premise).size();
+							} else if (j<i) {
+								to[j] = deltaStart[premise];
+							} else if (j==i) {
+								from[j] = deltaStart[premise];
+								to[j] = deltaEnd[premise];
+							} else {
+								to[j] = deltaEnd[premise];
+							}
+						}
+						if (combine(atom, rule, from, to)) developed = true;
+					}
+				}
+			}
+		}
+	}
+
+	/*
+	 * Develop the arguments of a rule for each list of it's premises' arguments from the given
+	 * ranges, (the last premise's argument changing fastest).
+	 * @return true if any new arguments were added.
+	 */
+	private boolean combine(int atom, int rule, int[] from, int[] to) {
+		Rule topRule = program.getRule(rule);
+		int[] premises = program.getPremises(rule);
+		for (int i=0; i<premises.length; i++) {
+			if (from[i]>=to[i]) return false;
+		}
+		boolean added = false;
+		int[] position = from.clone();
+		while (true) {
+			RuleArgumentList subArgs = new RuleArgumentList();
+			for (int i=0; i<premises.length; i++) {
+				subArgs = subArgs.cloneAndExtend(arguments.get(premises[i]).get(position[i]));
+			}
+			double support = (premises.length==0) ? topRule.getDob() : subArgs.valuate(valuator);
+			RuleArgument argument = new RuleArgument(topRule, support, new Substitution(), subArgs, Party.PRO, 1, 1, valuator, restrictedRebutting);
+			if (!recursive[atom] || accept(atom, rule, argument)) {
+				arguments.get(atom).add(argument);
+				added = true;
+			}
+			// move on to the next list
+			int i = premises.length-1;
+			while (i>=0 && ++position[i]==to[i]) {
+				position[i] = from[i];
+				i--;
+			}
+			if (i<0) return added;
+		}
+	}
+
+	/*
+	 * Check whether the arguments for a recursive literal should keep an argument: it mustn't be
+	 * circular, and mustn't have the same strength and top rule as one that's been kept, (c.f. ArgumentTable).
+	 */
+	private boolean accept(int atom, int rule, RuleArgument argument) {
+		Iterator<RuleArgument> itr = argument.subArgumentIterator();
+		itr.next(); // skip the argument itself
+		while (itr.hasNext()) {
+			if (itr.next().getClaim().equals(argument.getClaim())) return false;
+		}
+		if (answerKeys.get(atom)==null) answerKeys.set(atom, new HashSet<String>());
+		return answerKeys.get(atom).add(rule + "@" + argument.getModifier());
+	}
+
+	private boolean isSelfDependent(int atom) {
+		for (int rule : program.getRules(atom)) {
+			for (int premise : program.getPremises(rule)) {
+				if (premise==atom) return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * The atoms the store develops, (with the atoms they depend on): all of them, or the atoms of the slice, in order.
+	 */
+	private int[] roots() {
+		int[] result;
+		if (slice==null) {
+			result = new int[program.size()];
+			for (int atom=0; atom<result.length; atom++) result[atom] = atom;
+		} else {
+			BitSet atoms = new BitSet(program.size());
+			for (String ruleTag : slice) {
+				for (int atom : program.getAtoms(ruleTag)) atoms.set(atom);
+			}
+			result = new int[atoms.cardinality()];
+			int i = 0;
+			for (int atom=atoms.nextSetBit(0); atom>=0; atom=atoms.nextSetBit(atom+1)) result[i++] = atom;
+		}
+		return result;
+	}
+
+	/*
+	 * The strongly connected components of the dependency graph of the atoms, (from each atom to the premises
+	 * of it's rules), each after the components it depends on, (only the atoms of the slice and the atoms they depend on).  Tarjan's algorithm, without recursion, as in
+	 * KnowledgeBase.findRecursiveRuleTags.
+	 */
+	private List<int[]> components() {
+		int size = program.size();
+		List<int[]> result = new ArrayList<int[]>();
+		int[] index = new int[size];
+		int[] lowLink = new int[size];
+		boolean[] onComponent = new boolean[size];
+		Arrays.fill(index, -1);
+		int counter = 0;
+		List<Integer> component = new ArrayList<Integer>();
+		// the path: each atom, with the rule and premise of it's next successor
+		int[] path = new int[size];
+		int[] pathRule = new int[size];
+		int[] pathPremise = new int[size];
+		for (int root : roots()) {
+			if (index[root]>=0) continue;
+			int depth = 0;
+			int node = root;
+			while (node>=0) {
+				// visit node
+				index[node] = lowLink[node] = counter++;
+				component.add(node);
+				onComponent[node] = true;
+				path[depth] = node;
+				pathRule[depth] = 0;
+				pathPremise[depth] = 0;
+				depth++;
+				node = -1;
+				while (node<0 && depth>0) {
+					int current = path[depth-1];
+					int[] rules = program.getRules(current);
+					if (pathRule[depth-1]<rules.length) {
+						int[] premises = program.getPremises(rules[pathRule[depth-1]]);
+						if (pathPremise[depth-1]<premises.length) {
+							int successor = premises[pathPremise[depth-1]++];
+							if (index[successor]<0) {
+								node = successor;
+							} else if (onComponent[successor]) {
+								lowLink[current] = Math.min(lowLink[current], index[successor]);
+							}
+						} else {
+							pathRule[depth-1]++;
+							pathPremise[depth-1] = 0;
+						}
+					} else {
+						depth--;
+						if (depth>0) lowLink[path[depth-1]] = Math.min(lowLink[path[depth-1]], lowLink[current]);
+						if (lowLink[current]==index[current]) {
+							int start = component.lastIndexOf(current);
+							int[] members = new int[component.size()-start];
+							for (int i=start; i<component.size(); i++) {
+								members[i-start] = component.get(i);
+								onComponent[component.get(i)] = false;
+							}
+							component.subList(start, component.size()).clear();
+							result.add(members);
+						}
+					}
+				}
+			}
+		}
+		return result;
+	}
+}
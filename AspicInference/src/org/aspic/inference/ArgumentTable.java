@@ -0,0 +1,428 @@
+package org.aspic.inference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>A table of the arguments that have been developed for each literal during a single Query.
+ * The reasoners ask for the same literals over and over again, (e.g. the attackers of a
+ * sub-argument are sought at every level of a dialogue that the sub-argument appears in),
+ * so rather than rebuilding the same argument trees from the knowledge base, the table
+ * develops them once and replays them to any later request for the same literal.</p>
+ *
+ * <p>Entries are keyed by the literal's argument tag: the literal with it's variables
+ * numbered by first occurence, (so that p(X, Y, X) and p(A, B, A) share an entry), plus
+ * the <code>needed</code> threshold and whether the arguments are main arguments or
+ * sub arguments.  Entries are filled lazily, so a reasoner that only needs the first
+ * attacker of an argument will only ever cause the first attacker to be developed.
+ * When a replayed literal is a variant of the tabled one, the arguments are
+ * renamed so that their substitution binds the requesting literal's variables.</p>
+ *
+ * <p>If a request arrives for a literal whose entry is still being developed, (i.e.
+ * the literal depends on itself through recursive rules), the request consumes the arguments
+ * the entry has developed so far, rather than developing the literal all over again, which would
+ * never end.  The entry, and every entry that is being developed on top of it, may then be
+ * missing arguments, so these entries are developed again, in rounds, until a round adds no new
+ * arguments to the table, at which point they're complete.  This is the completion strategy of
+ * SLG resolution, (tabled resolution as in XSB), adapted to the lazy argument iterators.</p>
+ *
+ * <p>The entries for literals whose rules are recursive, (see <code>KnowledgeBase.isRecursive</code>),
+ * drop circular arguments, i.e. those with a sub argument for their own claim, and only keep one
+ * argument per claim, strength and (instantiated) top rule, so that cyclic knowledge bases are
+ * developed in polynomial time.  The entries for other literals are developed exactly as before.
+ * Recursion through ever deeper terms, (e.g. p(X) &lt;- p(f(X))), still doesn't terminate, and
+ * without a table there's no loop detection at all.</p>
+ *
+ * <p>A table is only valid while the knowledge base, valuator and restricted rebutting
+ * flag that it was built with are unchanged, so it is owned by a single Query and is
+ * discarded when the Query has been evaluated.</p>
+ */
+class ArgumentTable {
+	private static Logger logger = Logger.getLogger(ArgumentTable.class.getName());
+
+	private Map<String, Entry> entries = new HashMap<String, Entry>();
+	private List<Entry> stack = new ArrayList<Entry>(); // the entries being developed, innermost last
+	private int answers = 0; // number of arguments added to the table, used to detect a fixpoint
+	private int hits = 0;
+	private int misses = 0;
+
+	/**
+	 * Provide an iterator over the arguments for <code>literal</code>, developing them
+	 * from the knowledge base only if they haven't been developed already.
+	 * See <code>Constant.argumentIterator</code> for the parameters.
+	 */
+	Iterator<RuleArgument> argumentIterator(Constant literal, Double needed, Party party, int level, int d_top, RuleArgumentValuator valuator, boolean restrictedRebutting) {
+		List<Variable> variables = new ArrayList<Variable>();
+		StringBuffer tag = new StringBuffer();
+		appendArgumentTag(literal, variables, tag);
+		tag.append("_").append(needed.toString());
+		String key = (d_top==0) ? tag.append("_main").toString() : tag.toString();
+		Entry entry = entries.get(key);
+		if (entry==null) {
+			misses++;
+			entry = new Entry(literal, variables, needed, party, level, d_top, valuator, restrictedRebutting);
+			// NB the entry has to be in the table before the producer is created, as the producer looks ahead.
+			entries.put(key, entry);
+			entry.startRound();
+		} else if (entry.producing) {
+			if (logger.isLoggable(Level.FINE)) logger.fine(party.toString() + ": " + literal.inspect() + " depends on itself, consuming the arguments developed so far");
+			dependsOn(entry);
+		} else {
+			hits++;
+			if (logger.isLoggable(Level.FINE)) logger.fine(party.toString() + ": replaying arguments for literal " + literal.inspect());
+		}
+		return new TableIterator(entry, variables, party, level, d_top, valuator, restrictedRebutting);
+	}
+
+	/**
+	 * Number of requests that were answered from the table.
+	 * @return number of table hits.
+	 */
+	int getHits() {
+		return hits;
+	}
+
+	/**
+	 * Number of requests that needed a new table entry.
+	 * @return number of table misses.
+	 */
+	int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Append a tag to <code>tag</code> that identifies <code>element</code> modulo variable renaming,
+	 * collecting the element's distinct variables, in order of first occurence, into <code>variables</code>.
+	 */
+	private static void appendArgumentTag(Element element, List<Variable> variables, StringBuffer tag) {
+		if (element instanceof Variable) {
+			int index = variables.indexOf(element);
+			if (index<0) {
+				index = variables.size();
+				variables.add((Variable) element);
+			}
+			tag.append("_G").append(index);
+		} else if (element instanceof Term) {
+			tag.append(((Term) element).getFunctor()).append("(");
+			appendArgumentTag(((Term) element).getArgList(), variables, tag);
+			tag.append(")");
+		} else if (element instanceof ElementList) {
+			Iterator<Element> itr = ((ElementList) element).iterator();
+			while (itr.hasNext()) {
+				appendArgumentTag(itr.next(), variables, tag);
+				if (itr.hasNext()) tag.append(", ");
+			}
+		} else if (element instanceof Constant) {
+			tag.append(((Constant) element).getFunctor());
+		} else {
+			tag.append(element.inspect());
+		}
+	}
+
+	/**
+	 * Called when a consumer has replayed all the arguments of an entry that is still being developed:
+	 * the entry, and every entry that is being developed on top of it, may be missing arguments.
+	 */
+	private void dependsOn(Entry target) {
+		int position = stack.lastIndexOf(target);
+		target.roundRecursive = true;
+		for (int i=position+1; i<stack.size(); i++) {
+			Entry entry = stack.get(i);
+			entry.roundRecursive = true;
+			entry.roundTargets.add(target);
+			target.members.add(entry);
+		}
+	}
+
+	/**
+	 * The arguments developed so far for one literal variant, and the iterator
+	 * that develops the rest of them.
+	 */
+	private class Entry {
+		private Constant literal;
+		private List<Variable> variables;
+		private List<RuleArgument> arguments = new ArrayList<RuleArgument>();
+		private Iterator<RuleArgument> producer = null;
+		private boolean producing = false;
+		private boolean complete = false;
+
+		// the parameters that the arguments are developed with, needed to start another round.
+		private Double needed;
+		private Party party;
+		private int level;
+		private int d_top;
+		private RuleArgumentValuator valuator;
+		private boolean restrictedRebutting;
+
+		// whether the literal's rules are recursive, in which case circular and repeated arguments are dropped.
+		private boolean recursive;
+		private Set<String> answerKeys = null;
+
+		// these are only used once the entry turns out to depend on itself.
+		private boolean roundRecursive = false; // whether the current round consumed an incomplete entry
+		private int roundStart; // the number of answers in the table when the current round started
+		private Set<Entry> roundTargets = new HashSet<Entry>(); // the other entries this round consumed while they were incomplete
+		private Set<Entry> members = new LinkedHashSet<Entry>(); // entries that consumed this one while it was incomplete
+
+		Entry(Constant literal, List<Variable> variables, Double needed, Party party, int level, int d_top, RuleArgumentValuator valuator, boolean restrictedRebutting) {
+			this.literal = literal;
+			this.variables = variables;
+			this.needed = needed;
+			this.party = party;
+			this.level = level;
+			this.d_top = d_top;
+			this.valuator = valuator;
+			this.restrictedRebutting = restrictedRebutting;
+			this.recursive = QueryContext.getKnowledgeBase(literal.getKnowledgeBase()).isRecursive(literal.ruleTag());
+		}
+
+		/**
+		 * Make sure that the argument at <code>index</code> has been developed, if it exists.
+		 * @return true if there is an argument at <code>index</code>.
+		 */
+		boolean develop(int index) {
+			while (index>=arguments.size()) {
+				if (producing) {
+					// the entry depends on itself, so there may be more to come in a later round.
+					dependsOn(this);
+					return false;
+				} else if (complete) {
+					return false;
+				} else if (producer==null) {
+					// an incomplete recursive entry: only worth another round if the table has changed since the last.
+					if (answers==roundStart) return false;
+					startRound();
+				} else if (produce()) {
+					return true;
+				} else if (!endRound()) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Start a (new) round of development from the knowledge base.
+		 */
+		void startRound() {
+			roundRecursive = false;
+			roundTargets.clear();
+			roundStart = answers;
+			push();
+			try {
+				producer = literal.untabledArgumentIterator(needed, party, level, d_top, valuator, restrictedRebutting);
+			} finally {
+				pop();
+			}
+		}
+
+		/**
+		 * Develop the next new argument of the current round.
+		 * @return true if an argument was added, false if the round is over.
+		 */
+		private boolean produce() {
+			push();
+			try {
+				while (producer.hasNext()) {
+					RuleArgument argument = producer.next();
+					if (!recursive || accept(argument)) {
+						arguments.add(argument);
+						answers++;
+						return true;
+					}
+				}
+				producer = null;
+				return false;
+			} finally {
+				pop();
+			}
+		}
+
+		/**
+		 * Decide what to do once a round is over.
+		 * @return true if another round should be started straight away.
+		 */
+		private boolean endRound() {
+			if (!roundRecursive) {
+				complete();
+				return false;
+			}
+			Iterator<Entry> itr = roundTargets.iterator();
+			while (itr.hasNext()) {
+				// leave it to the entry underneath to start the next round
+				if (itr.next().producing) return false;
+			}
+			if (answers!=roundStart) {
+				return true;
+			}
+			// a fixpoint, so this entry and those that depend on it are complete.
+			complete();
+			Iterator<Entry> memberIterator = members.iterator();
+			while (memberIterator.hasNext()) {
+				Entry member = memberIterator.next();
+				if (member.isSettled(roundStart)) member.complete();
+			}
+			members.clear();
+			return false;
+		}
+
+		private void complete() {
+			complete = true;
+			roundTargets.clear();
+			answerKeys = null;
+		}
+
+		/**
+		 * Whether a member's last round started after <code>start</code>, is over, and didn't
+		 * depend on any entry that is still being developed.
+		 */
+		private boolean isSettled(int start) {
+			if (complete || producer!=null || producing || roundStart<start) return false;
+			Iterator<Entry> itr = roundTargets.iterator();
+			while (itr.hasNext()) {
+				if (itr.next().producing) return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Check whether the entry for a recursive literal should keep an argument: it mustn't be
+		 * circular, and the entry mustn't already have the same argument, up to it's sub arguments.
+		 */
+		private boolean accept(RuleArgument argument) {
+			Iterator<RuleArgument> itr = argument.subArgumentIterator();
+			itr.next(); // skip the argument itself
+			while (itr.hasNext()) {
+				if (itr.next().getClaim().isEqualModuloVariables(argument.getClaim())) return false;
+			}
+			if (answerKeys==null) {
+				answerKeys = new HashSet<String>();
+				for (RuleArgument answer : arguments) answerKeys.add(answerKey(answer));
+			}
+			return answerKeys.add(answerKey(argument));
+		}
+
+		private String answerKey(RuleArgument argument) {
+			List<Variable> answerVariables = new ArrayList<Variable>();
+			StringBuffer key = new StringBuffer();
+			appendArgumentTag(argument.getClaim(), answerVariables, key);
+			key.append("@").append(argument.getModifier()).append("#").append(argument.getTopRule().inspect());
+			return key.toString();
+		}
+
+		private void push() {
+			producing = true;
+			stack.add(this);
+		}
+
+		private void pop() {
+			stack.remove(stack.size()-1);
+			producing = false;
+		}
+	}
+
+	/**
+	 * Replays (and extends) the arguments of an entry for a particular request.
+	 */
+	private class TableIterator implements Iterator<RuleArgument> {
+		private Entry entry;
+		private int index = 0;
+		private Substitution renaming = null; // null if the request used the same variables as the entry
+
+		private Party party;
+		private int level;
+		private int d_top;
+		private RuleArgumentValuator valuator;
+		private boolean restrictedRebutting;
+
+		TableIterator(Entry entry, List<Variable> variables, Party party, int level, int d_top, RuleArgumentValuator valuator, boolean restrictedRebutting) {
+			this.entry = entry;
+			this.party = party;
+			this.level = level;
+			this.d_top = d_top;
+			this.valuator = valuator;
+			this.restrictedRebutting = restrictedRebutting;
+			if (!variables.equals(entry.variables)) {
+				renaming = new Substitution();
+				for (int i=0; i<variables.size(); i++) {
+					renaming.add(entry.variables.get(i), variables.get(i));
+				}
+			}
+		}
+
+		public boolean hasNext() {
+			return entry.develop(index);
+		}
+
+		public RuleArgument next() {
+			if (entry.develop(index)) {
+				RuleArgument argument = entry.arguments.get(index++);
+				return (renaming==null) ? argument : rename(argument);
+			} else {
+				throw new NoSuchElementException();
+			}
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * Copy the top of <code>argument</code> so that it's claim and substitution refer to
+		 * the requesting literal's variables.  The sub arguments are shared.
+		 */
+		private RuleArgument rename(RuleArgument argument) {
+			Substitution original = argument.getSubstitution();
+			Substitution substitution = new Substitution();
+			if (isCapturing(original)) {
+				// a recursive rule is replaying it's own arguments, which bind the requesting variables
+				// already, so only the (resolved) bindings of the entry's variables are passed on.
+				for (int i=0; i<entry.variables.size(); i++) {
+					Variable key = entry.variables.get(i);
+					substitution.add((Variable) key.apply(renaming), resolve(key, original).apply(renaming));
+				}
+			} else {
+				Iterator<Variable> itr = original.variables().iterator();
+				while (itr.hasNext()) {
+					Variable key = itr.next();
+					substitution.add((Variable) key.apply(renaming), original.get(key).apply(renaming));
+				}
+			}
+			return new RuleArgument(argument.getTopRule().apply(renaming), argument.getModifier(), substitution, argument.getSubArgumentList(), party, level, d_top, valuator, restrictedRebutting);
+		}
+
+		/**
+		 * Check whether <code>substitution</code> binds any of the requesting literal's variables
+		 * that would be renamed into.
+		 */
+		private boolean isCapturing(Substitution substitution) {
+			Iterator<Variable> itr = renaming.variables().iterator();
+			while (itr.hasNext()) {
+				Variable target = (Variable) renaming.get(itr.next());
+				if (substitution.containsVariable(target) && !entry.variables.contains(target)) return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Apply <code>substitution</code> to <code>element</code> until it's grounded, or as
+		 * many times as there are bindings, (so that any chain of bindings is followed).
+		 */
+		private Element resolve(Element element, Substitution substitution) {
+			int bindings = substitution.variables().size();
+			for (int i=0; i<=bindings && !element.isGrounded(); i++) {
+				element = element.apply(substitution);
+			}
+			return element;
+		}
+	}
+}
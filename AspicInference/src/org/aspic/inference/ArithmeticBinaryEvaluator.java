@@ -1,7 +1,6 @@
 package org.aspic.inference;
 
 import java.util.Iterator;
-import java.util.logging.Logger;
 
 
 /**
@@ -14,7 +13,6 @@ import java.util.logging.Logger;
  *
  */
 public abstract class ArithmeticBinaryEvaluator extends Binary {
-	private static Logger logger = Logger.getLogger(ArithmeticBinaryEvaluator.class.getName());		
 
 	/**
 	 * Typical constructor.
@@ -48,11 +46,11 @@ public abstract class ArithmeticBinaryEvaluator extends Binary {
 				Rule topRule = new Rule(this);
 				topRule.setKnowledgeBase(this.getKnowledgeBase());
 				Substitution subs = subsLeft.compose(subsRight);
-				RuleArgument argument = new RuleArgument(topRule, new Double(1.0), subs, new RuleArgumentList(), party, level, d_top, valuator, restrictedRebutting);
-				logger.fine(party + " : found " + argument.getName() + " : " + argument.inspect());
+				RuleArgument argument = new RuleArgument(topRule, 1.0, subs, new RuleArgumentList(), party, level, d_top, valuator, restrictedRebutting);
+				if (getTraceListener()!=null) getTraceListener().argumentFound(party, level, argument);
 				return new SingleArgumentIterator(argument);
 			} else {
-				logger.fine(party + ": unable to develop argument for " + this.inspect() + ".");
+				if (getTraceListener()!=null) getTraceListener().literalFailed(party, level, this);
 				return new EmptyArgumentIterator();
 			}
 		} else {
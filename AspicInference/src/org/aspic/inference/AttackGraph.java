@@ -0,0 +1,140 @@
+package org.aspic.inference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>A materialized argumentation framework.  Each argument is given a dense int id
+ * (in order of discovery) and the defeat relation is stored as primitive adjacency
+ * arrays, where the defeaters of an argument are the arguments that successfully
+ * attack it or any of it's sub-arguments (as yielded by
+ * <code>RuleArgument.deepSuccessfulAttackingArgumentIterator</code>).</p>
+ *
+ * <p>The framework is grown on demand: adding an argument also adds all of it's
+ * defeaters, their defeaters, and so on.  So the framework is always closed
+ * under defeat and the status of any argument in it, under any semantics that
+ * respects directionality, can be decided within the framework.  Arguments that
+ * were added earlier never gain new defeaters when the framework grows.</p>
+ *
+ * <p>Two arguments with the same structure are the same node, so the framework
+ * stays finite even when the reasoner's argument source develops a fresh copy of
+ * an argument every time it's sought.  The nodes are hashed on the arguments' 
+ * fingerprints, (see <code>RuleArgument.getFingerprint</code>), and arguments with
+ * the same fingerprint are only the same node if they're semantically equal and
+ * have the same support.</p>
+ */
+class AttackGraph {
+	private static Logger logger = Logger.getLogger(AttackGraph.class.getName());
+
+	// the ids of the arguments with each fingerprint
+	private Map<Long, List<Integer>> ids = new HashMap<Long, List<Integer>>();
+	private List<RuleArgument> arguments = new ArrayList<RuleArgument>();
+	private int[][] defeaters = new int[16][];
+
+	/**
+	 * Number of arguments in the framework.
+	 * @return number of arguments.
+	 */
+	int size() {
+		return arguments.size();
+	}
+
+	/**
+	 * Get the argument with a particular id.
+	 * @param id argument id.
+	 * @return argument.
+	 */
+	RuleArgument getArgument(int id) {
+		return arguments.get(id);
+	}
+
+	/**
+	 * Get the ids of the arguments that defeat a particular argument.
+	 * @param id argument id.
+	 * @return array of defeater ids (without duplicates).
+	 */
+	int[] getDefeaters(int id) {
+		return defeaters[id];
+	}
+
+	/**
+	 * Get the id of an argument that's already in the framework.
+	 * @param argument argument to look up.
+	 * @return the argument's id or -1 if it's not in the framework.
+	 */
+	int getId(RuleArgument argument) {
+		List<Integer> candidates = ids.get(argument.getFingerprint());
+		if (candidates!=null) {
+			for (int id : candidates) {
+				RuleArgument candidate = arguments.get(id);
+				if (candidate.getModifier()==argument.getModifier() && candidate.isSemanticallyEqual(argument)) return id;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Add an argument, and everything that's needed to decide it's status, to the framework.
+	 * @param argument argument to add.
+	 * @return the argument's id.
+	 */
+	int add(RuleArgument argument) {
+		int id = getId(argument);
+		if (id>=0) return id;
+		id = newNode(argument);
+		// expand the new nodes in order of discovery: the nodes between 'expanded' and size() still need their defeaters.
+		int expanded = id;
+		while (expanded<arguments.size()) {
+			RuleArgument victim = arguments.get(expanded);
+			int[] found = new int[4];
+			int count = 0;
+			Iterator<RuleArgument> itrDefeaters = victim.deepSuccessfulAttackingArgumentIterator(Party.OPP, 0);
+			defeaterLoop:
+			while (itrDefeaters.hasNext()) {
+				RuleArgument defeater = itrDefeaters.next();
+				int defeaterId = getId(defeater);
+				if (defeaterId<0) {
+					defeaterId = newNode(defeater);
+				} else {
+					for (int i=0; i<count; i++) {
+						if (found[i]==defeaterId) continue defeaterLoop;
+					}
+				}
+				if (count==found.length) found = grow(found, count*2);
+				found[count++] = defeaterId;
+			}
+			defeaters[expanded] = (count==found.length) ? found : grow(found, count);
+			expanded++;
+		}
+		if (logger.isLoggable(Level.FINE)) logger.fine("Attack graph has " + arguments.size() + " arguments after adding " + argument.getName());
+		return id;
+	}
+
+	private int newNode(RuleArgument argument) {
+		int id = arguments.size();
+		arguments.add(argument);
+		List<Integer> candidates = ids.get(argument.getFingerprint());
+		if (candidates==null) {
+			candidates = new ArrayList<Integer>(1);
+			ids.put(argument.getFingerprint(), candidates);
+		}
+		candidates.add(id);
+		if (id==defeaters.length) {
+			int[][] larger = new int[id*2][];
+			System.arraycopy(defeaters, 0, larger, 0, id);
+			defeaters = larger;
+		}
+		return id;
+	}
+
+	private static int[] grow(int[] array, int length) {
+		int[] result = new int[length];
+		System.arraycopy(array, 0, result, 0, Math.min(array.length, length));
+		return result;
+	}
+}
@@ -0,0 +1,268 @@
+package org.aspic.inference;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>An immutable map from Variables to Elements, implemented as a hash array mapped trie.
+ * Each level of the trie consumes 5 bits of the variable's hash and stores only the slots
+ * that are in use, (a bitmap records which ones), so lookups and updates are O(log n) and
+ * an update copies only the path from the root to the changed slot.  Everything else is
+ * shared with the original trie, which is left unchanged.</p>
+ *
+ * <p>Used by Substitution so that cloning and extending a substitution doesn't copy all
+ * of it's bindings.</p>
+ */
+final class BindingTrie implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	static final BindingTrie EMPTY = new BindingTrie(0, new Object[0], false);
+
+	// which of the 32 slots at this level are in use (unused by collision nodes)
+	private final int bitmap;
+	// key/value pairs for the slots in use; a null key means the value is the sub-trie for that slot
+	private final Object[] slots;
+	// true if all the keys in this node have the same hash, in which case slots is a plain list of pairs
+	private final boolean collision;
+
+	private BindingTrie(int bitmap, Object[] slots, boolean collision) {
+		this.bitmap = bitmap;
+		this.slots = slots;
+		this.collision = collision;
+	}
+
+	/**
+	 * Test if the trie contains no bindings.
+	 * @return true if empty.
+	 */
+	boolean isEmpty() {
+		return slots.length==0;
+	}
+
+	/**
+	 * Get the Element bound to a variable.
+	 * @param key variable.
+	 * @return bound element or null if the variable isn't bound.
+	 */
+	Element get(Variable key) {
+		BindingTrie node = this;
+		int hash = key.hashCode();
+		int shift = 0;
+		while (true) {
+			if (node.collision) {
+				for (int i=0; i<node.slots.length; i+=2) {
+					if (key.equals(node.slots[i])) return (Element) node.slots[i+1];
+				}
+				return null;
+			}
+			int bit = 1 << ((hash >>> shift) & 31);
+			if ((node.bitmap & bit)==0) return null;
+			int index = 2 * Integer.bitCount(node.bitmap & (bit - 1));
+			Object slotKey = node.slots[index];
+			if (slotKey==null) {
+				node = (BindingTrie) node.slots[index+1];
+				shift += 5;
+			} else {
+				return key.equals(slotKey) ? (Element) node.slots[index+1] : null;
+			}
+		}
+	}
+
+	/**
+	 * Test if a variable is bound.
+	 * @param key variable.
+	 * @return true if the variable is bound.
+	 */
+	boolean containsKey(Variable key) {
+		return get(key)!=null;
+	}
+
+	/**
+	 * Bind a variable, replacing any existing binding.
+	 * @param key variable.
+	 * @param value element to bind to the variable (not null).
+	 * @return new trie, or this trie if the variable was already bound to <code>value</code>.
+	 */
+	BindingTrie put(Variable key, Element value) {
+		return put(key, key.hashCode(), value, 0);
+	}
+
+	/**
+	 * Unbind a variable.
+	 * @param key variable.
+	 * @return new trie, or this trie if the variable wasn't bound.
+	 */
+	BindingTrie remove(Variable key) {
+		BindingTrie result = remove(key, key.hashCode(), 0);
+		return (result==null) ? EMPTY : result;
+	}
+
+	/**
+	 * Iterate over the bindings of this trie.
+	 * @return cursor over the bound variables, which also gives each variable's value.
+	 */
+	Entries entries() {
+		return new Entries(this);
+	}
+
+	private BindingTrie put(Variable key, int hash, Element value, int shift) {
+		if (collision) {
+			for (int i=0; i<slots.length; i+=2) {
+				if (key.equals(slots[i])) {
+					if (slots[i+1]==value) return this;
+					Object[] newSlots = slots.clone();
+					newSlots[i+1] = value;
+					return new BindingTrie(0, newSlots, true);
+				}
+			}
+			Object[] newSlots = new Object[slots.length+2];
+			System.arraycopy(slots, 0, newSlots, 0, slots.length);
+			newSlots[slots.length] = key;
+			newSlots[slots.length+1] = value;
+			return new BindingTrie(0, newSlots, true);
+		}
+		int bit = 1 << ((hash >>> shift) & 31);
+		int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+		if ((bitmap & bit)==0) {
+			Object[] newSlots = new Object[slots.length+2];
+			System.arraycopy(slots, 0, newSlots, 0, index);
+			newSlots[index] = key;
+			newSlots[index+1] = value;
+			System.arraycopy(slots, index, newSlots, index+2, slots.length-index);
+			return new BindingTrie(bitmap | bit, newSlots, false);
+		}
+		Object slotKey = slots[index];
+		Object slotValue = slots[index+1];
+		Object[] newSlots = slots.clone();
+		if (slotKey==null) {
+			BindingTrie child = ((BindingTrie) slotValue).put(key, hash, value, shift+5);
+			if (child==slotValue) return this;
+			newSlots[index+1] = child;
+		} else if (key.equals(slotKey)) {
+			if (slotValue==value) return this;
+			newSlots[index+1] = value;
+		} else {
+			newSlots[index] = null;
+			newSlots[index+1] = pair((Variable) slotKey, (Element) slotValue, key, hash, value, shift+5);
+		}
+		return new BindingTrie(bitmap, newSlots, false);
+	}
+
+	private static BindingTrie pair(Variable key1, Element value1, Variable key2, int hash2, Element value2, int shift) {
+		int hash1 = key1.hashCode();
+		if (hash1==hash2 || shift>=32) {
+			return new BindingTrie(0, new Object[] {key1, value1, key2, value2}, true);
+		}
+		int fragment1 = (hash1 >>> shift) & 31;
+		int fragment2 = (hash2 >>> shift) & 31;
+		if (fragment1==fragment2) {
+			return new BindingTrie(1 << fragment1, new Object[] {null, pair(key1, value1, key2, hash2, value2, shift+5)}, false);
+		} else if (fragment1<fragment2) {
+			return new BindingTrie((1 << fragment1) | (1 << fragment2), new Object[] {key1, value1, key2, value2}, false);
+		} else {
+			return new BindingTrie((1 << fragment1) | (1 << fragment2), new Object[] {key2, value2, key1, value1}, false);
+		}
+	}
+
+	// returns null if the resulting node would be empty
+	private BindingTrie remove(Variable key, int hash, int shift) {
+		if (collision) {
+			for (int i=0; i<slots.length; i+=2) {
+				if (key.equals(slots[i])) {
+					if (slots.length==2) return null;
+					return new BindingTrie(0, without(slots, i), true);
+				}
+			}
+			return this;
+		}
+		int bit = 1 << ((hash >>> shift) & 31);
+		if ((bitmap & bit)==0) return this;
+		int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+		Object slotKey = slots[index];
+		if (slotKey==null) {
+			BindingTrie child = (BindingTrie) slots[index+1];
+			BindingTrie newChild = child.remove(key, hash, shift+5);
+			if (newChild==child) return this;
+			if (newChild!=null) {
+				Object[] newSlots = slots.clone();
+				newSlots[index+1] = newChild;
+				return new BindingTrie(bitmap, newSlots, false);
+			}
+		} else if (!key.equals(slotKey)) {
+			return this;
+		}
+		if (bitmap==bit) return null;
+		return new BindingTrie(bitmap ^ bit, without(slots, index), false);
+	}
+
+	private static Object[] without(Object[] slots, int index) {
+		Object[] newSlots = new Object[slots.length-2];
+		System.arraycopy(slots, 0, newSlots, 0, index);
+		System.arraycopy(slots, index+2, newSlots, index, slots.length-index-2);
+		return newSlots;
+	}
+
+	/**
+	 * Depth first cursor over the bindings of a trie.  <code>next()</code> returns
+	 * each bound variable and <code>value()</code> the element it's bound to.
+	 */
+	static class Entries implements Iterator<Variable> {
+		// path of nodes from the root, and the next slot to visit in each
+		private BindingTrie[] nodes = new BindingTrie[8];
+		private int[] positions = new int[8];
+		private int depth = 0;
+		private Element value = null;
+
+		private Entries(BindingTrie root) {
+			nodes[0] = root;
+		}
+
+		public boolean hasNext() {
+			while (depth>=0) {
+				BindingTrie node = nodes[depth];
+				int position = positions[depth];
+				if (position>=node.slots.length) {
+					depth--;
+				} else if (node.slots[position]==null) {
+					positions[depth] += 2;
+					depth++;
+					if (depth==nodes.length) {
+						BindingTrie[] newNodes = new BindingTrie[depth*2];
+						System.arraycopy(nodes, 0, newNodes, 0, depth);
+						nodes = newNodes;
+						int[] newPositions = new int[depth*2];
+						System.arraycopy(positions, 0, newPositions, 0, depth);
+						positions = newPositions;
+					}
+					nodes[depth] = (BindingTrie) node.slots[position+1];
+					positions[depth] = 0;
+				} else {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public Variable next() {
+			if (!hasNext()) throw new NoSuchElementException();
+			BindingTrie node = nodes[depth];
+			int position = positions[depth];
+			positions[depth] += 2;
+			value = (Element) node.slots[position+1];
+			return (Variable) node.slots[position];
+		}
+
+		/**
+		 * The element bound to the variable last returned by <code>next()</code>.
+		 * @return bound element.
+		 */
+		Element value() {
+			return value;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("Bindings are immutable");
+		}
+	}
+}
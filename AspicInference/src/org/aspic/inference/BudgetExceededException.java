@@ -0,0 +1,12 @@
+package org.aspic.inference;
+
+/**
+ * Thrown while a Query is being evaluated when it has run out of budget, (see QueryBudget).
+ * It unwinds the argument development and the reasoner, and is caught by the Query, which marks
+ * the result it was deciding as undecided.
+ */
+class BudgetExceededException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	BudgetExceededException(String msg) { super(msg); }
+}
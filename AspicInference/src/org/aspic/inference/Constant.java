@@ -5,7 +5,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.logging.Logger;
 
 import org.aspic.inference.writers.KnowledgeWriter;
 
@@ -17,9 +16,10 @@ import org.aspic.inference.writers.KnowledgeWriter;
 public class Constant extends Element implements Cloneable {
 	private static final long serialVersionUID = 1L; // default
 
-	private static Logger logger = Logger.getLogger(Constant.class.getName());		
 
 	private String functor = ""; 
+	// the symbol table that this constant has been hash-consed into (see SymbolTable), if any.
+	private transient SymbolTable symbolTable = null;
 	
 	/**
 	 * Default Constructor.
@@ -63,6 +63,23 @@ public class Constant extends Element implements Cloneable {
 	 */
 	public void setFunctor(String functor) {
 		this.functor = functor;
+		this.symbolTable = null;
+	}
+
+	/**
+	 * The symbol table that this constant has been hash-consed into.
+	 * @return symbol table or null if this constant isn't a shared instance.
+	 */
+	SymbolTable getSymbolTable() {
+		return symbolTable;
+	}
+
+	/**
+	 * Used by SymbolTable to mark this constant as it's shared instance.
+	 * @param symbolTable symbol table or null.
+	 */
+	void setSymbolTable(SymbolTable symbolTable) {
+		this.symbolTable = symbolTable;
 	}
 
 	/**
@@ -103,8 +120,13 @@ public class Constant extends Element implements Cloneable {
 
 	public boolean isEqualModuloVariables(Element testClause) {
 		// NB Public because it's useful for comparing terms.
+		if (testClause==this) return true;
 		return (testClause instanceof Constant  && !(testClause instanceof Term)) 
-				&& (((Constant)testClause).getFunctor().compareTo(this.getFunctor())==0);
+				&& (((Constant)testClause).getFunctor().equals(this.getFunctor()));
+	}
+	
+	long fingerprint() {
+		return fingerprint(functor);
 	}
 	
 	public boolean isGrounded() {
@@ -154,6 +176,11 @@ public class Constant extends Element implements Cloneable {
 	 * <p>If restricted rebutting is used then arguments whose top rule is defeasible
 	 * are prevented from rebutting arguments whose top rule is strict, no matter how
 	 * much support they have.</p>
+	 * <p>If the Query being evaluated on this thread has an ArgumentStore (see QueryContext) then 
+	 * the arguments for this constant are replayed from the store, otherwise, if it has an ArgumentTable, 
+	 * arguments that have already been developed for this constant are replayed from the table.</p>
+	 * <p>If the Query has a budget (see QueryBudget) that doesn't allow it to seek a literal at this 
+	 * level, a BudgetExceededException is thrown.</p>
 	 * @param needed a threshold of support needed by the sought arguments
 	 * @param party the party who's developing the arguments (useful for logging)
 	 * @param level the current level of recursion
@@ -163,11 +190,39 @@ public class Constant extends Element implements Cloneable {
 	 * @return Argument Iterator
 	 **/
 	Iterator<RuleArgument> argumentIterator(Double needed, Party party, int level, int d_top, RuleArgumentValuator valuator, boolean restrictedRebutting) {
+		QueryContext context = QueryContext.current();
+		if (context!=null) {
+			context.checkDepth(level);
+			context.dependsOn(this);
+		}
+		ArgumentStore store = (context==null) ? null : context.getArgumentStore(getKnowledgeBase());
+		Iterator<RuleArgument> stored = (store==null) ? null : store.argumentIterator(this, needed, d_top, context);
+		ArgumentTable table = (context==null) ? null : context.getArgumentTable();
+		if (stored!=null) {
+			// the stored arguments' sub arguments are never sought, so the query depends on their rules too
+			context.dependsOn(store.getRuleTags(this));
+			return stored;
+		} else if (table!=null) {
+			return table.argumentIterator(this, needed, party, level, d_top, valuator, restrictedRebutting);
+		} else {
+			return untabledArgumentIterator(needed, party, level, d_top, valuator, restrictedRebutting);
+		}
+	}
+
+	/**
+	 * Provide an iterator for all arguments for this constant, developed directly from the 
+	 * knowledge base, without consulting any ArgumentTable.
+	 * See <code>argumentIterator</code> for the parameters.
+	 * @return Argument Iterator
+	 */
+	Iterator<RuleArgument> untabledArgumentIterator(Double needed, Party party, int level, int d_top, RuleArgumentValuator valuator, boolean restrictedRebutting) {
 		return new ConstantArgumentIterator(needed, party, level, d_top, valuator, restrictedRebutting);
 	}
 
 	public Object clone() throws CloneNotSupportedException {
-		return super.clone();
+		Constant result = (Constant) super.clone();
+		result.symbolTable = null; // a copy is never the shared instance
+		return result;
 	}
 	
 	/**
@@ -203,6 +258,11 @@ public class Constant extends Element implements Cloneable {
 		
 		private boolean queuedArgument = false;
 		private RuleArgument nextArgument = null;
+		private ReasonerTraceListener listener;
+		// where the rules for this literal are looked up (see QueryContext)
+		private KnowledgeBase knowledgeBase;
+		// whether the rules for this literal depend on themselves, (see KnowledgeBase.isRecursive)
+		private boolean recursive = false;
 		
 		public ConstantArgumentIterator(Double needed, Party party, int level, int d_top, RuleArgumentValuator valuator, boolean restrictedRebutting) {
 			this.needed = needed;
@@ -211,10 +271,13 @@ public class Constant extends Element implements Cloneable {
 			this.d_top = d_top;
 			this.valuator = valuator;
 			this.restrictedRebutting = restrictedRebutting;
-			logger.fine(party.toString() + ": searching for arguments for literal " + Constant.this.inspect() + ((needed>0.0) ? needed : ""));
+			this.listener = Constant.this.getKnowledgeBase().getTraceListener();
+			if (listener!=null) listener.literalSought(party, level, Constant.this, needed);
 			// set up your iterators
-			this.arityMap = Constant.this.getKnowledgeBase().getArityMap(Constant.this.ruleTag());
+			this.knowledgeBase = QueryContext.getKnowledgeBase(Constant.this.getKnowledgeBase());
+			this.arityMap = knowledgeBase.getArityMap(Constant.this.ruleTag());
 			if (arityMap!=null) {	
+				recursive = knowledgeBase.isRecursive(Constant.this.ruleTag());
 				arityIterator = arityMap.keySet().iterator();
 				ruleIterator = getNextRuleIterator();
 				argumentIterator = getNextArgumentIterator();
@@ -225,30 +288,25 @@ public class Constant extends Element implements Cloneable {
 		public boolean hasNext() {
 			if (queuedArgument==true) {
 				return true; // in case hasNext is called twice.
+			} else if (arityMap==null) {
+				return false;
 			} else {
-				if (arityMap!=null) {
+				// move on through the rules and arities until an argument turns up, (a loop rather
+				// than a recursive call per skipped rule, so that large predicates don't overflow the stack).
+				while (true) {
 					if (argumentIterator!=null && argumentIterator.hasNext()) {
 						nextArgument = argumentIterator.next();
 						queuedArgument=true;
-						logger.fine(party.toString() + ": found " + nextArgument.getName() + " : " + nextArgument.inspect(level));
+						if (listener!=null) listener.argumentFound(party, level, nextArgument);
 						return true;
+					} else if (ruleIterator!=null && ruleIterator.hasNext()) {
+						argumentIterator  = getNextArgumentIterator();
+					} else if (arityIterator.hasNext()) {
+						ruleIterator = getNextRuleIterator();
 					} else {
-						if (ruleIterator!=null && ruleIterator.hasNext()) {
-							argumentIterator  = getNextArgumentIterator();
-							return this.hasNext();
-						} else {
-							if (arityIterator.hasNext()) {
-								ruleIterator = getNextRuleIterator();
-								return this.hasNext();
-							} else {
-								return false;
-							}
-						}
+						return false;
 					}
 				}
-				else {
-					return false;
-				}
 			}
 		}
 		
@@ -268,26 +326,25 @@ public class Constant extends Element implements Cloneable {
 		private Iterator<Rule> getNextRuleIterator() {
 			if (arityIterator.hasNext()) {
 				int arity = arityIterator.next();
-				logger.fine(party.toString() + ": found one or more " + (arity>0 ? "rules " : "facts ") + "for literal " + Constant.this.inspect());
-				return arityMap.get(arity).iterator();
+				if (listener!=null) listener.rulesFound(party, level, Constant.this, arity);
+				return knowledgeBase.getCandidateRules(arityMap.get(arity), Constant.this).iterator();
 			} else {		
 				return null;
 			}
 		}
 		
 		private Iterator<RuleArgument> getNextArgumentIterator() {
-			if (ruleIterator.hasNext()) {
+			while (ruleIterator.hasNext()) {
 				Rule rule = ruleIterator.next();
-				if (rule.getConsequent().isUnifiable(Constant.this)) {
-					logger.fine(party.toString() + ": found " + (rule.getDob().compareTo(new Double(1.0))==0 ? "" : "defeasible ") + (rule.isFact() ? "fact " : "rule ") + rule.inspect());
-					return rule.argumentIterator(Constant.this, this.needed, this.party, this.level, this.d_top, this.valuator, this.restrictedRebutting);
+				Rule candidate = recursive ? rule.renameVariables() : rule;
+				if (candidate.getConsequent().isUnifiable(Constant.this)) {
+					if (listener!=null) listener.ruleTried(party, level, Constant.this, rule, true);
+					return candidate.argumentIterator(Constant.this, this.needed, this.party, this.level, this.d_top, this.valuator, this.restrictedRebutting);
 				} else {
-					logger.fine(party.toString() + ": ignored " + (rule.getDob().compareTo(new Double(1.0))==0 ? "" : "defeasible ") + (rule.isFact() ? "fact " : "rule ") + rule.inspect());
-					return getNextArgumentIterator();
+					if (listener!=null) listener.ruleTried(party, level, Constant.this, rule, false);
 				}
-			} else {
-				return null;
 			}
+			return null;
 		}
 	}
 
@@ -153,7 +153,7 @@ public abstract class ConstantNumber extends Constant {
 			logger.fine(party.toString() + ": searching for arguments for literal " + ConstantNumber.this.inspect());
 			Rule topRule = new Rule(ConstantNumber.this);
 			topRule.setKnowledgeBase(ConstantNumber.this.getKnowledgeBase());
-			nextArgument = new RuleArgument(topRule, new Double(1.0), new Substitution(), new RuleArgumentList(), party, level, d_top, valuator, restrictedRebutting);
+			nextArgument = new RuleArgument(topRule, 1.0, new Substitution(), new RuleArgumentList(), party, level, d_top, valuator, restrictedRebutting);
 			queuedArgument=true;
 		}
 		
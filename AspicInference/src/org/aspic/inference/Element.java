@@ -67,6 +67,14 @@ public abstract class Element implements Cloneable, Serializable {
 	 */
 	abstract boolean isEqualModuloVariables(Element element);
 	
+	/**
+	 * A 64 bit hash of this Element's structure, with every Variable hashed alike, so
+	 * Elements that are isEqualModuloVariables have the same fingerprint.  (Different
+	 * fingerprints mean different Elements, the same fingerprint only probably the same.)
+	 * @return structural fingerprint.
+	 */
+	abstract long fingerprint();
+	
 	/**
 	 * Check for free variables
 	 * @return true iff this Element has no free variables
@@ -81,6 +89,33 @@ public abstract class Element implements Cloneable, Serializable {
 	 */
 	//public abstract String argumentTag(Double needed);
 	
+	/**
+	 * Combine a fingerprint with the next part of a structure, (see fingerprint).
+	 * @param fingerprint fingerprint so far.
+	 * @param part fingerprint of the next part.
+	 * @return combined fingerprint.
+	 */
+	static long fingerprint(long fingerprint, long part) {
+		// the finaliser of the splitmix64 generator, so that each bit of the parts affects every bit of the result 
+		long h = fingerprint*0x9E3779B97F4A7C15L + part;
+		h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+		h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+		return h ^ (h >>> 31);
+	}
+
+	/**
+	 * Fingerprint a symbol, (see fingerprint).
+	 * @param symbol functor.
+	 * @return fingerprint of the symbol.
+	 */
+	static long fingerprint(String symbol) {
+		long h = 1125899906842597L;
+		for (int i=0; i<symbol.length(); i++) {
+			h = 31*h + symbol.charAt(i);
+		}
+		return fingerprint(h, symbol.length());
+	}
+	
 	/**
 	 * When a rule is added to a knowledgeBase this method should be called on 
 	 * all the rule's sub-elements so that it's properly integrated into the kb.
@@ -98,6 +133,14 @@ public abstract class Element implements Cloneable, Serializable {
 		return this.knowledgeBase;
 	}
 
+	/**
+	 * The trace listener of this Element's knowledge base.
+	 * @return listener, or null if there's no knowledge base or nobody is listening.
+	 */
+	ReasonerTraceListener getTraceListener() {
+		return (knowledgeBase==null) ? null : knowledgeBase.getTraceListener();
+	}
+
 	/** 
 	 * Using the Visitor pattern, this method allows the details
 	 * of an Element to be written in different ways.
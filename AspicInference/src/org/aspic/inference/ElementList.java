@@ -195,6 +195,16 @@ public class ElementList extends Element implements Iterable<Element> {
 		}
 	}
 	
+	long fingerprint() {
+		long result = list.size();
+		Iterator<Element> itr = this.list.iterator();
+		while (itr.hasNext()) {
+			Element element = itr.next();
+			result = fingerprint(result, (element==null) ? 0 : element.fingerprint());
+		}
+		return result;
+	}
+	
 	/**
 	 * Checks to see if this list contains a particular Element.
 	 * @param testElement the Element that your looking for
@@ -326,10 +336,70 @@ public class ElementList extends Element implements Iterable<Element> {
 	Iterator<RuleArgumentList> argumentIterator(Double needed, Party party, int level, int d_top, RuleArgumentValuator valuator, boolean restrictedRebutting) {
 		if (this.size()==0) {
 			return new EmptyArgumentListIterator();
+		}
+		int[] order = planJoin();
+		if (order==null) {
+			return new ArgumentListIterator(this.size(), needed, party, level, d_top, valuator, restrictedRebutting);
 		} else {
-			return new ArgumentListIterator(needed, party, level, d_top, valuator, restrictedRebutting);
+			return new OrderedArgumentListIterator(order, needed, party, level, d_top, valuator, restrictedRebutting);
 		}
 	}
+
+	/*
+	 * Plan the order in which the literals are sought if the query orders it's joins, (see 
+	 * KnowledgeBaseSource.isJoinOrdering).  The literals that can be moved, (ground literals and 
+	 * those with grounding rule tags, see PredicateStatistics), are sought bound first, then fewest
+	 * estimated candidates first, but never across a literal that has to be sought in place.
+	 * Returns null if the literals are sought in the order they're written.
+	 */
+	private int[] planJoin() {
+		if (this.size()<2) return null;
+		PredicateStatistics statistics = QueryContext.getPredicateStatistics(getKnowledgeBase());
+		if (statistics==null) return null;
+		int n = this.size();
+		boolean[] movable = new boolean[n];
+		for (int i=0; i<n; i++) {
+			Element element = this.get(i);
+			movable[i] = element instanceof Constant && (element.getVariables().isEmpty() 
+					|| (!(element instanceof BuiltIn) && statistics.isGrounding(((Constant) element).ruleTag())));
+		}
+		int[] order = new int[n];
+		boolean[] planned = new boolean[n];
+		Set<String> bound = new HashSet<String>();
+		boolean reordered = false;
+		int k = 0;
+		int start = 0;
+		while (start<n) {
+			int end = start;
+			while (end<n && movable[end]) end++;
+			for (int j=start; j<end; j++) {
+				int best = -1;
+				boolean bestBound = false;
+				double bestEstimate = 0;
+				for (int i=start; i<end; i++) {
+					if (planned[i]) continue;
+					Constant literal = (Constant) this.get(i);
+					boolean isBound = PredicateStatistics.isBound(literal, bound);
+					double estimate = statistics.estimate(literal, bound);
+					if (best<0 || (isBound && !bestBound) || (isBound==bestBound && estimate<bestEstimate)) {
+						best = i;
+						bestBound = isBound;
+						bestEstimate = estimate;
+					}
+				}
+				planned[best] = true;
+				if (best!=k) reordered = true;
+				order[k++] = best;
+				for (Variable var : this.get(best).getVariables()) bound.add(var.getInternalName());
+			}
+			if (end<n) {
+				order[k++] = end;
+				for (Variable var : this.get(end).getVariables()) bound.add(var.getInternalName());
+			}
+			start = end+1;
+		}
+		return reordered ? order : null;
+	}
 	
 	/**
 	 * Ensure all variables within this term that
@@ -363,7 +433,8 @@ public class ElementList extends Element implements Iterable<Element> {
 	 * <code>[e_1, e_2, ... , e_(n-1)]</code> (known as the longhead list)
 	 * and then iterates through the arguments generated for e_n (the shorttail) and
 	 * adds them on to the argument lists returned from the recursively
-	 * defined sub list argument list iterator.</p>
+	 * defined sub list argument list iterator.  The sub lists aren't copied: each
+	 * iterator covers the first <code>length</code> elements of this list.</p>
 	 * @author mjs (matthew.south @ cancer.org.uk)
 	 *
 	 */
@@ -375,6 +446,8 @@ public class ElementList extends Element implements Iterable<Element> {
 		private RuleArgumentValuator valuator;
 		private boolean restrictedRebutting;
 		
+		// the short tail, (the last of the first length elements)
+		private Constant shortTail;
 		private Iterator<RuleArgumentList> argumentListIterator;
 		private Iterator<RuleArgument> argumentIterator;
 		private RuleArgumentList currentSubList;
@@ -382,7 +455,8 @@ public class ElementList extends Element implements Iterable<Element> {
 		private RuleArgumentList nextArgumentList = null;
 		private boolean queuedArgumentList = false;
 
-		public ArgumentListIterator(Double needed, Party party, int level, int d_top, RuleArgumentValuator valuator, boolean restrictedRebutting) {
+		public ArgumentListIterator(int length, Double needed, Party party, int level, int d_top, RuleArgumentValuator valuator, boolean restrictedRebutting) {
+			this.shortTail = (Constant) ElementList.this.get(length-1);
 			this.needed = needed;
 			this.party = party;
 			this.level = level;
@@ -390,10 +464,10 @@ public class ElementList extends Element implements Iterable<Element> {
 			this.valuator = valuator;
 			this.restrictedRebutting = restrictedRebutting;
 			
-			argumentListIterator = ElementList.this.longHead().argumentIterator(needed, party, level, d_top, valuator, restrictedRebutting);
+			argumentListIterator = (length==1) ? new EmptyArgumentListIterator() : new ArgumentListIterator(length-1, needed, party, level, d_top, valuator, restrictedRebutting);
 			if (argumentListIterator.hasNext()) {
 				currentSubList = argumentListIterator.next();
-				argumentIterator = ((Constant) ElementList.this.shortTail()).apply(currentSubList.getSubstitution()).argumentIterator(needed, party, level, d_top, valuator, restrictedRebutting);
+				argumentIterator = shortTail.apply(currentSubList.getSubstitution()).argumentIterator(needed, party, level, d_top, valuator, restrictedRebutting);
 			}
 			queuedArgumentList = this.hasNext();
 		}
@@ -402,20 +476,111 @@ public class ElementList extends Element implements Iterable<Element> {
 			if (queuedArgumentList==true) {
 				return true;
 			} else {
-				if (!(argumentIterator==null) && argumentIterator.hasNext()) {
-					nextArgumentList = currentSubList.cloneAndExtend(argumentIterator.next());
-					queuedArgumentList=true;
-					return true;
-				} else {
+				// move on through the long head lists until the short tail has an argument for one, (in a loop, not a recursive call per list).
+				while (argumentIterator==null || !argumentIterator.hasNext()) {
 					if (argumentListIterator.hasNext()) {
 						currentSubList = argumentListIterator.next();
-						argumentIterator = ((Constant) ElementList.this.shortTail()).apply(currentSubList.getSubstitution()).argumentIterator(needed, party, level, d_top, valuator, restrictedRebutting);
-						return this.hasNext();
+						argumentIterator = shortTail.apply(currentSubList.getSubstitution()).argumentIterator(needed, party, level, d_top, valuator, restrictedRebutting);
 					} else {
 						return false;
 					}
-				}				
+				}
+				nextArgumentList = currentSubList.cloneAndExtend(argumentIterator.next());
+				queuedArgumentList=true;
+				return true;
+			}
+		}
+		
+		public RuleArgumentList next() {
+			if (queuedArgumentList) {
+				queuedArgumentList = false;
+				return nextArgumentList;
+			} else {
+				throw new NoSuchElementException();
+			}
+		}
+		
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+	
+	/**
+	 * <p>Argument iterator that seeks the literals in a planned order, (see <code>planJoin</code>), 
+	 * rather than left to right.  It backtracks through the literals in the order they're sought, 
+	 * each one with the substitution of the arguments found for the literals before it, and returns
+	 * each ArgumentList with the arguments in the order of the literals they're for.</p>
+	 */
+	private class OrderedArgumentListIterator implements Iterator<RuleArgumentList> {
+		private Double needed;
+		private Party party;
+		private int level;
+		private int d_top;
+		private RuleArgumentValuator valuator;
+		private boolean restrictedRebutting;
+		
+		// the positions of the literals in the order they're sought
+		private int[] order;
+		// sought.get(k) is the arguments found for the first k literals sought, (in the order they're sought)
+		private List<RuleArgumentList> sought = new ArrayList<RuleArgumentList>();
+		// iterators.get(k) is the iterator over the arguments for the k'th literal sought
+		private List<Iterator<RuleArgument>> iterators = new ArrayList<Iterator<RuleArgument>>();
+		private int depth = 0;
+		
+		private RuleArgumentList nextArgumentList = null;
+		private boolean queuedArgumentList = false;
+
+		public OrderedArgumentListIterator(int[] order, Double needed, Party party, int level, int d_top, RuleArgumentValuator valuator, boolean restrictedRebutting) {
+			this.order = order;
+			this.needed = needed;
+			this.party = party;
+			this.level = level;
+			this.d_top = d_top;
+			this.valuator = valuator;
+			this.restrictedRebutting = restrictedRebutting;
+			
+			sought.add(new RuleArgumentList());
+			iterators.add(seek(0));
+			queuedArgumentList = this.hasNext();
+		}
+		
+		private Iterator<RuleArgument> seek(int k) {
+			return ((Constant) ElementList.this.get(order[k])).apply(sought.get(k).getSubstitution()).argumentIterator(needed, party, level, d_top, valuator, restrictedRebutting);
+		}
+		
+		public boolean hasNext() {
+			if (queuedArgumentList==true) {
+				return true;
+			}
+			// backtrack through the literals, (in a loop, not a recursive call per literal).
+			while (depth>=0) {
+				Iterator<RuleArgument> argumentIterator = iterators.get(depth);
+				if (!argumentIterator.hasNext()) {
+					depth--;
+					continue;
+				}
+				RuleArgumentList list = sought.get(depth).cloneAndExtend(argumentIterator.next());
+				if (depth+1==order.length) {
+					// put the arguments back in the order of their literals
+					RuleArgument[] arguments = new RuleArgument[order.length];
+					Iterator<RuleArgument> reverse = list.reverseIterator();
+					for (int k=order.length-1; k>=0; k--) {
+						arguments[order[k]] = reverse.next();
+					}
+					nextArgumentList = new RuleArgumentList(Arrays.asList(arguments), list.getSubstitution());
+					queuedArgumentList = true;
+					return true;
+				}
+				depth++;
+				if (sought.size()==depth) {
+					sought.add(list);
+					iterators.add(null);
+				} else {
+					sought.set(depth, list);
+				}
+				iterators.set(depth, seek(depth));
 			}
+			return false;
 		}
 		
 		public RuleArgumentList next() {
@@ -3,11 +3,17 @@ package org.aspic.inference;
 import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Formatter;
 import java.util.logging.Handler;
@@ -17,6 +23,7 @@ import java.util.logging.Logger;
 
 import org.aspic.inference.parser.ParseException;
 import org.aspic.inference.parser.PrologSyntax;
+import org.aspic.inference.parser.RuleReader;
 import org.aspic.inference.parser.TokenMgrError;
 import org.aspic.inference.writers.GMLWriter;
 import org.aspic.inference.writers.GraphvizWriter;
@@ -28,6 +35,16 @@ import org.aspic.inference.writers.SimpleGraphvizWriter;
  * knowledge base strings and query expression strings to objects
  * that the underlying classes can use.</p>
  * 
+ * <p>Once the Engine has been set up it can be frozen (see <code>freeze</code>),
+ * after which any number of threads can create queries on it at the same time.</p>
+ * 
+ * <p>If the QUERY_CACHE property is on, the Engine remembers the queries it has created, (see
+ * QueryCache), and answers a question that's asked again with a copy of the same Query, for as
+ * long as the rules that the query depended on haven't changed.</p>
+ * 
+ * <p>The resources each query may use can be limited, (see <code>setQueryBudget</code>), and
+ * a query's results can be streamed as they're decided, (see <code>resultIterator</code>).</p>
+ * 
  * @author mjs (matthew.south @ cancer.org.uk)
  *
  */
@@ -43,57 +60,120 @@ public class Engine implements Cloneable {
 	public enum Property { 
 		/** Semantics of Reasoner used by Engine */
 		SEMANTICS  { 
-			Enum[] getValues() { 
+			Enum<?>[] getValues() { 
 				return Reasoner.values(); 
 				} 
-			void setValue(Engine eng, Enum value) {
-				eng.reasoner = ((Reasoner) value).createReasoner();
+			void setValue(Engine eng, Enum<?> value) {
+				eng.reasoner = (Reasoner) value;
 			}
 		},
 		/** Automatically transpose strict rules **/
 		TRANSPOSITION {
-			Enum[] getValues() { 
+			Enum<?>[] getValues() { 
 				return OnOff.values(); 
 				} 
-			void setValue(Engine eng, Enum value) {
+			void setValue(Engine eng, Enum<?> value) {
 				eng.source.getKnowledgeBase().setUsingTransposition(value.equals(OnOff.ON) ? true : false);
 			}			
 		},
 		/** Prevent defeasible Arguments rebutting strict Arguments **/
 		RESTRICTED_REBUTTING {
-			Enum[] getValues() { 
+			Enum<?>[] getValues() { 
 				return OnOff.values(); 
 				} 
-			void setValue(Engine eng, Enum value) {
+			void setValue(Engine eng, Enum<?> value) {
 				eng.source.setRebuttingRestricted((value.equals(OnOff.ON) ? true : false));
 			}			
 		},
 		/** Valuation strategy for Arguments **/
 		VALUATION {
-			Enum[] getValues() { 
+			Enum<?>[] getValues() { 
 				return Valuator.values(); 
 				} 
-			void setValue(Engine eng, Enum value) {
+			void setValue(Engine eng, Enum<?> value) {
 				eng.source.setValuator((Valuator) value);
 			}			
+		},
+		/** Remember and replay the arguments developed for each literal during a query **/
+		TABLING {
+			Enum<?>[] getValues() { 
+				return OnOff.values(); 
+				} 
+			void setValue(Engine eng, Enum<?> value) {
+				eng.source.setTabling((value.equals(OnOff.ON) ? true : false));
+			}			
+		},
+		/** Develop all the arguments of a ground knowledge base bottom up, once, rather than for each query **/
+		MATERIALIZATION {
+			Enum<?>[] getValues() { 
+				return OnOff.values(); 
+				} 
+			void setValue(Engine eng, Enum<?> value) {
+				eng.source.setMaterialized((value.equals(OnOff.ON) ? true : false));
+			}			
+		},
+		/** Materialize only the slice of the knowledge base that's relevant to each query, (see KnowledgeBaseSource.isSliced) **/
+		SLICING {
+			Enum<?>[] getValues() { 
+				return OnOff.values(); 
+				} 
+			void setValue(Engine eng, Enum<?> value) {
+				eng.source.setSliced((value.equals(OnOff.ON) ? true : false));
+			}			
+		},
+		/** Seek the literals of an antecedent in order of their selectivity, (see KnowledgeBaseSource.isJoinOrdering) **/
+		JOIN_ORDERING {
+			Enum<?>[] getValues() { 
+				return OnOff.values(); 
+				} 
+			void setValue(Engine eng, Enum<?> value) {
+				eng.source.setJoinOrdering((value.equals(OnOff.ON) ? true : false));
+			}			
+		},
+		/** Number each query's arguments from 1 rather than across all queries, (see KnowledgeBaseSource.isQueryNumbering) **/
+		QUERY_NUMBERING {
+			Enum<?>[] getValues() { 
+				return OnOff.values(); 
+				} 
+			void setValue(Engine eng, Enum<?> value) {
+				eng.source.setQueryNumbering((value.equals(OnOff.ON) ? true : false));
+			}			
+		},
+		/** Answer a question that's been asked before with the Query that answered it, if it isn't stale **/
+		QUERY_CACHE {
+			Enum<?>[] getValues() { 
+				return OnOff.values(); 
+				} 
+			void setValue(Engine eng, Enum<?> value) {
+				eng.queryCache = value.equals(OnOff.ON) ? new QueryCache(eng.queryCacheCapacity) : null;
+			}			
+		},
+		/** Evaluate a query's seed arguments in parallel, (only once the knowledge base is frozen) **/
+		PARALLEL {
+			Enum<?>[] getValues() { 
+				return OnOff.values(); 
+				} 
+			void setValue(Engine eng, Enum<?> value) {
+				eng.source.setParallel((value.equals(OnOff.ON) ? true : false));
+			}			
 		};
 		/**
 		 * Abstract method for retrieving the supported values for
 		 * this property.
 		 * @return array of allowed values for a particular property.
 		 */
-		abstract Enum[] getValues();
+		abstract Enum<?>[] getValues();
 		/**
 		 * Abstract method for updating the engine appropriately 
 		 * based on the passed value
 		 * @param eng The engine to be updated
 		 * @param value The new value for the property
 		 */
-		abstract void setValue(Engine eng, Enum value);
+		abstract void setValue(Engine eng, Enum<?> value);
 	}
 	
 	/**
-	 * Enumeration for boolean Engine properties.  Used for transposition and "restricted rebutting".
+	 * Enumeration for boolean Engine properties.  Used for transposition, "restricted rebutting", tabling, materialization, slicing, join ordering, query numbering, the query cache and parallel evaluation.
 	 * @author mjs (matthew.south @ cancer.org.uk)
 	 *
 	 */
@@ -107,11 +187,15 @@ public class Engine implements Cloneable {
 	//private KnowledgeBase kb;
 	private KnowledgeBaseSource source;
 	private PrologSyntax parser; // TODO: Make this a factory?
-	private AbstractReasoner reasoner;
+	private Reasoner reasoner; // each query gets a reasoner of it's own
+	private QueryCache queryCache = null; // null unless QUERY_CACHE is on
+	private int queryCacheCapacity = QueryCache.DEFAULT_CAPACITY;
+	// logs the trace of every Engine's queries while it's logger is loggable, (see checkLogging)
+	private static final LoggingTraceListener loggingListener = new LoggingTraceListener();
 	//private InferenceArgumentValuator valuator;
 	//private boolean restrictedRebutting;
 
-	private Map<Property, Enum> properties = new HashMap<Property, Enum>();
+	private Map<Property, Enum<?>> properties = new HashMap<Property, Enum<?>>();
 	
 	public Engine(String knowledge) throws ParseException {
 		parser = new PrologSyntax(new StringReader(knowledge));
@@ -125,6 +209,16 @@ public class Engine implements Cloneable {
 	}
 		
 	
+	/**
+	 * Create an engine for knowledge that's read from a stream one rule at a time, (see RuleReader),
+	 * rather than from a String that holds all of it.
+	 * @param knowledge Prolog syntax knowledge.
+	 * @throws ParseException if the knowledge cannot be parsed
+	 */
+	public Engine(Reader knowledge) throws ParseException {
+		this(new RuleReader(knowledge).readKnowledgeBase());
+	}
+	
 	public Engine(KnowledgeBase kb) {
         parser = new PrologSyntax(new StringReader(""));
 		source = new KnowledgeBaseSource(kb);
@@ -139,9 +233,12 @@ public class Engine implements Cloneable {
 	 * @throws ReasonerException if the reasoner fails during Query generation
 	 */
 	public Query createQuery(String expression) throws ParseException, ReasonerException {
-		parser.ReInit(new StringReader(expression));
-		ConstantList query = parser.TermList();
-		return new Query(query, reasoner, source, properties);
+		ConstantList query;
+		synchronized (parser) {
+			parser.ReInit(new StringReader(expression));
+			query = parser.TermList();
+		}
+		return cachedQuery(query);
 	}
 
 	/**
@@ -152,7 +249,7 @@ public class Engine implements Cloneable {
 	 * @throws ReasonerException if the reasoner fails during Query generation
 	 */
 	public Query createQuery(Constant query) throws ParseException, ReasonerException {
-		return new Query(query, reasoner, source, properties);
+		return cachedQuery(query);
 	}
 
 	/**
@@ -163,15 +260,151 @@ public class Engine implements Cloneable {
 	 * @throws ReasonerException if the reasoner fails during Query generation
 	 */
 	public Query createQuery(ConstantList query) throws ParseException, ReasonerException {
-		return new Query(query, reasoner, source, properties);
+		return cachedQuery(query);
+	}
+	
+	/**
+	 * Create a Query whose results are decided one at a time, as they're asked for, rather than all 
+	 * at once, (see <code>Query.resultIterator</code>).  The query isn't put in the query cache.
+	 * @param expression list of terms to be queried
+	 * @return iterator over the query's results
+	 * @throws ParseException if the expression cannot be parsed
+	 */
+	public Iterator<Result> resultIterator(String expression) throws ParseException {
+		ConstantList query;
+		synchronized (parser) {
+			parser.ReInit(new StringReader(expression));
+			query = parser.TermList();
+		}
+		return resultIterator(query);
+	}
+
+	/**
+	 * Create a Query whose results are decided one at a time, with a lower level parameter 
+	 * then <code>resultIterator(String)</code>.
+	 * @param query Constant or ConstantList to be queried
+	 * @return iterator over the query's results
+	 */
+	public Iterator<Result> resultIterator(Element query) {
+		if (!(query instanceof Constant) && !(query instanceof ConstantList)) throw new RuntimeException("Only a Constant or a ConstantList can be queried.");
+		checkLogging();
+		return new Query(query, reasoner.createReasoner(), source, properties, true).resultIterator();
+	}
+	
+	/**
+	 * Getter for query budget, (see QueryBudget).
+	 * @return budget each query may use, or null if queries aren't limited.
+	 */
+	public QueryBudget getQueryBudget() {
+		return source.getQueryBudget();
+	}
+
+	/**
+	 * Setter for query budget.  A query that runs out of budget has partial results, (see 
+	 * <code>Query.isExhausted</code>), and isn't put in the query cache.
+	 * @param budget budget each query may use, or null if queries aren't limited.
+	 */
+	public void setQueryBudget(QueryBudget budget) {
+		source.setQueryBudget(budget);
 	}
 	
+	/**
+	 * Create a Query for each of a collection of query expressions.  If the knowledge base is
+	 * frozen the queries are evaluated in parallel, (on the fork/join common pool), otherwise 
+	 * they're evaluated one after another.
+	 * @param queries the query expressions.
+	 * @return new Queries, in the order of the passed expressions.
+	 * @throws ReasonerException if the reasoner fails during Query generation
+	 */
+	public List<Query> createQueries(Collection<ConstantList> queries) throws ReasonerException {
+		List<Query> result = new ArrayList<Query>(queries.size());
+		checkLogging(); // before the queries are forked
+		if (!source.getKnowledgeBase().isFrozen()) {
+			Iterator<ConstantList> queryIterator = queries.iterator();
+			while (queryIterator.hasNext()) {
+				result.add(cachedQuery(queryIterator.next()));
+			}
+			return result;
+		}
+		List<QueryEvaluation> tasks = new ArrayList<QueryEvaluation>(queries.size());
+		Iterator<ConstantList> queryIterator = queries.iterator();
+		while (queryIterator.hasNext()) {
+			tasks.add(new QueryEvaluation(queryIterator.next()));
+		}
+		ForkJoinTask.invokeAll(tasks);
+		Iterator<QueryEvaluation> taskIterator = tasks.iterator();
+		while (taskIterator.hasNext()) {
+			result.add(taskIterator.next().getRawResult());
+		}
+		return result;
+	}
+	
+	/**
+	 * Number of queries that were answered from the query cache, (see QUERY_CACHE).
+	 * @return number of cache hits, (0 if the cache isn't on).
+	 */
+	public int getQueryCacheHits() {
+		QueryCache cache = queryCache;
+		return (cache==null) ? 0 : cache.getHits();
+	}
+
+	/**
+	 * Number of queries that had to be evaluated while the query cache was on, (see QUERY_CACHE).
+	 * @return number of cache misses, (0 if the cache isn't on).
+	 */
+	public int getQueryCacheMisses() {
+		QueryCache cache = queryCache;
+		return (cache==null) ? 0 : cache.getMisses();
+	}
+
+	/**
+	 * Set the number of queries the query cache holds, (see QUERY_CACHE).  The cache is emptied.
+	 * @param capacity maximum number of queries, (the least recently used is evicted).
+	 */
+	public void setQueryCacheCapacity(int capacity) {
+		if (capacity<1) throw new RuntimeException("The query cache needs room for at least one query.");
+		queryCacheCapacity = capacity;
+		if (queryCache!=null) queryCache = new QueryCache(capacity);
+	}
+
+	/*
+	 * Create a query, or get it from the query cache.  The cache isn't used while the engine's
+	 * queries are being traced, as the trace is only produced when a query is evaluated.  The
+	 * cached Query itself is never handed out, only copies of it, (see Query(Query)), so that
+	 * whoever asked the question first can't change the answer everyone else gets.
+	 */
+	private Query cachedQuery(Element query) {
+		checkLogging();
+		QueryCache cache = queryCache;
+		String key = (cache==null || getTraceListener()!=null) ? null : cacheKey(query);
+		Query result = (key==null) ? null : cache.get(key, source.getKnowledgeBase());
+		if (result!=null) return new Query(result);
+		if (query instanceof ConstantList) {
+			result = new Query((ConstantList) query, reasoner.createReasoner(), source, properties);
+		} else {
+			result = new Query((Constant) query, reasoner.createReasoner(), source, properties);
+		}
+		if (key!=null && !result.isExhausted()) {
+			cache.put(key, result);
+			return new Query(result);
+		}
+		return result;
+	}
+
+	/*
+	 * The key of a query in the query cache: it's expression, and the settings that can change it's results.
+	 * (The knowledge base's rules are checked by the cache, see Query.isStale.)
+	 */
+	private String cacheKey(Element query) {
+		return query.inspect() + "|" + reasoner + "|" + source.getValuator() + "|" + source.isRebuttingRestricted() + "|" + properties.get(Property.PARALLEL) + "|" + properties.get(Property.JOIN_ORDERING);
+	}
+
 	/**
 	 * Get property value.
 	 * @param property
 	 * @return value of property
 	 */
-	public Enum getProperty(Property property) {
+	public Enum<?> getProperty(Property property) {
 		return properties.get(property);
 	}
 	
@@ -183,7 +416,7 @@ public class Engine implements Cloneable {
 	 * @param value new value to be set
 	 * @throws UnsupportedValueException if passed value is not supported by the property
 	 */
-	public void setProperty(Property property, Enum value) throws UnsupportedValueException {
+	public void setProperty(Property property, Enum<?> value) throws UnsupportedValueException {
 		if (Arrays.asList(property.getValues()).contains(value)) {
 			properties.put(property, value);
 			property.setValue(this, value);
@@ -197,7 +430,7 @@ public class Engine implements Cloneable {
 	 * @param property
 	 * @return An array of Enum objects associated with the passed property
 	 */
-	public Enum[] getSupportedValues(Property property) {
+	public Enum<?>[] getSupportedValues(Property property) {
 		return property.getValues();
 	}
 	
@@ -234,11 +467,56 @@ public class Engine implements Cloneable {
 		} catch (CloneNotSupportedException e) {
 			e.printStackTrace();
 		}
-		o.properties = (Map<Property, Enum>) ((HashMap<Property, Enum>)o.properties).clone();
+		o.properties = (Map<Property, Enum<?>>) ((HashMap<Property, Enum<?>>)o.properties).clone();
 		o.source = (KnowledgeBaseSource) o.source.clone();
+		if (o.queryCache!=null) o.queryCache = new QueryCache(queryCacheCapacity);
 		return o;
 	}
 	
+	/**
+	 * Freeze the Engine's knowledge base so that queries can be created on several threads
+	 * at once.  Each query tables it's own arguments, (if tabling is on), and has a reasoner of it's
+	 * own, so queries don't share any state other than the frozen knowledge base and the counter that
+	 * numbers the arguments, (unless QUERY_NUMBERING is on, when each query numbers it's own from 1).  Properties shouldn't be changed once the Engine is in use by several threads, and
+	 * changing the knowledge base (including TRANSPOSITION) throws an exception.
+	 */
+	public void freeze() {
+		source.getKnowledgeBase().freeze();
+	}
+	
+	/**
+	 * The evaluation of one of the queries passed to <code>createQueries</code>, as a fork/join task.
+	 */
+	private class QueryEvaluation extends RecursiveTask<Query> {
+		private static final long serialVersionUID = 1L;
+		private ConstantList query;
+		
+		QueryEvaluation(ConstantList query) {
+			this.query = query;
+		}
+		
+		protected Query compute() {
+			return cachedQuery(query);
+		}
+	}
+	
+	/**
+	 * Get the listener that receives the trace of this Engine's queries.
+	 * @return trace listener, or null if there isn't one.
+	 */
+	public ReasonerTraceListener getTraceListener() {
+		return source.getKnowledgeBase().getTraceListener();
+	}
+	
+	/**
+	 * Set the listener that receives the trace of this Engine's queries.  Without a listener
+	 * no trace is produced at all.
+	 * @param listener trace listener (e.g. a LoggingTraceListener), or null to switch the trace off.
+	 */
+	public void setTraceListener(ReasonerTraceListener listener) {
+		source.getKnowledgeBase().setTraceListener(listener);
+	}
+	
 	/**
 	 * Getter for Engine's Argument Source.
 	 * @return KnowledgeBaseSource.
@@ -251,11 +529,32 @@ public class Engine implements Cloneable {
 	private void setDefaultProperties() {
 		// set reasoner
 		properties.put(Property.SEMANTICS, Reasoner.GROUNDED);
-		reasoner = Reasoner.GROUNDED.createReasoner();
+		reasoner = Reasoner.GROUNDED;
 		// pass on KB's properties
 		properties.put(Property.TRANSPOSITION, source.getKnowledgeBase().isUsingTransposition() ? OnOff.ON : OnOff.OFF);
 		properties.put(Property.VALUATION, source.getValuator());
 		properties.put(Property.RESTRICTED_REBUTTING, source.isRebuttingRestricted() ? OnOff.ON : OnOff.OFF);
+		properties.put(Property.TABLING, source.isTabling() ? OnOff.ON : OnOff.OFF);
+		properties.put(Property.MATERIALIZATION, source.isMaterialized() ? OnOff.ON : OnOff.OFF);
+		properties.put(Property.SLICING, source.isSliced() ? OnOff.ON : OnOff.OFF);
+		properties.put(Property.JOIN_ORDERING, source.isJoinOrdering() ? OnOff.ON : OnOff.OFF);
+		properties.put(Property.QUERY_NUMBERING, source.isQueryNumbering() ? OnOff.ON : OnOff.OFF);
+		properties.put(Property.QUERY_CACHE, OnOff.OFF);
+		properties.put(Property.PARALLEL, source.isParallel() ? OnOff.ON : OnOff.OFF);
+	}
+
+	/*
+	 * Log the trace of the queries while LoggingTraceListener's logger is loggable, which is checked
+	 * as each query is created, (not once, when the Engine is), so the log level can be changed at
+	 * any time.  A listener that's been set with setTraceListener is left alone.
+	 */
+	private void checkLogging() {
+		KnowledgeBase kb = source.getKnowledgeBase();
+		if (kb.getTraceListener()==null) {
+			if (LoggingTraceListener.isLoggable()) kb.setTraceListener(loggingListener);
+		} else if (kb.getTraceListener()==loggingListener && !LoggingTraceListener.isLoggable()) {
+			kb.setTraceListener(null);
+		}
 	}
 	
 	/** 
@@ -0,0 +1,268 @@
+package org.aspic.inference;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * <p>A Reasoner that implements Grounded Semantics by materializing the argumentation
+ * framework (see AttackGraph) and labelling it, rather than by playing the dialogue game
+ * of the GroundedReasoner.  The dialogue game searches for the attackers of an argument
+ * afresh along every line of dispute that the argument appears in, whereas here each
+ * argument's defeaters are sought once per Query and the grounded labelling is
+ * computed with a worklist in time linear in the size of the framework.</p>
+ *
+ * <p>The framework is kept for the whole Query, so the arguments that were labelled
+ * for one query match are not labelled again for the next one.</p>
+ *
+ * <p>The answers are those of grounded semantics, but they can differ from the GroundedReasoner's:
+ * the dialogue game can accept both of two arguments that defeat each other, e.g. <code>a3</code> and
+ * <code>~a3</code>, (which are both 0.3 strong), and <code>~a2</code> with them in <code>~a6 0.7. a5 0.9.
+ * ~a4 &lt;- ~a6. a6. ~a3 &lt;- a4, a5 0.5. a3 &lt;- a4. ~a2 &lt;- ~a3. a4 &lt;- a5, a5 0.3.</code>
+ * Here they are all UNDEC, so none of them is accepted.  Switching between the two semantics can 
+ * therefore change the results of a query.</p>
+ *
+ * <p>The returned ReasonerPair follows the shape of the dialogue game's answer: PRO holds
+ * the tested argument and the IN arguments used to defend it, OPP holds the (OUT) arguments
+ * that they defend against.</p>
+ */
+class GroundedLabellingReasoner extends AbstractReasoner {
+	private static Logger logger = Logger.getLogger(GroundedLabellingReasoner.class.getName());
+
+	static final byte IN = 1;
+	static final byte OUT = 2;
+	static final byte UNDEC = 3;
+
+	private AttackGraph graph = null;
+	// grounded label of each argument in the graph, indexed by id
+	private byte[] labels = new byte[16];
+	private int labelled = 0;
+
+	void beginQuery() {
+		graph = new AttackGraph();
+		labels = new byte[16];
+		labelled = 0;
+	}
+
+	void endQuery() {
+		graph = null;
+	}
+
+	ReasonerPair evaluate(ReasonerPair testPair, List<RuleArgument> proof) {
+		if (graph==null) beginQuery(); // not called from a Query
+		RuleArgument testArgument = testPair.getPRO().getLast(); // get last element from PRO list
+		int test = graph.add(testArgument);
+		label();
+		if (listener!=null) listener.disputeStarted(0, testPair);
+		if (labels[test]==IN) {
+			if (listener!=null) listener.argumentLabelled(0, testArgument, "IN", true, graph.size());
+			return defend(testPair, test, null, proof);
+		} 
+		if (labels[test]==UNDEC) {
+			long[] extension = acceptUndecided(test);
+			if (extension!=null) {
+				if (listener!=null) listener.argumentLabelled(0, testArgument, "UNDEC", true, graph.size());
+				return defend(testPair, test, extension, proof);
+			}
+		}
+		if (listener!=null) listener.argumentLabelled(0, testArgument, (labels[test]==OUT ? "OUT" : "UNDEC"), false, graph.size());
+		testArgument.setStatus(RuleArgument.Status.DEFEATED);
+		int[] attackers = graph.getDefeaters(test);
+		for (int i=0; i<attackers.length; i++) {
+			RuleArgument attacker = graph.getArgument(attackers[i]);
+			attacker.setStatus(labels[attackers[i]]==IN ? RuleArgument.Status.UNDEFEATED : RuleArgument.Status.DEFEATED);
+			if (!proof.contains(attacker)) proof.add(attacker);
+			if (listener!=null) listener.attackFound(0, testArgument, attacker, i+1);
+		}
+		if (listener!=null) listener.argumentRejected(0, testArgument);
+		return new ReasonerPair();
+	}
+
+	/**
+	 * Decide an argument that's UNDEC in the grounded labelling.  Grounded semantics
+	 * rejects them all; other semantics can accept some of them by overriding this method.
+	 * @param test id of the argument in the graph.
+	 * @return the arguments, (other than those IN the grounded labelling), of an extension 
+	 * that contains <code>test</code> and shows that it's accepted, as a bitset over graph ids,
+	 * or null if <code>test</code> isn't accepted.
+	 */
+	long[] acceptUndecided(int test) {
+		return null;
+	}
+
+	/**
+	 * The materialized framework of the current Query.
+	 * @return attack graph.
+	 */
+	AttackGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * The grounded label (IN, OUT or UNDEC) of an argument in the graph.
+	 * @param id argument id.
+	 * @return label.
+	 */
+	byte getLabel(int id) {
+		return labels[id];
+	}
+
+	/**
+	 * Build a LabellingSolver over the UNDEC arguments that an UNDEC argument depends on, (i.e. that it can
+	 * reach by following defeats back through UNDEC arguments).  The other arguments can be left out because
+	 * every complete labelling agrees with the grounded labelling on them, and OUT arguments don't affect anything.
+	 * @param test id of an UNDEC argument, which becomes index 0 of the solver.
+	 * @return solver for the UNDEC region that <code>test</code> depends on.
+	 */
+	LabellingSolver undecidedRegion(int test) {
+		int[] region = new int[graph.size()];
+		int[] index = new int[graph.size()];
+		Arrays.fill(index, -1);
+		int size = 0;
+		region[size] = test;
+		index[test] = size++;
+		for (int i=0; i<size; i++) {
+			int[] defeaters = graph.getDefeaters(region[i]);
+			for (int j=0; j<defeaters.length; j++) {
+				if (labels[defeaters[j]]==UNDEC && index[defeaters[j]]<0) {
+					region[size] = defeaters[j];
+					index[defeaters[j]] = size++;
+				}
+			}
+		}
+		int[] graphIds = new int[size];
+		System.arraycopy(region, 0, graphIds, 0, size);
+		LabellingSolver solver = new LabellingSolver(graphIds);
+		for (int i=0; i<size; i++) {
+			int[] defeaters = graph.getDefeaters(region[i]);
+			for (int j=0; j<defeaters.length; j++) {
+				if (index[defeaters[j]]>=0) solver.addAttack(index[defeaters[j]], i);
+			}
+		}
+		if (logger.isLoggable(Level.FINE)) logger.fine("UNDEC region of " + graph.getArgument(test).getName() + " has " + size + " arguments");
+		return solver;
+	}
+
+	/**
+	 * Walk the defence of an accepted argument: every defeater of a PRO argument is answered by
+	 * a defeater from the accepted extension, which is the grounded IN arguments plus <code>extension</code>.
+	 */
+	private ReasonerPair defend(ReasonerPair testPair, int test, long[] extension, List<RuleArgument> proof) {
+		RuleArgumentList proList = testPair.getPRO();
+		RuleArgumentList oppList = testPair.getOPP();
+		int[] queue = new int[graph.size()];
+		boolean[] visited = new boolean[graph.size()];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = test;
+		visited[test] = true;
+		while (head<tail) {
+			int pro = queue[head++];
+			RuleArgument proArgument = graph.getArgument(pro);
+			proArgument.setStatus(RuleArgument.Status.UNDEFEATED);
+			if (!proof.contains(proArgument)) proof.add(proArgument);
+			int[] attackers = graph.getDefeaters(pro);
+			for (int i=0; i<attackers.length; i++) {
+				int opp = attackers[i];
+				if (visited[opp]) continue;
+				visited[opp] = true;
+				RuleArgument oppArgument = graph.getArgument(opp);
+				oppArgument.setStatus(RuleArgument.Status.DEFEATED);
+				if (!proof.contains(oppArgument)) proof.add(oppArgument);
+				oppList = oppList.cloneAndExtend(oppArgument);
+				int[] defenders = graph.getDefeaters(opp);
+				for (int j=0; j<defenders.length; j++) {
+					int defender = defenders[j];
+					if (labels[defender]==IN || (extension!=null && (extension[defender>>>6] & (1L<<defender))!=0)) {
+						if (!visited[defender]) {
+							visited[defender] = true;
+							queue[tail++] = defender;
+							proList = proList.cloneAndExtend(graph.getArgument(defender));
+						}
+						break;
+					}
+				}
+			}
+		}
+		if (listener!=null) listener.argumentAccepted(0, graph.getArgument(test), proList);
+		return new ReasonerPair(proList, oppList);
+	}
+
+	/**
+	 * Extend the grounded labelling to the arguments that have been added to the graph since
+	 * the last call.  Arguments that were labelled before can't be affected because the new
+	 * arguments don't defeat them.  An argument is IN when all of it's defeaters are OUT, OUT
+	 * when one of it's defeaters is IN, and UNDEC if neither ever happens.
+	 */
+	private void label() {
+		int from = labelled;
+		int to = graph.size();
+		if (from==to) return;
+		if (labels.length<to) {
+			byte[] larger = new byte[Math.max(to, labels.length*2)];
+			System.arraycopy(labels, 0, larger, 0, labels.length);
+			labels = larger;
+		}
+		int n = to - from;
+		// victims of each new argument (within the new arguments), as primitive adjacency arrays
+		int[] victimCounts = new int[n];
+		for (int z=from; z<to; z++) {
+			int[] defeaters = graph.getDefeaters(z);
+			for (int i=0; i<defeaters.length; i++) {
+				if (defeaters[i]>=from) victimCounts[defeaters[i]-from]++;
+			}
+		}
+		int[][] victims = new int[n][];
+		for (int i=0; i<n; i++) {
+			victims[i] = new int[victimCounts[i]];
+			victimCounts[i] = 0;
+		}
+		// count the defeaters that aren't OUT yet, and seed the worklist
+		int[] pending = new int[n];
+		int[] worklist = new int[n];
+		int head = 0;
+		int tail = 0;
+		for (int z=from; z<to; z++) {
+			int[] defeaters = graph.getDefeaters(z);
+			for (int i=0; i<defeaters.length; i++) {
+				int d = defeaters[i];
+				if (d>=from) {
+					victims[d-from][victimCounts[d-from]++] = z;
+					pending[z-from]++;
+				} else if (labels[d]==IN) {
+					labels[z] = OUT;
+				} else if (labels[d]==UNDEC) {
+					pending[z-from]++; // never resolves
+				}
+			}
+			if (labels[z]==OUT) {
+				worklist[tail++] = z;
+			} else if (pending[z-from]==0) {
+				labels[z] = IN;
+				worklist[tail++] = z;
+			}
+		}
+		// propagate
+		while (head<tail) {
+			int x = worklist[head++];
+			int[] xVictims = victims[x-from];
+			for (int i=0; i<xVictims.length; i++) {
+				int v = xVictims[i];
+				if (labels[v]!=0) continue;
+				if (labels[x]==IN) {
+					labels[v] = OUT;
+					worklist[tail++] = v;
+				} else if (--pending[v-from]==0) {
+					labels[v] = IN;
+					worklist[tail++] = v;
+				}
+			}
+		}
+		for (int z=from; z<to; z++) {
+			if (labels[z]==0) labels[z] = UNDEC;
+		}
+		labelled = to;
+	}
+}
@@ -2,7 +2,6 @@ package org.aspic.inference;
 
 import java.util.Iterator;
 import java.util.List;
-import java.util.logging.Logger;
 
 
 /**
@@ -11,7 +10,6 @@ import java.util.logging.Logger;
  * @author mjs (matthew.south@cancer.org.uk)
  */
 class GroundedReasoner extends AbstractReasoner {
-	private static Logger logger = Logger.getLogger(GroundedReasoner.class.getName());		
 		
 	ReasonerPair evaluate(ReasonerPair testPair, List<RuleArgument> proof) {
 		return calculate(testPair, proof, 0);
@@ -22,10 +20,10 @@ class GroundedReasoner extends AbstractReasoner {
 	 */ 
 	ReasonerPair calculate(ReasonerPair testPair, List<RuleArgument> proof, int level) {
 		int numberOfAttacks = 0;
-		log("STS: " + testPair.inspect(), level);
-		RuleArgument testArgument = testPair.getPRO().getArguments().get(testPair.getPRO().getArguments().size()-1); // get last element from PRO list
+		if (listener!=null) listener.disputeStarted(level, testPair);
+		RuleArgument testArgument = testPair.getPRO().getLast(); // get last element from PRO list
 		testArgument.setStatus(RuleArgument.Status.DEFEATED); // assume failure
-		log("OPP: starting attack against " + testArgument.getName(), level); 
+		if (listener!=null) listener.attackStarted(level, testArgument);
 		Iterator<RuleArgument> itrAttackers = testArgument.deepSuccessfulAttackingArgumentIterator(Party.OPP, level);
 		boolean failure = false;
 		while (itrAttackers.hasNext() && failure==false) {
@@ -33,8 +31,10 @@ class GroundedReasoner extends AbstractReasoner {
 			if (!proof.contains(attacker)) proof.add(attacker);
 			attacker.setStatus(RuleArgument.Status.UNDEFEATED);
 			numberOfAttacks++;
-			log("OPP: found " + numberWriter(numberOfAttacks) + " attack against " + testArgument.getName() + " : " + attacker.getName(), level);
-			log("PRO: starting defense against " + testArgument.getName() + " <- " + attacker.getName(), level);
+			if (listener!=null) {
+				listener.attackFound(level, testArgument, attacker, numberOfAttacks);
+				listener.defenseStarted(level, testArgument, attacker);
+			}
 			// try defending against attacker
 			Iterator<RuleArgument> itrDefenders = attacker.deepSuccessfulAttackingArgumentIterator(Party.PRO, level);
 			boolean success = false;
@@ -44,70 +44,42 @@ class GroundedReasoner extends AbstractReasoner {
 				if (!proof.contains(defender)) proof.add(defender);
 				// ignore defenders that are already in PRO
 				if (testPair.getPRO().includesSemanticallyEqual(defender)) {
-					log("OPP: " + defender.getName() + " ignored because it's already used.", level);
+					if (listener!=null) listener.argumentIgnored(Party.PRO, level, defender);
 					continue defenderLoop;
 				}
 				// ignore defenders that are counter-attacked (ignore loops)
-				if (attacker.isDeepSuccessfulAttackerOf(defender)) continue defenderLoop;
-				log("PRO: found possible defender " + testArgument.getName() + " <- " + attacker.getName() + " <- " + defender.getName(), level);
+				if (attacker.isDeepSuccessfulAttackerOf(defender)) {
+					if (listener!=null) listener.argumentIgnored(Party.PRO, level, defender);
+					continue defenderLoop;
+				}
+				if (listener!=null) listener.defenseTried(level, testArgument, attacker, defender);
 				ReasonerPair newPair = calculate(new ReasonerPair(testPair.getPRO().cloneAndExtend(defender), testPair.getOPP().cloneAndExtend(attacker)), proof, level+1);
 				if (newPair!=null) {
-					log("PRO: defender successful.", level);
+					if (listener!=null) listener.defenseSucceeded(level, testArgument, attacker, defender);
 					success=true;
 					testPair = newPair;
 				} else {
-					log("PRO: defender failed.", level);
+					if (listener!=null) listener.defenseFailed(level, testArgument, attacker, defender);
 				}
 			}
 			if (success==true) {
 				attacker.setStatus(RuleArgument.Status.DEFEATED);
-				log("PRO: defense successful, returning new move: " + testPair.inspect(), level);
+				if (listener!=null) listener.attackRepelled(level, testArgument, attacker, testPair);
 			} else {
-				log("PRO: defense failed, returning empty move, {[], []}.", level);
+				if (listener!=null) listener.defenseFailed(level, testArgument, attacker, null);
 				failure=true;
 			}
 		}
 		if (failure==true) {
+			if (listener!=null) listener.argumentRejected(level, testArgument);
 			return new ReasonerPair();
 		} else {
-			if (numberOfAttacks==0) {
-				log("OPP: no attackers, hence attack on " + testArgument.getName() + " fails", level);
-			} else {
-				log("OPP: no more attackers, hence attack on " + testArgument.getName() + " fails", level);			
-			}
 			testArgument.setStatus(RuleArgument.Status.UNDEFEATED);
+			if (listener!=null) {
+				listener.attacksExhausted(level, testArgument, numberOfAttacks);
+				listener.argumentAccepted(level, testArgument, testPair.getPRO());
+			}
 			return testPair;
 		}
 	}
-	
-	/**
-	 * Write indented message to the logStream
-	 * @param message The message to write
-	 * @param level The level of indentation
-	 */
-	private void log(String message, int level) {
-		// indent based on level (this is the reason level is passed around)
-		StringBuffer indentedMessage = new StringBuffer();
-		for (int i=0; i<level; i++) {
-			indentedMessage.append("    ");
-		}
-		indentedMessage.append(message);
-		//System.out.println("Logging fine message. current level = " + logger.getLevel().toString());
-		logger.fine(indentedMessage.toString());
-	}
-	
-	/** 
-	 * Return prettified index, i.e. numberWrite(97) = "97th"
-	 * @param number
-	 * @return prettified number
-	 */
-	private String numberWriter(int number) {
-		switch(number) {
-		case 1 : return "1st";
-		case 2 : return "2nd";
-		case 3 : return "3rd";
-		default : return number + "th";
-		}
-	}
-
 }
@@ -1,7 +1,6 @@
 package org.aspic.inference;
 
 import java.util.Iterator;
-import java.util.logging.Logger;
 
 
 /** 
@@ -12,7 +11,6 @@ import java.util.logging.Logger;
  * @author mjs (matthew.south @ cancer.org.uk).
  */
 public class Is extends Binary {
-	private static Logger logger = Logger.getLogger(Is.class.getName());		
 	private static final String OPERATOR = "is";
 	
 	/**
@@ -52,11 +50,11 @@ public class Is extends Binary {
 			if (((ConstantNumber) getLeft()).getNumber().floatValue() == ((ConstantNumber) candidate).getNumber().floatValue()) {
 				Rule topRule = new Rule(Is.this);
 				topRule.setKnowledgeBase(this.getKnowledgeBase());
-				RuleArgument argument = new RuleArgument(topRule, new Double(1.0), subs, new RuleArgumentList(), party, level, d_top, valuator, restrictedRebutting);
-				logger.fine(party + ": found " + argument.getName() + " : " + argument.inspect());
+				RuleArgument argument = new RuleArgument(topRule, 1.0, subs, new RuleArgumentList(), party, level, d_top, valuator, restrictedRebutting);
+				if (getTraceListener()!=null) getTraceListener().argumentFound(party, level, argument);
 				return new SingleArgumentIterator(argument);
 			} else {
-				logger.fine(party + ": unable to develop argument for " + this.inspect() + ".");
+				if (getTraceListener()!=null) getTraceListener().literalFailed(party, level, this);
 				return new EmptyArgumentIterator();
 			}
 		// next allow a variable in the left-hand side to be resolved with a number in the right.
@@ -65,8 +63,8 @@ public class Is extends Binary {
 			Constant unified = this.apply(subs);
 			Rule topRule = new Rule(unified);
 			topRule.setKnowledgeBase(this.getKnowledgeBase());
-			RuleArgument argument = new RuleArgument(topRule, new Double(1.0), subs, new RuleArgumentList(), party, level, d_top, valuator, restrictedRebutting);
-			logger.fine(party + ": found " + argument.getName() + " with substitution " + subs.inspect() + ": " + argument.inspect());
+			RuleArgument argument = new RuleArgument(topRule, 1.0, subs, new RuleArgumentList(), party, level, d_top, valuator, restrictedRebutting);
+			if (getTraceListener()!=null) getTraceListener().argumentFound(party, level, argument);
 			return new SingleArgumentIterator(argument);
 		} else {
 			// drop back to Term's argumentIterator, just in case.
@@ -2,14 +2,18 @@ package org.aspic.inference;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.aspic.inference.writers.KnowledgeWriter;
 
@@ -39,7 +43,6 @@ public class KnowledgeBase implements Cloneable, Serializable {
 	//TODO?: Implement db backed KB.
 	//TODO: consolidate getRules and ruleIterator - do we need them both?
 	//TODO: Implement KnowledgeBase.merge
-	//TODO: Add in Knowledge listeners so that if the knowledge changes, then queries can know they are "stale" and need refreshing.
 	// a map that stores all rules in the knowledge base, indexed by the consequent's functor and the arity of the antecedent.
     protected Map<String, Map<Integer, List<Rule>>> rulesMap = new HashMap<String, Map<Integer, List<Rule>>>();
 	// A map that keeps a track of named rules, where the key is the ruleTag of the rule name's consequent and the value is the rule
@@ -51,6 +54,29 @@ public class KnowledgeBase implements Cloneable, Serializable {
     protected Map<Rule, List<Rule>> transposedRules = null;
     // used for capturing known "predicates" for the getPredicates and getPredicateArity methods
     protected Map<String, Set<Integer>> predicates = new HashMap<String, Set<Integer>>(); 
+    // argument indexes over the rule lists in rulesMap, built on demand and discarded whenever their list changes
+    private transient Map<List<Rule>, RuleIndex> ruleIndexes = null;
+    // the rules in rulesMap by the fingerprint of their consequent and antecedent size, (see ruleExists), built on demand
+    private transient Map<Long, List<Rule>> ruleFingerprints = null;
+    // interned functors and hash-consed ground constants and terms
+    private transient SymbolTable symbolTable = null;
+    // receives the trace of argument development and reasoning (null if nobody's listening)
+    private transient ReasonerTraceListener traceListener = null;
+    // the predicate dependency graph, (see getDependencyGraph), built on demand and discarded whenever the rules change
+    private transient volatile Map<String, Set<String>> dependencyGraph = null;
+    // rule tags of the literals whose rules depend on themselves, found on demand and discarded whenever the rules change
+    private transient volatile Set<String> recursiveRuleTags = null;
+    // the rules compiled to propositional form, compiled on demand and discarded whenever the rules change
+    private transient volatile PropositionalProgram propositionalProgram = null;
+    // the cardinalities of the predicates, (see getPredicateStatistics)
+    private transient volatile PredicateStatistics predicateStatistics = null;
+    // a frozen knowledge base can't be changed, so it can be queried by many threads at once
+    private boolean frozen = false;
+    // the number of changes to the rules, in all and for each rule tag, (see getVersion)
+    private long version = 0;
+    private Map<String, Long> ruleTagVersions = new HashMap<String, Long>();
+    // receive the changes to the rules (null if nobody's listening)
+    private transient List<KnowledgeListener> knowledgeListeners = null;
 
     /** 
 	 * default Constructor
@@ -69,6 +95,34 @@ public class KnowledgeBase implements Cloneable, Serializable {
 			transposedRules = new HashMap<Rule, List<Rule>>();
 		}
 	}
+	
+	/**
+	 * Constructor for an overlay, (see KnowledgeBaseOverlay).  The new knowledge base holds 
+	 * no rules of it's own, but shares the rule names, transposition and trace listener of
+	 * the <code>base</code>.
+	 * @param base the knowledge base under the overlay.
+	 */
+	KnowledgeBase(KnowledgeBase base) {
+		this.usingTransposition = base.usingTransposition;
+		if (isUsingTransposition()) {
+			transposedRules = new HashMap<Rule, List<Rule>>();
+		}
+		this.namedRules = new RuleNameBidiMap(base.namedRules);
+		this.counter = base.counter;
+		this.traceListener = base.traceListener;
+	}
+	
+	/**
+	 * Create a lightweight view of this knowledge base, to which rules can be added (and from which
+	 * they can be removed again) without changing this knowledge base.  Creating the overlay and 
+	 * adding or removing a rule only costs as much as the rules that are added, so it's a cheap 
+	 * way of asking "what if" questions.  This knowledge base mustn't be changed while the overlay
+	 * is in use, but it can be frozen and shared by any number of overlays at once.
+	 * @return new overlay.
+	 */
+	public KnowledgeBase overlay() {
+		return new KnowledgeBaseOverlay(this);
+	}
     
     /**
      * Get list of non auto-generated rules.
@@ -126,6 +180,7 @@ public class KnowledgeBase implements Cloneable, Serializable {
 	}
 	
 	public void setUsingTransposition(boolean usingTransposition) {
+		if (this.usingTransposition!=usingTransposition) checkNotFrozen();
 		if (this.isUsingTransposition() == false && usingTransposition == true) {
 			transposedRules = new HashMap<Rule, List<Rule>>();
 			ArrayList<Rule> rulesToBeTransposed = new ArrayList<Rule>();
@@ -159,6 +214,9 @@ public class KnowledgeBase implements Cloneable, Serializable {
 	 * reference set to the containing knowledgebase, i.e. *this* object.	 * 
 	 */
 	public void addRule(Rule rule) {
+		checkNotFrozen();
+		// share ground constants and terms with the rest of the knowledge base (makes the exists check cheaper too)
+		getSymbolTable().intern(rule);
 		// check that rule doesnt exist already (throw exception if it does)
 		if (!ruleExists(rule)) { // not sure if the exists check will be too expensive
 			if (rule.getName()==null || !rule.getName().equals(rule.getConsequent())) {
@@ -207,6 +265,7 @@ public class KnowledgeBase implements Cloneable, Serializable {
 	 * also need to be removed.
 	 */
 	public boolean removeRule(Rule rule) throws RuntimeException {
+		checkNotFrozen();
 		Rule kbcopy = this.getRule(rule); 		
 		if (kbcopy.isAutoGenerated()) {
 			throw new RuntimeException("Cannot remove an automatically generated rule - try removing the rule that generated it");
@@ -253,6 +312,27 @@ public class KnowledgeBase implements Cloneable, Serializable {
 		return namedRules.getRule(name); 		
 	}          
 
+	/**
+	 * Get the knowledge base's own rule names, (not those of the knowledge base under an overlay).
+	 * Used to write the knowledge base to a file, (see KnowledgeBaseFile).
+	 * @return read-only map from each rule name to it's rule.
+	 */
+	Map<Constant, Rule> getRuleNames() {
+		return namedRules.getLocalNames();
+	}
+
+	/**
+	 * Add a rule name that's known not to conflict with the others, without checking the rule names
+	 * that are there already.  Used to read the knowledge base from a file, (see KnowledgeBaseFile).
+	 * @param name rule name.
+	 * @param rule the named rule, (already added with <code>addRuleLocal</code>).
+	 */
+	void restoreRuleName(Constant name, Rule rule) {
+		checkNotFrozen();
+		name.setKnowledgeBase(this);
+		namedRules.restore(name, rule);
+	}
+
     /**
 	 * Override the standard Object method with a view of the knowledgebase that shows the rule Index
 	 * output of the form :
@@ -264,12 +344,12 @@ public class KnowledgeBase implements Cloneable, Serializable {
 		int index=0;
 		StringBuffer result = new StringBuffer();
         
+        Iterator<Rule> iterator = ruleIterator();
         //Henrik: Added for empty knowledgebases
-        if (rulesMap.isEmpty()){
+        if (!iterator.hasNext()){
             return "";
         }        
 		
-        Iterator<Rule> iterator = new RuleIterator();
 		while (iterator.hasNext()) {
 			Rule rule = iterator.next();
 			if (rule.getConsequent().ruleTag().equals(ruleTag) && rule.getAntecedent().size()==arity) index++; else index=0;
@@ -297,7 +377,7 @@ public class KnowledgeBase implements Cloneable, Serializable {
 	public String inspect(boolean showAutoGeneratedRuleNames, boolean showAutoGeneratedRules) {
 		StringBuffer result = new StringBuffer();
 		boolean started=false;
-		Iterator<Rule> iterator = new RuleIterator();
+		Iterator<Rule> iterator = ruleIterator();
 		while (iterator.hasNext()) {
 			Rule rule = iterator.next();
 			String temp = rule.inspect(showAutoGeneratedRuleNames, showAutoGeneratedRules);
@@ -360,6 +440,16 @@ public class KnowledgeBase implements Cloneable, Serializable {
 		}
 		// clone namedRules
 		o.namedRules = (RuleNameBidiMap) o.namedRules.clone();
+		o.frozen = false;
+		o.ruleIndexes = null;
+		o.ruleFingerprints = null;
+		o.symbolTable = null;
+		o.dependencyGraph = null;
+		o.recursiveRuleTags = null;
+		o.propositionalProgram = null;
+		o.predicateStatistics = null;
+		o.ruleTagVersions = new HashMap<String, Long>(ruleTagVersions);
+		o.knowledgeListeners = null; // the listeners are listening to this knowledge base, not the clone
 		
 		return o;
 	}
@@ -371,18 +461,49 @@ public class KnowledgeBase implements Cloneable, Serializable {
 	 * @return
 	 */
 	public boolean ruleExists(Rule rule) {
-		if (rulesMap.containsKey(rule.getConsequent().ruleTag()) && rulesMap.get(rule.getConsequent().ruleTag()).containsKey(rule.getAntecedent().size())) {
-			List<Rule> list = rulesMap.get(rule.getConsequent().ruleTag()).get(rule.getAntecedent().size());
+		// only the rules whose consequent has the same fingerprint can be equal, (rather than every rule with the same rule tag and arity)
+		List<Rule> list = getRuleFingerprints().get(fingerprint(rule));
+		if (list!=null) {
 			Iterator<Rule> iterator = list.iterator();
-			// iterate through each rule and remove the match if there is one.
 			while (iterator.hasNext()) {
 				Rule testRule = iterator.next();
 				if (testRule.isEqualModuloVariables(rule)) return true;
 			}
-			return false;	
-		} else {
-			return false;
-		}				
+		}
+		return false;
+	}
+	
+	/*
+	 * The rules by the fingerprint of their consequent and the size of their antecedent, (built on demand, 
+	 * or when the knowledge base is frozen, and kept up to date by addRuleLocal and localRemove).  Rules that
+	 * are equal modulo variables have the same key, so a knowledge base with hundreds of thousands of facts 
+	 * for a single predicate doesn't have to compare each rule that's added with all of them.
+	 */
+	private Map<Long, List<Rule>> getRuleFingerprints() {
+		if (ruleFingerprints==null) {
+			Map<Long, List<Rule>> result = new HashMap<Long, List<Rule>>();
+			for (Map<Integer, List<Rule>> arityMap : rulesMap.values()) {
+				for (List<Rule> rules : arityMap.values()) {
+					for (Rule rule : rules) addFingerprint(result, rule);
+				}
+			}
+			ruleFingerprints = result;
+		}
+		return ruleFingerprints;
+	}
+	
+	private static long fingerprint(Rule rule) {
+		return Element.fingerprint(rule.getConsequent().fingerprint(), rule.getAntecedent().size());
+	}
+	
+	private static void addFingerprint(Map<Long, List<Rule>> fingerprints, Rule rule) {
+		Long key = Long.valueOf(fingerprint(rule));
+		List<Rule> rules = fingerprints.get(key);
+		if (rules==null) {
+			rules = new ArrayList<Rule>(1);
+			fingerprints.put(key, rules);
+		}
+		rules.add(rule);
 	}
 	
 	/**
@@ -414,6 +535,357 @@ public class KnowledgeBase implements Cloneable, Serializable {
 		return rulesMap.get(ruleTag);
 	}
 	
+	/**
+	 * Used in Constant.argumentIterator to narrow down one of the arity map's rule lists to those 
+	 * rules whose consequent might unify with a literal (see RuleIndex).
+	 * @param rules a rule list from the arity map.
+	 * @param literal the literal that's being sought.
+	 * @return the candidate rules, which must not be modified.
+	 */
+	protected List<Rule> getCandidateRules(List<Rule> rules, Constant literal) {
+		if (ruleIndexes==null) ruleIndexes = new IdentityHashMap<List<Rule>, RuleIndex>();
+		RuleIndex index = ruleIndexes.get(rules);
+		if (index==null) {
+			index = new RuleIndex(rules);
+			ruleIndexes.put(rules, index);
+		}
+		return index.getCandidateRules(literal);
+	}
+	
+	/**
+	 * The knowledge base's symbol table.
+	 * @return symbol table.
+	 */
+	SymbolTable getSymbolTable() {
+		if (symbolTable==null) symbolTable = new SymbolTable();
+		return symbolTable;
+	}
+	
+	/**
+	 * Freeze the knowledge base, making it an immutable snapshot that any number of threads
+	 * can query at once (each Query keeps it's own state in a QueryContext).  The indexes that 
+	 * are otherwise built on demand are built now, and any attempt to add or remove rules, or
+	 * to change transposition, throws a RuntimeException.  A clone of a frozen knowledge base
+	 * isn't frozen.
+	 */
+	public void freeze() {
+		if (frozen) return;
+		getSymbolTable();
+		ruleIndexes = new IdentityHashMap<List<Rule>, RuleIndex>();
+		for (Map<Integer, List<Rule>> arityMap : rulesMap.values()) {
+			for (List<Rule> rules : arityMap.values()) {
+				ruleIndexes.put(rules, new RuleIndex(rules));
+			}
+		}
+		getRuleFingerprints();
+		getDependencyGraph();
+		getRecursiveRuleTags();
+		getPredicateStatistics();
+		frozen = true;
+	}
+	
+	/**
+	 * Check whether the rules for a literal can depend on themselves, (directly or through other
+	 * rules), i.e. whether the rule tag is on a cycle of the predicate dependency graph.  The rules
+	 * of such a literal are given fresh variables each time they're used, so that an application of
+	 * a rule doesn't capture the variables of the applications of the same rule inside it.
+	 * @param ruleTag rule tag of a literal.
+	 * @return true if the literal's rules are recursive.
+	 */
+	boolean isRecursive(String ruleTag) {
+		return getRecursiveRuleTags().contains(ruleTag);
+	}
+
+	Set<String> getRecursiveRuleTags() {
+		Set<String> result = recursiveRuleTags;
+		if (result==null) {
+			result = findRecursiveRuleTags();
+			recursiveRuleTags = result;
+		}
+		return result;
+	}
+
+	void clearRecursiveRuleTags() {
+		recursiveRuleTags = null;
+	}
+
+	/**
+	 * Get the predicate dependency graph: from the rule tag of each rule's consequent to the rule tags
+	 * of it's antecedent and it's name, (including the names that are generated for unnamed rules and
+	 * the literals wrapped in others, e.g. \+(p)).  Facts don't add any edges.
+	 * @return the graph, (a rule tag with no rules, or only facts, has no entry).
+	 */
+	Map<String, Set<String>> getDependencyGraph() {
+		Map<String, Set<String>> result = dependencyGraph;
+		if (result==null) {
+			result = buildDependencyGraph();
+			dependencyGraph = result;
+		}
+		return result;
+	}
+
+	void clearDependencyGraph() {
+		dependencyGraph = null;
+	}
+
+	/**
+	 * <p>Get the slice of the knowledge base that's relevant to some literals: the rule tags whose rules
+	 * can contribute to the arguments for the literals, or to the arguments that might attack them.  That's
+	 * the literals' rule tags, their negations' (the "neg_" tags), the rule tags they depend on, (see 
+	 * <code>getDependencyGraph</code>), and so on, until every rule tag's negation and dependencies are
+	 * in the slice.</p>
+	 * <p>Arguments for the literals, and the disputes about them, only ever seek literals whose rule tags
+	 * are in the slice, (and built in predicates).</p>
+	 * @param ruleTags the literals' rule tags.
+	 * @return the rule tags in the slice.
+	 */
+	Set<String> getRelevantRuleTags(Collection<String> ruleTags) {
+		Map<String, Set<String>> graph = getDependencyGraph();
+		Set<String> result = new HashSet<String>();
+		List<String> stack = new ArrayList<String>();
+		for (String ruleTag : ruleTags) {
+			if (result.add(ruleTag)) stack.add(ruleTag);
+		}
+		while (!stack.isEmpty()) {
+			String ruleTag = stack.remove(stack.size()-1);
+			String negation = ruleTag.startsWith("neg_") ? ruleTag.substring(4) : "neg_" + ruleTag;
+			if (result.add(negation)) stack.add(negation);
+			Set<String> dependencies = graph.get(ruleTag);
+			if (dependencies!=null) {
+				for (String dependency : dependencies) {
+					if (result.add(dependency)) stack.add(dependency);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Collect the rule tags of the literals in an element, (see <code>getRelevantRuleTags</code>).
+	 * @param element a literal, or a list of literals.
+	 * @param ruleTags the rule tags collected so far.
+	 */
+	static void collectRuleTags(Element element, Set<String> ruleTags) {
+		if (element instanceof Constant) {
+			ruleTags.add(((Constant) element).ruleTag());
+			// a literal can be wrapped in another, e.g. \+(p)
+			if (element instanceof Term) collectRuleTags(((Term) element).getArgList(), ruleTags);
+		} else if (element instanceof ElementList) {
+			Iterator<Element> itr = ((ElementList) element).iterator();
+			while (itr.hasNext()) collectRuleTags(itr.next(), ruleTags);
+		}
+	}
+
+	/**
+	 * Get the knowledge base's rules compiled to propositional form, (see PropositionalProgram).
+	 * @return the propositional program, or null if the knowledge base isn't ground.
+	 */
+	PropositionalProgram getPropositionalProgram() {
+		PropositionalProgram result = propositionalProgram;
+		if (result==null) {
+			result = PropositionalProgram.compile(this);
+			propositionalProgram = result;
+		}
+		return (result==PropositionalProgram.NOT_GROUND) ? null : result;
+	}
+
+	void clearPropositionalProgram() {
+		propositionalProgram = null;
+	}
+
+	/**
+	 * Get the cardinality statistics of the knowledge base's predicates, used to order the literals of
+	 * an antecedent when they're sought, (see PredicateStatistics).
+	 * @return the statistics, (collected again after the rules change).
+	 */
+	PredicateStatistics getPredicateStatistics() {
+		PredicateStatistics result = predicateStatistics;
+		if (result==null) {
+			result = new PredicateStatistics(this);
+			predicateStatistics = result;
+		}
+		return result;
+	}
+
+	void clearPredicateStatistics() {
+		predicateStatistics = null;
+	}
+
+	/*
+	 * Find the rule tags that are on a cycle of the predicate dependency graph, using Tarjan's
+	 * strongly connected components algorithm (without recursion, so that a long chain of rules
+	 * can't overflow the stack).
+	 */
+	private Set<String> findRecursiveRuleTags() {
+		Map<String, Set<String>> graph = getDependencyGraph();
+		Set<String> result = new HashSet<String>();
+		Map<String, Integer> index = new HashMap<String, Integer>();
+		Map<String, Integer> lowLink = new HashMap<String, Integer>();
+		List<String> component = new ArrayList<String>();
+		Set<String> onComponent = new HashSet<String>();
+		List<String> path = new ArrayList<String>();
+		List<Iterator<String>> pathIterators = new ArrayList<Iterator<String>>();
+		for (String root : graph.keySet()) {
+			if (index.containsKey(root)) continue;
+			String node = root;
+			while (node!=null) {
+				// visit node
+				index.put(node, index.size());
+				lowLink.put(node, index.get(node));
+				component.add(node);
+				onComponent.add(node);
+				path.add(node);
+				pathIterators.add(graph.containsKey(node) ? graph.get(node).iterator() : new HashSet<String>().iterator());
+				node = null;
+				while (node==null && !path.isEmpty()) {
+					String current = path.get(path.size()-1);
+					Iterator<String> successors = pathIterators.get(path.size()-1);
+					if (successors.hasNext()) {
+						String successor = successors.next();
+						if (successor.equals(current)) result.add(current);
+						if (!index.containsKey(successor)) {
+							node = successor;
+						} else if (onComponent.contains(successor)) {
+							lowLink.put(current, Math.min(lowLink.get(current), index.get(successor)));
+						}
+					} else {
+						path.remove(path.size()-1);
+						pathIterators.remove(pathIterators.size()-1);
+						if (!path.isEmpty()) {
+							String parent = path.get(path.size()-1);
+							lowLink.put(parent, Math.min(lowLink.get(parent), lowLink.get(current)));
+						}
+						if (lowLink.get(current).equals(index.get(current))) {
+							int start = component.lastIndexOf(current);
+							List<String> scc = component.subList(start, component.size());
+							if (scc.size()>1) result.addAll(scc);
+							onComponent.removeAll(scc);
+							scc.clear();
+						}
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Build the predicate dependency graph, (see getDependencyGraph).
+	 */
+	private Map<String, Set<String>> buildDependencyGraph() {
+		Map<String, Set<String>> graph = new HashMap<String, Set<String>>();
+		Iterator<Rule> ruleIterator = ruleIterator();
+		while (ruleIterator.hasNext()) {
+			Rule rule = ruleIterator.next();
+			if (rule.isFact()) continue;
+			String ruleTag = rule.getConsequent().ruleTag();
+			Set<String> dependencies = graph.get(ruleTag);
+			if (dependencies==null) {
+				dependencies = new HashSet<String>();
+				graph.put(ruleTag, dependencies);
+			}
+			collectRuleTags(rule.getAntecedent(), dependencies);
+			if (rule.getName()!=null) collectRuleTags(rule.getName(), dependencies);
+		}
+		return graph;
+	}
+
+	/**
+	 * Check whether this knowledge base's rules include all of another's, i.e. whether it is the 
+	 * other knowledge base or an overlay of it.  Used to decide which knowledge base the rules
+	 * for a literal should be looked up in during a query (see QueryContext).
+	 * @param kb knowledge base.
+	 * @return true if this knowledge base includes <code>kb</code>.
+	 */
+	boolean includes(KnowledgeBase kb) {
+		return kb==this;
+	}
+	
+	/**
+	 * Check whether the knowledge base has been frozen.
+	 * @return true if frozen.
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+	
+	private void checkNotFrozen() {
+		if (frozen) throw new RuntimeException("The knowledge base is frozen and can't be changed.");
+	}
+	
+	/**
+	 * Get the version of the knowledge base: the number of times a rule has been added to it or removed
+	 * from it, (including the rules it generates itself).
+	 * @return version.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Get the version of the rules for a rule tag, (see <code>Constant.ruleTag</code>): the number of times a
+	 * rule with a consequent with the rule tag has been added or removed.  A Query records the versions
+	 * of the rule tags of the literals it sought, to find out whether it's stale, (see <code>Query.isStale</code>).
+	 * @param ruleTag rule tag.
+	 * @return version of the rule tag's rules, (0 if they've never changed).
+	 */
+	public long getVersion(String ruleTag) {
+		Long result = ruleTagVersions.get(ruleTag);
+		return (result==null) ? 0 : result;
+	}
+
+	/**
+	 * Register a listener for the changes to the knowledge base's rules.
+	 * @param listener listener.
+	 */
+	public synchronized void addKnowledgeListener(KnowledgeListener listener) {
+		if (knowledgeListeners==null) knowledgeListeners = new CopyOnWriteArrayList<KnowledgeListener>();
+		knowledgeListeners.add(listener);
+	}
+
+	/**
+	 * Unregister a listener for the changes to the knowledge base's rules.
+	 * @param listener listener.
+	 */
+	public synchronized void removeKnowledgeListener(KnowledgeListener listener) {
+		if (knowledgeListeners!=null) knowledgeListeners.remove(listener);
+	}
+
+	/*
+	 * Count a change to the rules of a rule tag, and tell the listeners about it.
+	 */
+	private void changed(Rule rule, boolean added) {
+		String ruleTag = rule.getConsequent().ruleTag();
+		version++;
+		ruleTagVersions.put(ruleTag, getVersion(ruleTag)+1);
+		List<KnowledgeListener> listeners = knowledgeListeners;
+		if (listeners!=null) {
+			for (KnowledgeListener listener : listeners) {
+				if (added) {
+					listener.ruleAdded(this, rule);
+				} else {
+					listener.ruleRemoved(this, rule);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Getter for trace listener.
+	 * @return the listener that receives the trace of queries against this knowledge base, or null.
+	 */
+	public ReasonerTraceListener getTraceListener() {
+		return traceListener;
+	}
+	
+	/**
+	 * Setter for trace listener.
+	 * @param traceListener listener that will receive the trace of queries against this knowledge base, or null for no trace.
+	 */
+	public void setTraceListener(ReasonerTraceListener traceListener) {
+		this.traceListener = traceListener;
+	}
+	
 	/*
 	 * Get the Knowledge Base's copy of a particular rule, ignoring the name.
 	 * NB This was once used in removeRule, but it's usage was replaced by the transposedRules map.
@@ -449,6 +921,8 @@ public class KnowledgeBase implements Cloneable, Serializable {
 	 * @param rule
 	 */
 	protected void addRuleLocal(Rule rule) {
+		checkNotFrozen();
+		getSymbolTable().intern(rule);
 		List<Rule> ruleArray;
 		Map<Integer, List<Rule>> arityMap;
 		String ruleTag = rule.getConsequent().ruleTag();
@@ -457,6 +931,7 @@ public class KnowledgeBase implements Cloneable, Serializable {
 			Integer arity = Integer.valueOf(rule.getAntecedent().size());
 			if (arityMap.containsKey(arity)) {
 				arityMap.get(arity).add(rule);
+				if (ruleIndexes!=null) ruleIndexes.remove(arityMap.get(arity));
 			} else {
 				ruleArray = new ArrayList<Rule>();
 				ruleArray.add(rule);
@@ -469,8 +944,14 @@ public class KnowledgeBase implements Cloneable, Serializable {
 			arityMap.put(Integer.valueOf(rule.getAntecedent().size()), ruleArray);
 			rulesMap.put(rule.getConsequent().ruleTag(), arityMap);
 		}
+		if (ruleFingerprints!=null) addFingerprint(ruleFingerprints, rule);
+		dependencyGraph = null;
+		recursiveRuleTags = null;
+		propositionalProgram = null;
+		predicateStatistics = null;
 		// Having added the knowledge, set the callback
 		rule.setKnowledgeBase(this);
+		changed(rule, true);
 	}
 	
 	// check that prescribed rulename doesnt conflict with autogenerated rulename, and if it does, change the automatically generated Rule name.	
@@ -528,7 +1009,25 @@ public class KnowledgeBase implements Cloneable, Serializable {
 	 */
 	private boolean localRemove(Rule rule) {
 		List<Rule> list = rulesMap.get(rule.getConsequent().ruleTag()).get(rule.getAntecedent().size());
-		return list.remove(rule);
+		if (ruleIndexes!=null) ruleIndexes.remove(list);
+		dependencyGraph = null;
+		recursiveRuleTags = null;
+		propositionalProgram = null;
+		predicateStatistics = null;
+		int position = list.indexOf(rule);
+		if (position<0) return false;
+		Rule removed = list.remove(position);
+		if (ruleFingerprints!=null) {
+			List<Rule> rules = ruleFingerprints.get(Long.valueOf(fingerprint(removed)));
+			for (int i=0; rules!=null && i<rules.size(); i++) {
+				if (rules.get(i)==removed) {
+					rules.remove(i);
+					break;
+				}
+			}
+		}
+		changed(rule, false);
+		return true;
 	}
 	
 	/*
@@ -686,10 +1185,18 @@ public class KnowledgeBase implements Cloneable, Serializable {
 	 *
 	 */
 	private class RuleNameBidiMap implements Cloneable, Serializable {
-		// TODO: Could use a performance boost in the lookup.
 		private Map<Constant, Rule> namedRules;
+		// the names by their functor, (a name can only unify with a name that has the same functor), in the order they were added
+		private Map<String, List<Constant>> functorNames;
+		// the names of the knowledge base under an overlay, (which are read, never changed), or null
+		private RuleNameBidiMap parent = null;
 		public RuleNameBidiMap() {
 			namedRules = new HashMap<Constant, Rule>();
+			functorNames = new HashMap<String, List<Constant>>();
+		}
+		public RuleNameBidiMap(RuleNameBidiMap parent) {
+			this();
+			this.parent = parent;
 		}
         
         //Henrik
@@ -704,35 +1211,50 @@ public class KnowledgeBase implements Cloneable, Serializable {
         
 		public void add(Constant name, Rule rule) {
 			if (!this.nameExists(name)) {
-				namedRules.put(name, rule);
+				put(name, rule);
 			} else {
 				throw new RuntimeException("Cannot add this rule name, " + name.inspect() + " because an equivalent Name exists already: " + this.getName(name).inspect());
 			}
 		}
+		// add a name without checking for an equivalent one, (see restoreRuleName)
+		public void restore(Constant name, Rule rule) {
+			put(name, rule);
+		}
+		private void put(Constant name, Rule rule) {
+			if (namedRules.put(name, rule)==null) {
+				List<Constant> names = functorNames.get(name.getFunctor());
+				if (names==null) {
+					names = new ArrayList<Constant>(1);
+					functorNames.put(name.getFunctor(), names);
+				}
+				names.add(name);
+			}
+		}
+		public Map<Constant, Rule> getLocalNames() {
+			return Collections.unmodifiableMap(namedRules);
+		}
 		public boolean remove(Constant name) {
-			if (this.nameExists(name)) {
-				namedRules.remove(name);
+			if (this.getLocalName(name)!=null) {
+				if (namedRules.containsKey(name)) {
+					namedRules.remove(name);
+					List<Constant> names = functorNames.get(name.getFunctor());
+					names.remove(name);
+					if (names.isEmpty()) functorNames.remove(name.getFunctor());
+				}
 				return true;
 			} else 
 				return false;
 		}
 		public boolean nameExists(Constant name) {
-			Iterator<Constant> nameIterator = namedRules.keySet().iterator();
-			while (nameIterator.hasNext()) {
-				if (name.isUnifiable(nameIterator.next())) return true;
-			}
-			return false;
+			return getName(name)!=null;
 		}
 		public Rule getRule(Constant name) {
-			Iterator<Constant> nameIterator = namedRules.keySet().iterator();
-			while (nameIterator.hasNext()) {
-				Constant candidate = nameIterator.next();
-				if (name.isUnifiable(candidate)) return namedRules.get(candidate);
-			}
-			return null;
+			Constant candidate = getLocalName(name);
+			if (candidate!=null) return namedRules.get(candidate);
+			return (parent==null) ? null : parent.getRule(name);
 		}
 		public boolean isNamed(Rule rule) {
-			return namedRules.containsValue(rule);
+			return namedRules.containsValue(rule) || (parent!=null && parent.isNamed(rule));
 		}
 		/*
 		public Constant getName(Rule rule) {
@@ -741,9 +1263,14 @@ public class KnowledgeBase implements Cloneable, Serializable {
 		}
 		*/
 		public Constant getName(Constant name) {
-			Iterator<Constant> nameIterator = namedRules.keySet().iterator();
-			while (nameIterator.hasNext()) {
-				Constant candidate = nameIterator.next();
+			Constant candidate = getLocalName(name);
+			return (candidate==null && parent!=null) ? parent.getName(name) : candidate;
+		}
+		// look up a name without looking in the parent
+		private Constant getLocalName(Constant name) {
+			List<Constant> names = functorNames.get(name.getFunctor());
+			if (names==null) return null;
+			for (Constant candidate : names) {
 				if (name.isUnifiable(candidate)) return candidate;
 			}
 			return null;
@@ -756,6 +1283,10 @@ public class KnowledgeBase implements Cloneable, Serializable {
 				e.printStackTrace();
 			}
 			o.namedRules = (Map<Constant, Rule>) ((HashMap<Constant, Rule>) o.namedRules).clone();
+			o.functorNames = new HashMap<String, List<Constant>>();
+			for (Map.Entry<String, List<Constant>> entry : functorNames.entrySet()) {
+				o.functorNames.put(entry.getKey(), new ArrayList<Constant>(entry.getValue()));
+			}
 			Iterator<Constant> ruleNameIterator = o.namedRules.keySet().iterator();
 			while (ruleNameIterator.hasNext()) {
 				Constant ruleName = ruleNameIterator.next();
@@ -0,0 +1,468 @@
+package org.aspic.inference;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>A compact, versioned binary form of a KnowledgeBase, so that a knowledge base that's used again
+ * and again doesn't have to be parsed from it's Prolog text every time.  The file holds the knowledge
+ * base as it is once it's been built: every rule, (including the rule hooks and transposed rules that it
+ * generated itself), the rule names and the transpositions, so reading it doesn't have to generate or
+ * check any of them again.  It's read through a memory-mapped FileChannel.</p>
+ *
+ * <p>The file starts with a magic number and the format's version, followed by:</p>
+ * <ul>
+ * <li>the knowledge base's flags, (transposition), and the counter for generated rule names,</li>
+ * <li>the symbol table: every functor, number, variable name and caption, each written once,</li>
+ * <li>the rules, in the order of the knowledge base's rule lists, each written as it's flags and
+ * captions and the elements of it's argument list, (see <code>Rule</code>), where every element
+ * refers to it's symbols by their number,</li>
+ * <li>the rule names, each with the number of it's rule,</li>
+ * <li>the transpositions, each a strict rule's number and the numbers of it's transposed rules, and</li>
+ * <li>the predicates and their arities, (see <code>KnowledgeBase.getAllPredicates</code>).</li>
+ * </ul>
+ * <p>Numbers are written as variable length integers.  Variables are numbered in the order they occur,
+ * and are given new internal names when they're read, (the variables that share an internal name
+ * in the knowledge base share one when it's read too).</p>
+ */
+public class KnowledgeBaseFile {
+	/** The extension of a knowledge base file that's been compiled from another file, (see <code>getCompiledFile</code>). */
+	public static final String EXTENSION = ".akb";
+	/** The version of the format that's written. */
+	public static final int VERSION = 1;
+
+	private static final int MAGIC = 0x41534B42; // "ASKB"
+
+	private static final int VARIABLE = 0;
+	private static final int CONSTANT = 1;
+	private static final int INTEGER = 2;
+	private static final int FLOAT = 3;
+	private static final int TERM = 4;
+	private static final int BUILT_IN = 5;
+	private static final int LIST = 6;
+	private static final int CONSTANT_LIST = 7;
+
+	// the built in predicates, numbered by their position, (only ever add to the end)
+	private static final Class<?>[] BUILT_INS = {
+		Addition.class, Subtraction.class, Multiplication.class, Division.class, Is.class,
+		EqualTo.class, NotEqualTo.class, ArithmeticEqualTo.class, ArithmeticNotEqualTo.class,
+		LessThan.class, LessThanOrEqualTo.class, GreaterThan.class, GreaterThanOrEqualTo.class,
+		NegationAsFailure.class, Nonvar.class
+	};
+
+	private static final int AUTO_GENERATED = 1;
+	private static final int AUTO_NAMED = 2;
+	private static final int CAPTION = 4;
+	private static final int DESCRIPTION = 8;
+	private static final int CLAIM_CAPTION = 16;
+	private static final int CLAIM_DESCRIPTION = 32;
+
+	private KnowledgeBaseFile() {}
+
+	/**
+	 * Get the file that another file's knowledge base is compiled to, e.g. by a converter for agent files.
+	 * @param source the file the knowledge base is read from, e.g. an agent file.
+	 * @return the source file's name with the extension <code>EXTENSION</code> added.
+	 */
+	public static File getCompiledFile(File source) {
+		return new File(source.getPath() + EXTENSION);
+	}
+
+	/**
+	 * Check whether another file's knowledge base has been compiled since the file last changed.
+	 * @param source the file the knowledge base is read from.
+	 * @return true if the compiled file, (see <code>getCompiledFile</code>), exists and is up to date.
+	 */
+	public static boolean isCompiled(File source) {
+		File compiled = getCompiledFile(source);
+		return compiled.isFile() && compiled.lastModified()>=source.lastModified();
+	}
+
+	/**
+	 * Write a knowledge base to a file.
+	 * @param kb knowledge base, (not an overlay).
+	 * @param file the file to write.
+	 * @throws IOException if the file can't be written.
+	 */
+	public static void write(KnowledgeBase kb, File file) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			write(kb, out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Write a knowledge base to a stream.
+	 * @param kb knowledge base, (not an overlay).
+	 * @param out the stream to write to, (it isn't closed).
+	 * @throws IOException if the stream can't be written.
+	 */
+	public static void write(KnowledgeBase kb, OutputStream out) throws IOException {
+		if (kb instanceof KnowledgeBaseOverlay) throw new RuntimeException("An overlay can't be written, (write the knowledge base under it).");
+		Writer writer = new Writer();
+		writer.write(kb);
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		writeNumber(header, kb.isUsingTransposition() ? 1 : 0);
+		writeNumber(header, kb.counter);
+		writeNumber(header, writer.symbols.size());
+		for (String symbol : writer.symbols.keySet()) {
+			byte[] bytes = symbol.getBytes("UTF-8");
+			writeNumber(header, bytes.length);
+			header.write(bytes);
+		}
+		header.writeTo(data);
+		writer.body.writeTo(data);
+		data.flush();
+	}
+
+	/**
+	 * Read a knowledge base from a file that was written by <code>write</code>.  The file is
+	 * memory-mapped, rather than read through a stream.
+	 * @param file the file to read.
+	 * @return new knowledge base.
+	 * @throws IOException if the file can't be read or isn't a knowledge base file of a version that can be read.
+	 */
+	public static KnowledgeBase read(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size()>Integer.MAX_VALUE) throw new IOException(file + " is too big to be a knowledge base file.");
+			return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Read a knowledge base from a buffer that holds what <code>write</code> wrote.
+	 * @param buffer the buffer, read from it's position.
+	 * @return new knowledge base.
+	 * @throws IOException if the buffer doesn't hold a knowledge base of a version that can be read.
+	 */
+	public static KnowledgeBase read(ByteBuffer buffer) throws IOException {
+		try {
+			if (buffer.getInt()!=MAGIC) throw new IOException("Not a knowledge base file.");
+			int version = buffer.getInt();
+			if (version!=VERSION) throw new IOException("Can't read version " + version + " of the knowledge base file format.");
+			return new Reader(buffer).read();
+		} catch (BufferUnderflowException e) {
+			throw new IOException("The knowledge base file is truncated.");
+		}
+	}
+
+	/*
+	 * Writes the rules of a knowledge base to the body, numbering the symbols as it goes.
+	 */
+	private static class Writer {
+		Map<String, Integer> symbols = new LinkedHashMap<String, Integer>();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		private Map<String, Integer> variables = new HashMap<String, Integer>();
+		private Map<Rule, Integer> ruleNumbers = new IdentityHashMap<Rule, Integer>();
+
+		void write(KnowledgeBase kb) throws IOException {
+			List<Rule> rules = new ArrayList<Rule>();
+			Iterator<Rule> ruleIterator = kb.ruleIterator();
+			while (ruleIterator.hasNext()) {
+				Rule rule = ruleIterator.next();
+				ruleNumbers.put(rule, rules.size());
+				rules.add(rule);
+			}
+			writeNumber(body, rules.size());
+			for (Rule rule : rules) {
+				writeRule(rule);
+			}
+			Map<Constant, Rule> names = kb.getRuleNames();
+			writeNumber(body, names.size());
+			for (Map.Entry<Constant, Rule> entry : names.entrySet()) {
+				writeElement(entry.getKey());
+				writeNumber(body, number(entry.getValue()));
+			}
+			Map<Rule, List<Rule>> transpositions = (kb.transposedRules==null) ? new HashMap<Rule, List<Rule>>() : kb.transposedRules;
+			writeNumber(body, transpositions.size());
+			for (Map.Entry<Rule, List<Rule>> entry : transpositions.entrySet()) {
+				writeNumber(body, number(entry.getKey()));
+				writeNumber(body, entry.getValue().size());
+				for (Rule transposition : entry.getValue()) {
+					writeNumber(body, number(transposition));
+				}
+			}
+			writeNumber(body, kb.predicates.size());
+			for (Map.Entry<String, Set<Integer>> entry : kb.predicates.entrySet()) {
+				writeSymbol(entry.getKey());
+				writeNumber(body, entry.getValue().size());
+				for (Integer arity : entry.getValue()) {
+					writeNumber(body, arity);
+				}
+			}
+		}
+
+		private int number(Rule rule) {
+			Integer result = ruleNumbers.get(rule);
+			if (result==null) throw new RuntimeException("The rule " + rule.inspect() + " isn't in the knowledge base.");
+			return result;
+		}
+
+		private void writeRule(Rule rule) throws IOException {
+			int flags = (rule.isAutoGenerated() ? AUTO_GENERATED : 0) | (rule.isAutoNamed() ? AUTO_NAMED : 0)
+				| (rule.getCaption()!=null ? CAPTION : 0) | (rule.getDescription()!=null ? DESCRIPTION : 0)
+				| (rule.getClaimCaption()!=null ? CLAIM_CAPTION : 0) | (rule.getClaimDescription()!=null ? CLAIM_DESCRIPTION : 0);
+			writeNumber(body, flags);
+			if (rule.getCaption()!=null) writeSymbol(rule.getCaption());
+			if (rule.getDescription()!=null) writeSymbol(rule.getDescription());
+			if (rule.getClaimCaption()!=null) writeSymbol(rule.getClaimCaption());
+			if (rule.getClaimDescription()!=null) writeSymbol(rule.getClaimDescription());
+			writeElements(rule.getArgList());
+		}
+
+		private void writeElement(Element element) throws IOException {
+			if (element instanceof Variable) {
+				Variable var = (Variable) element;
+				Integer number = variables.get(var.getInternalName());
+				if (number==null) {
+					number = variables.size();
+					variables.put(var.getInternalName(), number);
+				}
+				writeNumber(body, VARIABLE);
+				writeSymbol(var.getName());
+				writeNumber(body, number);
+			} else if (element instanceof ConstantInteger) {
+				writeNumber(body, INTEGER);
+				int value = ((ConstantInteger) element).getNumber();
+				writeNumber(body, (value << 1) ^ (value >> 31));
+			} else if (element instanceof ConstantFloat) {
+				// written as it's functor, (degrees of belief are mostly the same few numbers)
+				writeNumber(body, FLOAT);
+				writeSymbol(((ConstantFloat) element).getFunctor());
+			} else if (element instanceof BuiltIn) {
+				writeNumber(body, BUILT_IN);
+				writeNumber(body, builtIn(element));
+				writeElements(((Term) element).getArgList());
+			} else if (element instanceof Rule) {
+				throw new RuntimeException("A rule can't be written inside another element.");
+			} else if (element instanceof Term) {
+				writeNumber(body, TERM);
+				writeSymbol(((Term) element).getFunctor());
+				writeElements(((Term) element).getArgList());
+			} else if (element instanceof ConstantNumber) {
+				throw new RuntimeException("Can't write the number " + element.inspect());
+			} else if (element instanceof Constant) {
+				writeNumber(body, CONSTANT);
+				writeSymbol(((Constant) element).getFunctor());
+			} else if (element instanceof ConstantList) {
+				writeNumber(body, CONSTANT_LIST);
+				writeElements((ElementList) element);
+			} else if (element instanceof ElementList) {
+				writeNumber(body, LIST);
+				writeElements((ElementList) element);
+			} else {
+				throw new RuntimeException("Can't write the element " + element.inspect());
+			}
+		}
+
+		private void writeElements(ElementList list) throws IOException {
+			writeNumber(body, list.size());
+			for (Element element : list) {
+				writeElement(element);
+			}
+		}
+
+		private void writeSymbol(String symbol) throws IOException {
+			Integer number = symbols.get(symbol);
+			if (number==null) {
+				number = symbols.size();
+				symbols.put(symbol, number);
+			}
+			writeNumber(body, number);
+		}
+
+		private int builtIn(Element element) {
+			for (int i=0; i<BUILT_INS.length; i++) {
+				if (BUILT_INS[i]==element.getClass()) return i;
+			}
+			throw new RuntimeException("Can't write the built in predicate " + element.inspect());
+		}
+	}
+
+	/*
+	 * Reads the symbols and rules from a buffer into a new knowledge base.
+	 */
+	private static class Reader {
+		private ByteBuffer buffer;
+		private String[] symbols;
+		private List<String> variables = new ArrayList<String>();
+
+		Reader(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		KnowledgeBase read() throws IOException {
+			boolean usingTransposition = readNumber()==1;
+			KnowledgeBase kb = new KnowledgeBase(usingTransposition);
+			kb.counter = readNumber();
+			symbols = new String[readNumber()];
+			for (int i=0; i<symbols.length; i++) {
+				byte[] bytes = new byte[readNumber()];
+				buffer.get(bytes);
+				symbols[i] = new String(bytes, "UTF-8");
+			}
+			Rule[] rules = new Rule[readNumber()];
+			for (int i=0; i<rules.length; i++) {
+				rules[i] = readRule();
+				kb.addRuleLocal(rules[i]);
+			}
+			int names = readNumber();
+			for (int i=0; i<names; i++) {
+				Constant name = (Constant) readElement();
+				kb.restoreRuleName(name, rules[readNumber()]);
+			}
+			int transpositions = readNumber();
+			for (int i=0; i<transpositions; i++) {
+				Rule rule = rules[readNumber()];
+				List<Rule> transposed = new ArrayList<Rule>();
+				int n = readNumber();
+				for (int j=0; j<n; j++) {
+					transposed.add(rules[readNumber()]);
+				}
+				kb.transposedRules.put(rule, transposed);
+			}
+			int predicates = readNumber();
+			for (int i=0; i<predicates; i++) {
+				String functor = readSymbol();
+				Set<Integer> arities = new HashSet<Integer>();
+				int n = readNumber();
+				for (int j=0; j<n; j++) {
+					arities.add(readNumber());
+				}
+				kb.predicates.put(functor, arities);
+			}
+			return kb;
+		}
+
+		private Rule readRule() throws IOException {
+			int flags = readNumber();
+			String caption = ((flags & CAPTION)!=0) ? readSymbol() : null;
+			String description = ((flags & DESCRIPTION)!=0) ? readSymbol() : null;
+			String claimCaption = ((flags & CLAIM_CAPTION)!=0) ? readSymbol() : null;
+			String claimDescription = ((flags & CLAIM_DESCRIPTION)!=0) ? readSymbol() : null;
+			Rule rule = new Rule(readList(new ElementList()));
+			rule.setAutoGenerated((flags & AUTO_GENERATED)!=0);
+			rule.setAutoNamed((flags & AUTO_NAMED)!=0);
+			if (caption!=null) rule.setCaption(caption);
+			if (description!=null) rule.setDescription(description);
+			if (claimCaption!=null) rule.setClaimCaption(claimCaption);
+			if (claimDescription!=null) rule.setClaimDescription(claimDescription);
+			return rule;
+		}
+
+		private Element readElement() throws IOException {
+			int type = readNumber();
+			switch (type) {
+			case VARIABLE:
+				Variable var = new Variable(readSymbol());
+				int number = readNumber();
+				if (number==variables.size()) {
+					variables.add(var.getInternalName());
+				} else {
+					var.setInternalName(variables.get(number));
+				}
+				return var;
+			case CONSTANT:
+				return new Constant(readSymbol());
+			case INTEGER:
+				int value = readNumber();
+				return new ConstantInteger((value >>> 1) ^ -(value & 1));
+			case FLOAT:
+				return new ConstantFloat(Double.parseDouble(readSymbol()));
+			case TERM:
+				String functor = readSymbol();
+				return new Term(functor, readList(new ElementList()));
+			case BUILT_IN:
+				int builtIn = readNumber();
+				return builtIn(builtIn, readList(new ElementList()));
+			case LIST:
+				return readList(new ElementList());
+			case CONSTANT_LIST:
+				return readList(new ConstantList());
+			default:
+				throw new IOException("Unknown element type " + type + " in the knowledge base file.");
+			}
+		}
+
+		private ElementList readList(ElementList list) throws IOException {
+			int size = readNumber();
+			for (int i=0; i<size; i++) {
+				list.add(readElement());
+			}
+			return list;
+		}
+
+		private String readSymbol() {
+			return symbols[readNumber()];
+		}
+
+		private int readNumber() {
+			int result = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buffer.get();
+				result |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80)!=0);
+			return result;
+		}
+
+		private BuiltIn builtIn(int number, ElementList args) throws IOException {
+			if (number<0 || number>=BUILT_INS.length) throw new IOException("Unknown built in predicate " + number + " in the knowledge base file.");
+			Class<?> type = BUILT_INS[number];
+			if (type==NegationAsFailure.class) return new NegationAsFailure(args.get(0));
+			if (type==Nonvar.class) return new Nonvar(args.get(0));
+			Element left = args.get(0);
+			Element right = args.get(1);
+			if (type==Addition.class) return new Addition(left, right);
+			if (type==Subtraction.class) return new Subtraction(left, right);
+			if (type==Multiplication.class) return new Multiplication(left, right);
+			if (type==Division.class) return new Division(left, right);
+			if (type==Is.class) return new Is(left, right);
+			if (type==EqualTo.class) return new EqualTo(left, right);
+			if (type==NotEqualTo.class) return new NotEqualTo(left, right);
+			if (type==ArithmeticEqualTo.class) return new ArithmeticEqualTo(left, right);
+			if (type==ArithmeticNotEqualTo.class) return new ArithmeticNotEqualTo(left, right);
+			if (type==LessThan.class) return new LessThan(left, right);
+			if (type==LessThanOrEqualTo.class) return new LessThanOrEqualTo(left, right);
+			if (type==GreaterThan.class) return new GreaterThan(left, right);
+			return new GreaterThanOrEqualTo(left, right);
+		}
+	}
+
+	// write an unsigned variable length integer, 7 bits at a time, (the high bit says there's more)
+	private static void writeNumber(OutputStream out, int value) throws IOException {
+		while ((value & ~0x7F)!=0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+}
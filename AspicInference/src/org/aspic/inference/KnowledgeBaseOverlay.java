@@ -0,0 +1,236 @@
+package org.aspic.inference;
+
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * <p>A KnowledgeBase that layers rules of it's own over another, (the base), without changing it.
+ * See <code>KnowledgeBase.overlay</code>.  The overlay's own rulesMap only holds the rules that
+ * have been added to the overlay, so creating an overlay, and adding and removing it's rules, costs
+ * as much as those rules and nothing more.  Lookups merge the base's rules with the overlay's, (the
+ * base's first, as if the overlay's rules had been added to the end of the base), and the base's
+ * rule indexes are used for the base's rules.</p>
+ *
+ * <p>The base's rules keep referring to the base, so during a query the rules of every literal are
+ * looked up in the query's knowledge base, (see QueryContext), rather than in the literal's.</p>
+ */
+class KnowledgeBaseOverlay extends KnowledgeBase {
+	private static final long serialVersionUID = 1L;
+
+	private KnowledgeBase base;
+	private transient Map<String, Set<String>> baseDependencyGraph = null; // the base's, when the overlay's was built
+	private transient Set<String> baseRecursiveRuleTags = null; // the base's, when the overlay's were found
+	private transient PropositionalProgram basePropositionalProgram = null; // the base's, when the overlay's was compiled
+	private transient PredicateStatistics basePredicateStatistics = null; // the base's, when the overlay's were collected
+
+	/**
+	 * Typical constructor.
+	 * @param base the knowledge base under the overlay.
+	 */
+	KnowledgeBaseOverlay(KnowledgeBase base) {
+		super(base);
+		this.base = base;
+	}
+
+	/**
+	 * Getter for the knowledge base under the overlay.
+	 * @return base knowledge base.
+	 */
+	KnowledgeBase getBase() {
+		return base;
+	}
+
+	public void setUsingTransposition(boolean usingTransposition) {
+		if (usingTransposition!=isUsingTransposition()) {
+			throw new RuntimeException("An overlay can't change the transposition of it's base knowledge base.");
+		}
+	}
+
+	/**
+	 * Remove a rule that was added to the overlay.  The base's rules can't be removed.
+	 */
+	public boolean removeRule(Rule rule) throws RuntimeException {
+		if (!super.ruleExists(rule)) {
+			throw new RuntimeException("Only rules that were added to the overlay can be removed from it.");
+		}
+		return super.removeRule(rule);
+	}
+
+	/**
+	 * Get an iterator over the base's rules followed by the overlay's.
+	 */
+	public Iterator<Rule> ruleIterator() {
+		return new ChainedIterator(base.ruleIterator(), super.ruleIterator());
+	}
+
+	public boolean ruleExists(Rule rule) {
+		return super.ruleExists(rule) || base.ruleExists(rule);
+	}
+
+	public Rule getRule(Rule rule) {
+		return super.ruleExists(rule) ? super.getRule(rule) : base.getRule(rule);
+	}
+
+	public Set<String> getAllPredicates() {
+		Set<String> result = new HashSet<String>(base.getAllPredicates());
+		result.addAll(super.getAllPredicates());
+		return result;
+	}
+
+	public Set<Integer> getPredicateArities(String predicate) {
+		Set<Integer> baseArities = base.getPredicateArities(predicate);
+		Set<Integer> arities = super.getPredicateArities(predicate);
+		if (baseArities==null || arities==null) return (arities==null) ? baseArities : arities;
+		Set<Integer> result = new HashSet<Integer>(baseArities);
+		result.addAll(arities);
+		return result;
+	}
+
+	protected Map<Integer, List<Rule>> getArityMap(String ruleTag) {
+		Map<Integer, List<Rule>> baseMap = base.getArityMap(ruleTag);
+		Map<Integer, List<Rule>> arityMap = rulesMap.get(ruleTag);
+		if (baseMap==null || arityMap==null) return (arityMap==null) ? baseMap : arityMap;
+		Map<Integer, List<Rule>> result = new HashMap<Integer, List<Rule>>(baseMap);
+		Iterator<Map.Entry<Integer, List<Rule>>> entryIterator = arityMap.entrySet().iterator();
+		while (entryIterator.hasNext()) {
+			Map.Entry<Integer, List<Rule>> entry = entryIterator.next();
+			List<Rule> baseRules = baseMap.get(entry.getKey());
+			result.put(entry.getKey(), (baseRules==null) ? entry.getValue() : new MergedRuleList(baseRules, entry.getValue()));
+		}
+		return result;
+	}
+
+	protected List<Rule> getCandidateRules(List<Rule> rules, Constant literal) {
+		if (rules instanceof MergedRuleList) {
+			MergedRuleList merged = (MergedRuleList) rules;
+			return new MergedRuleList(base.getCandidateRules(merged.first, literal), super.getCandidateRules(merged.second, literal));
+		} else if (rules.isEmpty()) {
+			return rules;
+		} else if (isOwnList(rules)) {
+			return super.getCandidateRules(rules, literal);
+		} else {
+			return base.getCandidateRules(rules, literal);
+		}
+	}
+
+	public long getVersion() {
+		return base.getVersion() + super.getVersion();
+	}
+
+	public long getVersion(String ruleTag) {
+		return base.getVersion(ruleTag) + super.getVersion(ruleTag);
+	}
+
+	Map<String, Set<String>> getDependencyGraph() {
+		// the overlay's graph includes the base's rules, so it's built again if the base changes.
+		Map<String, Set<String>> baseGraph = base.getDependencyGraph();
+		if (baseGraph!=baseDependencyGraph) {
+			clearDependencyGraph();
+			baseDependencyGraph = baseGraph;
+		}
+		return super.getDependencyGraph();
+	}
+
+	Set<String> getRecursiveRuleTags() {
+		// the overlay's rules can make the base's recursive, so the overlay finds it's own, again if the base changes.
+		Set<String> baseTags = base.getRecursiveRuleTags();
+		if (baseTags!=baseRecursiveRuleTags) {
+			clearRecursiveRuleTags();
+			baseRecursiveRuleTags = baseTags;
+		}
+		return super.getRecursiveRuleTags();
+	}
+
+	PropositionalProgram getPropositionalProgram() {
+		// likewise the overlay's program is compiled with the base's rules, again if the base changes.
+		PropositionalProgram baseProgram = base.getPropositionalProgram();
+		if (baseProgram!=basePropositionalProgram) {
+			clearPropositionalProgram();
+			basePropositionalProgram = baseProgram;
+		}
+		return super.getPropositionalProgram();
+	}
+
+	PredicateStatistics getPredicateStatistics() {
+		// and the overlay's statistics count the base's rules too.
+		PredicateStatistics baseStatistics = base.getPredicateStatistics();
+		if (baseStatistics!=basePredicateStatistics) {
+			clearPredicateStatistics();
+			basePredicateStatistics = baseStatistics;
+		}
+		return super.getPredicateStatistics();
+	}
+
+	/**
+	 * Freeze the overlay, and the knowledge base under it.
+	 */
+	public void freeze() {
+		base.freeze();
+		super.freeze();
+	}
+
+	boolean includes(KnowledgeBase kb) {
+		return kb==this || base.includes(kb);
+	}
+
+	// check whether a (non empty) rule list is one of the overlay's own
+	private boolean isOwnList(List<Rule> rules) {
+		Rule rule = rules.get(0);
+		Map<Integer, List<Rule>> arityMap = rulesMap.get(rule.getConsequent().ruleTag());
+		return arityMap!=null && arityMap.get(rule.getAntecedent().size())==rules;
+	}
+
+	/**
+	 * A read only list of the base's rules followed by the overlay's, for a single rule tag and arity.
+	 */
+	private static class MergedRuleList extends AbstractList<Rule> {
+		private List<Rule> first;
+		private List<Rule> second;
+
+		MergedRuleList(List<Rule> first, List<Rule> second) {
+			this.first = first;
+			this.second = second;
+		}
+
+		public Rule get(int index) {
+			return (index<first.size()) ? first.get(index) : second.get(index-first.size());
+		}
+
+		public int size() {
+			return first.size() + second.size();
+		}
+	}
+
+	/**
+	 * An iterator over one iterator's elements followed by another's.
+	 */
+	private static class ChainedIterator implements Iterator<Rule> {
+		private Iterator<Rule> first;
+		private Iterator<Rule> second;
+
+		ChainedIterator(Iterator<Rule> first, Iterator<Rule> second) {
+			this.first = first;
+			this.second = second;
+		}
+
+		public boolean hasNext() {
+			return first.hasNext() || second.hasNext();
+		}
+
+		public Rule next() {
+			if (first.hasNext()) return first.next();
+			if (second.hasNext()) return second.next();
+			throw new NoSuchElementException();
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -1,6 +1,10 @@
 package org.aspic.inference;
 
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
 
 /**
  * An argument source that allows arguments to be accessed from a KnowledgeBase.
@@ -23,6 +27,22 @@ public class KnowledgeBaseSource implements Cloneable {
 	private Valuator valuatorType = Valuator.WEAKEST_LINK;
 	private RuleArgumentValuator valuator = Valuator.WEAKEST_LINK.createValuator();
 	private boolean restrictedRebutting = false;
+	private boolean tabling = true;
+	private boolean materialized = false;
+	private boolean sliced = false;
+	private boolean joinOrdering = false;
+	private boolean queryNumbering = false;
+	private boolean parallel = false;
+	private QueryBudget budget = null;
+	// the arguments developed bottom up, and what they were developed with, (see getArgumentStore)
+	private ArgumentStore argumentStore = null;
+	private boolean argumentStoreBuilt = false;
+	private PropositionalProgram storeProgram = null;
+	private RuleArgumentValuator storeValuator = null;
+	private boolean storeRestrictedRebutting = false;
+	// the stores built for slices of the knowledge base, the most recently used first, (see getArgumentStore)
+	private List<ArgumentStore> slicedStores = new LinkedList<ArgumentStore>();
+	private static final int SLICED_STORES = 16;
 	
 	/**
 	 * Default Constructor.
@@ -54,7 +74,7 @@ public class KnowledgeBaseSource implements Cloneable {
 	public Iterator<RuleArgument> argumentIterator(Constant claim) {
 		if (claim.getKnowledgeBase()==null) {
 			claim.setKnowledgeBase(kb);
-		} else if (!claim.getKnowledgeBase().equals(kb)) {
+		} else if (!kb.includes(claim.getKnowledgeBase()) && !claim.getKnowledgeBase().equals(kb)) {
 			throw new RuntimeException("Incompatible knowledge bases. The passed claim is already associated with a different knowledge base than this one.");
 		}
 		return claim.argumentIterator(0.0, Party.PRO, 0, 0, valuator, restrictedRebutting);
@@ -68,7 +88,7 @@ public class KnowledgeBaseSource implements Cloneable {
 	public Iterator<RuleArgumentList> argumentIterator(ConstantList claims) {
 		if (claims.getKnowledgeBase()==null) {
 			claims.setKnowledgeBase(kb);
-		} else if (!claims.getKnowledgeBase().equals(kb)) {
+		} else if (!kb.includes(claims.getKnowledgeBase()) && !claims.getKnowledgeBase().equals(kb)) {
 			throw new RuntimeException("Incompatible knowledge bases. The passed claim is already associated with a different knowledge base than this one.");
 		}
 		return claims.argumentIterator(0.0, Party.PRO, 0, 0, valuator, restrictedRebutting);
@@ -122,6 +142,223 @@ public class KnowledgeBaseSource implements Cloneable {
 		this.restrictedRebutting=restricted;
 	}
 
+	/**
+	 * Getter for tabling flag.  When tabling, the arguments developed for a literal during a Query are
+	 * remembered and replayed, rather than developed again, whenever the same literal is sought.
+	 * @return boolean flag for tabling.
+	 */
+	public boolean isTabling() {
+		return this.tabling;
+	}
+
+	/**
+	 * Setter for tabling flag.
+	 * @param tabling boolean flag indicating if arguments are tabled.
+	 */
+	public void setTabling(boolean tabling) {
+		this.tabling = tabling;
+	}
+
+	/**
+	 * Getter for materialized flag.  When the flag is set all the arguments of a ground knowledge base
+	 * are developed bottom up, once, (see ArgumentStore), and replayed to every query until the 
+	 * knowledge base's rules change, rather than being developed top down by each query.
+	 * @return boolean flag for materialized arguments.
+	 */
+	public boolean isMaterialized() {
+		return this.materialized;
+	}
+
+	/**
+	 * Setter for materialized flag.
+	 * @param materialized boolean flag indicating if a ground knowledge base's arguments are developed bottom up.
+	 */
+	public void setMaterialized(boolean materialized) {
+		this.materialized = materialized;
+	}
+
+	/**
+	 * Getter for sliced flag.  When the flag is set, (and the arguments are materialized), the arguments
+	 * are developed bottom up for the slice of the knowledge base that's relevant to each query, (the 
+	 * rules that can contribute to the arguments for it's literals and to their attackers, see 
+	 * <code>KnowledgeBase.getRelevantRuleTags</code>), rather than for the whole knowledge base.  A store
+	 * that's been developed for one query is reused by any query whose slice it includes.
+	 * @return boolean flag for sliced materialization.
+	 */
+	public boolean isSliced() {
+		return this.sliced;
+	}
+
+	/**
+	 * Setter for sliced flag.
+	 * @param sliced boolean flag indicating if the arguments are materialized for the slice of each query.
+	 */
+	public void setSliced(boolean sliced) {
+		this.sliced = sliced;
+	}
+
+	/**
+	 * Getter for join ordering flag.  When the flag is set, the literals of a rule's antecedent are sought
+	 * in order of their estimated selectivity, (ground literals first, then those that unify with the fewest
+	 * rules, see PredicateStatistics), rather than left to right.  Only the literals that bind all of their
+	 * variables are moved, so the arguments are the same either way, though they can be found in another order.
+	 * @return boolean flag for join ordering.
+	 */
+	public boolean isJoinOrdering() {
+		return this.joinOrdering;
+	}
+
+	/**
+	 * Setter for join ordering flag.
+	 * @param joinOrdering boolean flag indicating if the literals of an antecedent are sought in order of their selectivity.
+	 */
+	public void setJoinOrdering(boolean joinOrdering) {
+		this.joinOrdering = joinOrdering;
+	}
+
+	/**
+	 * Getter for query numbering flag.  When the flag is set each Query numbers it's arguments from 1, 
+	 * (see QueryContext), so the numbers of concurrent queries on a frozen knowledge base don't depend on 
+	 * how they're interleaved.  An argument's number is then only unique within it's query, so the arguments 
+	 * of different queries shouldn't be written to the same graph.  By default arguments are numbered by 
+	 * RuleArgument's global counter and their numbers are unique across queries.
+	 * @return boolean flag for per query argument numbering.
+	 */
+	public boolean isQueryNumbering() {
+		return this.queryNumbering;
+	}
+
+	/**
+	 * Setter for query numbering flag.
+	 * @param queryNumbering boolean flag indicating if each query numbers it's arguments from 1.
+	 */
+	public void setQueryNumbering(boolean queryNumbering) {
+		this.queryNumbering = queryNumbering;
+	}
+
+	/**
+	 * Getter for parallel flag.  When the flag is set and the knowledge base is frozen, the seed arguments
+	 * of a Query are evaluated at the same time, (see SeedEvaluation).
+	 * @return boolean flag for parallel evaluation.
+	 */
+	public boolean isParallel() {
+		return this.parallel;
+	}
+
+	/**
+	 * Setter for parallel flag.
+	 * @param parallel boolean flag indicating if a query's seeds are evaluated in parallel.
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	/**
+	 * Getter for query budget.  The budget limits the resources each Query may use, (see QueryBudget).
+	 * @return query budget, or null if queries aren't limited.
+	 */
+	public QueryBudget getQueryBudget() {
+		return this.budget;
+	}
+
+	/**
+	 * Setter for query budget.  The budget's limits are read when each Query starts.
+	 * @param budget query budget, or null if queries aren't limited.
+	 */
+	public void setQueryBudget(QueryBudget budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Get the arguments of the knowledge base, developed bottom up, (again, if the knowledge base's rules,
+	 * the valuator or the restricted rebutting flag have changed since they were last developed).
+	 * @return argument store, or null if the arguments aren't materialized or can't be developed bottom up.
+	 */
+	synchronized ArgumentStore getArgumentStore() {
+		if (!materialized) return null;
+		PropositionalProgram program = kb.getPropositionalProgram();
+		if (!argumentStoreBuilt || program!=storeProgram || valuator!=storeValuator || restrictedRebutting!=storeRestrictedRebutting) {
+			argumentStore = (program==null) ? null : ArgumentStore.build(kb, valuator, restrictedRebutting);
+			argumentStoreBuilt = true;
+			slicedStores.clear();
+			storeProgram = program;
+			storeValuator = valuator;
+			storeRestrictedRebutting = restrictedRebutting;
+		}
+		return argumentStore;
+	}
+
+	/**
+	 * Get the arguments of the slice of the knowledge base that's relevant to a query, developed bottom up,
+	 * (see <code>isSliced</code>).  The full store is used if it's been developed already.
+	 * @param expression the query's expression.
+	 * @return argument store, or null if the arguments aren't materialized or can't be developed bottom up.
+	 */
+	synchronized ArgumentStore getArgumentStore(Element expression) {
+		if (!materialized || !sliced) return getArgumentStore();
+		PropositionalProgram program = kb.getPropositionalProgram();
+		if (program!=storeProgram || valuator!=storeValuator || restrictedRebutting!=storeRestrictedRebutting) {
+			slicedStores.clear();
+			argumentStore = null;
+			argumentStoreBuilt = false;
+			storeProgram = program;
+			storeValuator = valuator;
+			storeRestrictedRebutting = restrictedRebutting;
+		}
+		if (argumentStoreBuilt || program==null) return argumentStore;
+		Set<String> ruleTags = new HashSet<String>();
+		KnowledgeBase.collectRuleTags(expression, ruleTags);
+		Set<String> slice = kb.getRelevantRuleTags(ruleTags);
+		Iterator<ArgumentStore> storeIterator = slicedStores.iterator();
+		while (storeIterator.hasNext()) {
+			ArgumentStore store = storeIterator.next();
+			if (store.getSlice().containsAll(slice)) {
+				storeIterator.remove();
+				slicedStores.add(0, store);
+				return store;
+			}
+		}
+		ArgumentStore store = ArgumentStore.build(kb, valuator, restrictedRebutting, slice);
+		if (store==null) return null;
+		slicedStores.add(0, store);
+		if (slicedStores.size()>SLICED_STORES) slicedStores.remove(SLICED_STORES);
+		return store;
+	}
+
+	/**
+	 * Create the QueryContext for a new Query, with an argument table if tabling is on, and the query budget.
+	 * The context isn't entered, (a Query whose results are streamed enters it for each result).
+	 * @param expression the query's expression, (used to find it's slice of the knowledge base, see <code>isSliced</code>).
+	 * @return new context.
+	 */
+	QueryContext createQueryContext(Element expression) {
+		QueryContext context = new QueryContext(kb, tabling ? new ArgumentTable() : null);
+		context.setJoinOrdering(joinOrdering);
+		context.setQueryNumbering(queryNumbering);
+		context.setArgumentStore(getArgumentStore(expression));
+		context.setBudget(budget);
+		return context;
+	}
+
+	/**
+	 * Called by a Query before it starts developing arguments.  Enters a new QueryContext on the 
+	 * current thread, (see <code>createQueryContext</code>).
+	 * @param expression the query's expression.
+	 * @return the context that was current before, to be passed to <code>endQuery</code>.
+	 */
+	QueryContext beginQuery(Element expression) {
+		return createQueryContext(expression).enter();
+	}
+
+	/**
+	 * Called by a Query when it has finished developing arguments.  Leaves the Query's context,
+	 * discarding it's argument table.
+	 * @param previous the value returned by the matching <code>beginQuery</code>.
+	 */
+	void endQuery(QueryContext previous) {
+		QueryContext.exit(previous);
+	}
+
 	/**
 	 * @deprecated Warning: leaks memory!
 	 */
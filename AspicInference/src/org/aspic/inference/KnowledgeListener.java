@@ -0,0 +1,29 @@
+package org.aspic.inference;
+
+/**
+ * <p>Receives the changes to a KnowledgeBase's rules, e.g. so that the results of earlier queries
+ * can be refreshed.  A listener is registered with <code>KnowledgeBase.addKnowledgeListener</code>.</p>
+ *
+ * <p>Every rule that's added to or removed from the knowledge base is passed on, including the rules
+ * that the knowledge base generates itself, (the hidden rules for rule names and the transpositions of
+ * strict rules, see <code>Rule.isAutoGenerated</code>).  The events are sent once the rule has been
+ * added or removed, on the thread that changed the knowledge base.  Each change also increments the
+ * knowledge base's versions, (see <code>KnowledgeBase.getVersion</code>), which is how a Query knows
+ * whether it's stale, (see <code>Query.isStale</code>).</p>
+ */
+public interface KnowledgeListener {
+
+	/**
+	 * A rule has been added to the knowledge base.
+	 * @param kb the knowledge base.
+	 * @param rule the rule that was added.
+	 */
+	void ruleAdded(KnowledgeBase kb, Rule rule);
+
+	/**
+	 * A rule has been removed from the knowledge base.
+	 * @param kb the knowledge base.
+	 * @param rule the rule that was removed.
+	 */
+	void ruleRemoved(KnowledgeBase kb, Rule rule);
+}
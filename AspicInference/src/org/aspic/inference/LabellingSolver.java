@@ -0,0 +1,217 @@
+package org.aspic.inference;
+
+/**
+ * <p>A backtracking labelling solver that decides whether an argument, (index 0), is skeptically accepted 
+ * under preferred or stable semantics in a (small) argumentation framework.  The arguments are indexed 
+ * 0..n-1 and every set of arguments, (the attackers and victims of each argument and the IN, OUT, MUST_OUT 
+ * and UNDEC labels of the search), is a <code>long[]</code> bitset.</p>
+ *
+ * <p>The search picks an unlabelled argument and first tries labelling it IN, (its victims
+ * become OUT and its attackers MUST_OUT), and then UNDEC.  A branch is abandoned as soon as
+ * a MUST_OUT argument has no unlabelled attacker left to make it OUT.  A finished branch
+ * without MUST_OUT arguments is an admissible set, and a stable extension if it leaves no 
+ * argument UNDEC.</p>
+ *
+ * <p>The extensions aren't enumerated: the search starts with argument 0 labelled UNDEC and stops at 
+ * the first extension that leaves it out, which shows it isn't skeptically accepted, (see 
+ * <code>skepticalPreferred</code> and <code>skepticalStable</code>).  With many mutual attacks there 
+ * are exponentially many extensions, but one without the argument is usually found straight away.</p>
+ *
+ * <p>It is used by the reasoners that extend GroundedLabellingReasoner on the arguments that the
+ * grounded labelling leaves UNDEC, which is where all the choices between extensions are made.</p>
+ */
+class LabellingSolver {
+	private static final int ADMISSIBLE = 0;
+	private static final int STABLE = 1;
+	private static final int SKEPTICAL_PREFERRED = 2;
+
+	private int size;
+	private int words;
+	private long[][] attackers;
+	private long[][] victims;
+	private int[] graphIds;
+	// the last admissible set with argument 0 that an admissible set without it was extended to
+	private long[] witness;
+
+	/**
+	 * Create a solver for a framework without attacks.
+	 * @param graphIds the id, in the AttackGraph, of each argument of this framework.
+	 */
+	LabellingSolver(int[] graphIds) {
+		this.graphIds = graphIds;
+		this.size = graphIds.length;
+		this.words = (size + 63) >>> 6;
+		attackers = new long[size][words];
+		victims = new long[size][words];
+	}
+
+	/**
+	 * Add an attack to the framework.
+	 * @param attacker index of attacking argument.
+	 * @param victim index of attacked argument.
+	 */
+	void addAttack(int attacker, int victim) {
+		attackers[victim][attacker>>>6] |= 1L<<attacker;
+		victims[attacker][victim>>>6] |= 1L<<victim;
+	}
+
+	/**
+	 * Decide whether argument 0 is in every preferred extension.  It isn't if, and only if, there's an 
+	 * admissible set without it that can't be extended to an admissible set with it: such a set is in a
+	 * preferred extension that leaves argument 0 out, (and a preferred extension without argument 0 is such a
+	 * set).  The search stops at the first one.  Every admissible set without argument 0 that can be extended
+	 * is, and the branches of the search whose admissible sets all fall within the last of those extensions 
+	 * are skipped, as they can be extended too.
+	 * @return an admissible set that contains argument 0, as a bitset over the framework's indexes, or null
+	 * if argument 0 isn't in every preferred extension.
+	 */
+	long[] skepticalPreferred() {
+		witness = null;
+		long[] undec = new long[words];
+		undec[0] = 1L;
+		if (search(new long[words], new long[words], new long[words], undec, SKEPTICAL_PREFERRED)!=null) return null;
+		// (the empty set is admissible, so there's always a witness if no counter-example was found)
+		return witness;
+	}
+
+	/**
+	 * Decide whether there's a stable extension and argument 0 is in every stable extension.  The search 
+	 * first looks for a stable extension without argument 0, and then for any stable extension.
+	 * @return a stable extension, (which contains argument 0), as a bitset over the framework's indexes, or
+	 * null if there's a stable extension without argument 0 or there are no stable extensions.
+	 */
+	long[] skepticalStable() {
+		long[] undec = new long[words];
+		undec[0] = 1L;
+		if (search(new long[words], new long[words], new long[words], undec, STABLE)!=null) return null;
+		return search(new long[words], new long[words], new long[words], new long[words], STABLE);
+	}
+
+	/**
+	 * Translate an extension of this framework into a bitset over AttackGraph ids.
+	 * @param extension bitset over the framework's indexes.
+	 * @param graphSize number of arguments in the AttackGraph.
+	 * @return bitset over AttackGraph ids.
+	 */
+	long[] toGraph(long[] extension, int graphSize) {
+		long[] result = new long[(graphSize + 63) >>> 6];
+		for (int i=nextSetBit(extension, 0); i>=0; i=nextSetBit(extension, i+1)) {
+			result[graphIds[i]>>>6] |= 1L<<graphIds[i];
+		}
+		return result;
+	}
+
+	/**
+	 * Test bitset membership.
+	 * @param set bitset.
+	 * @param index index to test.
+	 * @return true if <code>index</code> is in <code>set</code>.
+	 */
+	static boolean contains(long[] set, int index) {
+		return (set[index>>>6] & (1L<<index))!=0;
+	}
+
+	/*
+	 * Find an admissible set that contains a set of arguments, or null if there's none, (e.g. the set isn't 
+	 * conflict free).
+	 */
+	private long[] extend(long[] in) {
+		long[] out = new long[words];
+		long[] mustOut = new long[words];
+		for (int i=nextSetBit(in, 0); i>=0; i=nextSetBit(in, i+1)) {
+			for (int w=0; w<words; w++) {
+				out[w] |= victims[i][w];
+				mustOut[w] |= attackers[i][w];
+			}
+		}
+		if (intersects(in, out)) return null;
+		for (int w=0; w<words; w++) mustOut[w] &= ~out[w];
+		return search(in.clone(), out, mustOut, new long[words], ADMISSIBLE);
+	}
+
+	/*
+	 * Label the unlabelled arguments, (depth first), and return the first finished labelling that the mode 
+	 * looks for: the IN arguments of an admissible set (ADMISSIBLE), of a stable extension (STABLE), or of an 
+	 * admissible set that can't be extended with argument 0 (SKEPTICAL_PREFERRED), or null if there's none.
+	 */
+	private long[] search(long[] in, long[] out, long[] mustOut, long[] undec, int mode) {
+		long[] blank = new long[words];
+		while (true) {
+			for (int w=0; w<words; w++) blank[w] = ~(in[w] | out[w] | mustOut[w] | undec[w]);
+			if ((size & 63)!=0) blank[words-1] &= (1L<<size)-1;
+			// every MUST_OUT argument (and, for stable extensions, every UNDEC argument) needs an attacker that can still be IN
+			for (int m=nextSetBit(mustOut, 0); m>=0; m=nextSetBit(mustOut, m+1)) {
+				if (!intersects(attackers[m], blank)) return null;
+			}
+			if (mode==STABLE) {
+				for (int u=nextSetBit(undec, 0); u>=0; u=nextSetBit(undec, u+1)) {
+					if (!intersects(attackers[u], blank)) return null;
+				}
+			} else if (mode==SKEPTICAL_PREFERRED && witness!=null) {
+				// nothing to find if everything that could still be IN can be extended with argument 0
+				long[] possible = new long[words];
+				for (int w=0; w<words; w++) possible[w] = in[w] | blank[w];
+				if (isSubset(possible, witness)) return null;
+			}
+			int x = nextSetBit(blank, 0);
+			if (x<0) break;
+			if (!contains(attackers[x], x)) {
+				long[] in2 = in.clone();
+				long[] out2 = out.clone();
+				long[] mustOut2 = mustOut.clone();
+				long[] undec2 = undec.clone();
+				in2[x>>>6] |= 1L<<x;
+				for (int w=0; w<words; w++) {
+					out2[w] |= victims[x][w];
+					mustOut2[w] = (mustOut2[w] | attackers[x][w]) & ~out2[w];
+					undec2[w] &= ~out2[w];
+				}
+				long[] found = search(in2, out2, mustOut2, undec2, mode);
+				if (found!=null) return found;
+			}
+			undec[x>>>6] |= 1L<<x;
+		}
+		for (int w=0; w<words; w++) {
+			if (mustOut[w]!=0) return null;
+		}
+		if (mode==STABLE) {
+			for (int w=0; w<words; w++) {
+				if (undec[w]!=0) return null;
+			}
+		} else if (mode==SKEPTICAL_PREFERRED) {
+			long[] with = in.clone();
+			with[0] |= 1L;
+			long[] extended = extend(with);
+			if (extended!=null) {
+				witness = extended;
+				return null;
+			}
+		}
+		return in;
+	}
+
+	private int nextSetBit(long[] set, int from) {
+		int w = from>>>6;
+		if (w>=words) return -1;
+		long word = set[w] & (-1L<<from);
+		while (true) {
+			if (word!=0) return (w<<6) + Long.numberOfTrailingZeros(word);
+			if (++w==words) return -1;
+			word = set[w];
+		}
+	}
+
+	private boolean intersects(long[] a, long[] b) {
+		for (int w=0; w<words; w++) {
+			if ((a[w] & b[w])!=0) return true;
+		}
+		return false;
+	}
+
+	private boolean isSubset(long[] a, long[] b) {
+		for (int w=0; w<words; w++) {
+			if ((a[w] & ~b[w])!=0) return false;
+		}
+		return true;
+	}
+}
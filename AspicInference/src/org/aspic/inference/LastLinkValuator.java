@@ -12,17 +12,17 @@ class LastLinkValuator implements RuleArgumentValuator, Serializable {
 
 	LastLinkValuator() {}
 	
-	public Double valuate(RuleArgument argument) {
+	public double valuate(RuleArgument argument) {
 		return (argument.getTopRule().getDob()<1.0) ? 
 				argument.getTopRule().getDob() : 
 				argument.getSubArgumentList().valuate(this);
 	}
 
-	public Double valuate(RuleArgumentList argumentList) {
+	public double valuate(RuleArgumentList argumentList) {
 		Iterator<RuleArgument> itr = argumentList.getArguments().iterator();
-		Double min = 1.0;
+		double min = 1.0;
 		while (itr.hasNext()) {
-			Double valuation = itr.next().valuate(this);
+			double valuation = itr.next().valuate(this);
 			if (valuation<min) {
 				min = valuation;
 			}
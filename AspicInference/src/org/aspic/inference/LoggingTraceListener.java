@@ -0,0 +1,189 @@
+package org.aspic.inference;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>A ReasonerTraceListener that writes the trace to <code>java.util.logging</code> at level FINE,
+ * with the dispute game's messages indented by their level of recursion, (four spaces a level for
+ * grounded semantics, three for the others, as the reasoners used to).  An Engine registers one
+ * whenever a query is created while this class's logger is loggable at FINE, and removes it again
+ * when it isn't, (see Engine.createQuery).</p>
+ */
+public class LoggingTraceListener implements ReasonerTraceListener {
+	private static Logger logger = Logger.getLogger(LoggingTraceListener.class.getName());
+	// the semantics of the reasoner on each thread, which decide the wording and indentation of the dispute game
+	private ThreadLocal<Reasoner> semantics = new ThreadLocal<Reasoner>();
+
+	/**
+	 * Check whether the trace would be logged.
+	 * @return true if the logger is loggable at level FINE.
+	 */
+	public static boolean isLoggable() {
+		return logger.isLoggable(Level.FINE);
+	}
+
+	public void reasoningStarted(Reasoner semantics) {
+		this.semantics.set(semantics);
+	}
+
+	public void literalSought(Party party, int level, Constant literal, Double needed) {
+		logger.fine(party.toString() + ": searching for arguments for literal " + literal.inspect() + ((needed>0.0) ? needed : ""));
+	}
+
+	public void rulesFound(Party party, int level, Constant literal, int arity) {
+		logger.fine(party.toString() + ": found one or more " + (arity>0 ? "rules " : "facts ") + "for literal " + literal.inspect());
+	}
+
+	public void ruleTried(Party party, int level, Constant literal, Rule rule, boolean unifiable) {
+		logger.fine(party.toString() + ": " + (unifiable ? "found " : "ignored ") + (rule.getDob()==1.0 ? "" : "defeasible ") + (rule.isFact() ? "fact " : "rule ") + rule.inspect());
+	}
+
+	public void ruleInstantiated(Party party, int level, Rule instantiation) {
+		logger.fine(party.toString() + ": instantiated to " + instantiation.inspect());
+	}
+
+	public void unificationFailed(Party party, int level, Constant literal, Rule rule) {
+		logger.fine(party.toString() + ": unification " + literal.inspect() + " ~> " + rule.getConsequent().inspect() + " fails.");
+	}
+
+	public void premisesSought(Party party, int level, ElementList premises) {
+		logger.fine(party.toString() + ": searching for arguments for: " + premises.inspect() + ".");
+	}
+
+	public void argumentFound(Party party, int level, RuleArgument argument) {
+		logger.fine(party.toString() + ": found " + argument.getName() + " : " + argument.inspect(level));
+	}
+
+	public void literalFailed(Party party, int level, Constant literal) {
+		logger.fine(party.toString() + ": unable to develop argument for " + literal.inspect() + ".");
+	}
+
+	public void subArgumentExamined(Party party, int level, RuleArgument subArgument) {
+		logger.fine(party.toString() + ": examining " + subArgument.getName());
+	}
+
+	public void attackTried(Party party, int level, RuleArgument victim, RuleArgument attacker, boolean successful) {
+		logger.fine(party.toString() + ": " + attacker.getName() + (successful ? " strong enough to interfere with " : " too weak to interfere with ") + victim.getName());
+	}
+
+	public void disputeStarted(int level, ReasonerPair testPair) {
+		log("STS: " + testPair.inspect(), level);
+	}
+
+	public void attackStarted(int level, RuleArgument victim) {
+		log("OPP: starting attack against " + victim.getName(), level);
+	}
+
+	public void attackFound(int level, RuleArgument victim, RuleArgument attacker, int number) {
+		log("OPP: found " + numberWriter(number) + " attack against " + victim.getName() + " : " + attacker.getName(), level);
+	}
+
+	public void argumentIgnored(Party party, int level, RuleArgument argument) {
+		if (party==Party.OPP) {
+			log("OPP: protocol for admissibility forbids reuse of " + argument.getName(), level);
+		} else if (isGrounded()) {
+			log("OPP: " + argument.getName() + " ignored because it's already used.", level);
+		} else {
+			log("PRO: Conflicting " + argument.getName(), level);
+		}
+	}
+
+	public void defenseStarted(int level, RuleArgument victim, RuleArgument attacker) {
+		log("PRO: starting defense against " + victim.getName() + " <- " + attacker.getName(), level);
+	}
+
+	public void defenseTried(int level, RuleArgument victim, RuleArgument attacker, RuleArgument defender) {
+		if (isGrounded()) {
+			log("PRO: found possible defender " + victim.getName() + " <- " + attacker.getName() + " <- " + defender.getName(), level);
+		} else {
+			log("PRO: trying defense " + victim.getName() + " <- " + attacker.getName() + " <- " + defender.getName(), level);
+		}
+	}
+
+	public void defenseSucceeded(int level, RuleArgument victim, RuleArgument attacker, RuleArgument defender) {
+		if (isGrounded()) {
+			log("PRO: defender successful.", level);
+		} else {
+			log("PRO: defense of " + victim.getName() + " <- " + attacker.getName() + " succeeds with " + defender.getName(), level);
+		}
+	}
+
+	public void defenseFailed(int level, RuleArgument victim, RuleArgument attacker, RuleArgument defender) {
+		if (isGrounded()) {
+			log(defender==null ? "PRO: defense failed, returning empty move, {[], []}." : "PRO: defender failed.", level);
+		} else if (defender==null) {
+			log("PRO: defense of " + victim.getName() + " <- " + attacker.getName() + " fails, returning null", level);
+		} else {
+			log("PRO: defense " + victim.getName() + " <- " + attacker.getName() + " <- " + defender.getName() + " fails", level);
+			log("PRO: trying next defender " + victim.getName() + " <- " + attacker.getName(), level);
+		}
+	}
+
+	public void attackRepelled(int level, RuleArgument victim, RuleArgument attacker, ReasonerPair testPair) {
+		if (isGrounded()) {
+			log("PRO: defense successful, returning new move: " + testPair.inspect(), level);
+		} else {
+			log("OPP: trying next attacker of " + victim.getName(), level);
+		}
+	}
+
+	public void attacksExhausted(int level, RuleArgument victim, int numberOfAttacks) {
+		log("OPP: " + (numberOfAttacks==0 ? "no attackers" : "no more attackers") + ", hence attack on " + victim.getName() + " fails", level);
+	}
+
+	public void argumentLabelled(int level, RuleArgument argument, String label, boolean accepted, int arguments) {
+		if (label.equals("IN")) {
+			log(argument.getName() + " is IN the grounded labelling of " + arguments + " arguments", level);
+		} else if (accepted) {
+			log(argument.getName() + " is " + label + " in the grounded labelling but accepted", level);
+		} else {
+			log(argument.getName() + " is " + label + " in the grounded labelling of " + arguments + " arguments", level);
+		}
+	}
+
+	public void argumentAccepted(int level, RuleArgument argument, RuleArgumentList pro) {
+		log("STS: " + argument.getName() + " is a member of the admissible set, " + pro.inspect(), level);
+	}
+
+	public void argumentRejected(int level, RuleArgument argument) {
+		log("STS: " + argument.getName() + " is defeated", level);
+	}
+
+	/*
+	 * Whether the reasoner on this thread is a GroundedReasoner, (whose messages are worded
+	 * and indented differently from the other reasoners').
+	 */
+	private boolean isGrounded() {
+		return semantics.get()==Reasoner.GROUNDED;
+	}
+
+	/**
+	 * Write indented message to the log.
+	 * @param message The message to write
+	 * @param level The level of indentation
+	 */
+	private void log(String message, int level) {
+		String indent = isGrounded() ? "    " : "   ";
+		StringBuffer indentedMessage = new StringBuffer();
+		for (int i=0; i<level; i++) {
+			indentedMessage.append(indent);
+		}
+		indentedMessage.append(message);
+		logger.fine(indentedMessage.toString());
+	}
+
+	/**
+	 * Return prettified index, i.e. numberWrite(97) = "97th"
+	 * @param number
+	 * @return prettified number
+	 */
+	private String numberWriter(int number) {
+		switch(number) {
+		case 1 : return "1st";
+		case 2 : return "2nd";
+		case 3 : return "3rd";
+		default : return number + "th";
+		}
+	}
+}
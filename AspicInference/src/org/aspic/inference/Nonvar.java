@@ -1,7 +1,6 @@
 package org.aspic.inference;
 
 import java.util.Iterator;
-import java.util.logging.Logger;
 
 /**
  * The "nonvar" unary built-in predicate.  This predicate generates 
@@ -9,7 +8,6 @@ import java.util.logging.Logger;
  * @author mjs (matthew.south @ cancer.org.uk)
  */
 public class Nonvar extends Unary {
-	private static Logger logger = Logger.getLogger(Nonvar.class.getName());		
 	private static final String OPERATOR = "nonvar";
 	
 	/**
@@ -37,13 +35,13 @@ public class Nonvar extends Unary {
 	}
 	Iterator<RuleArgument> argumentIterator(Double needed, Party party, int level, int d_top, RuleArgumentValuator valuator, boolean restrictedRebutting) {
 		if (getOperand() instanceof Variable) {
-			logger.fine(party + ": unable to develop argument for " + this.inspect() + ".");
+			if (getTraceListener()!=null) getTraceListener().literalFailed(party, level, this);
 			return new EmptyArgumentIterator();
 		} else {
 			Rule topRule = new Rule(Nonvar.this);
 			topRule.setKnowledgeBase(this.getKnowledgeBase());
-			RuleArgument argument = new RuleArgument(topRule, new Double(1.0), new Substitution(), new RuleArgumentList(), party, level, d_top, valuator, restrictedRebutting);
-			logger.fine(party + ": found " + argument.getName() + " : " + argument.inspect());
+			RuleArgument argument = new RuleArgument(topRule, 1.0, new Substitution(), new RuleArgumentList(), party, level, d_top, valuator, restrictedRebutting);
+			if (getTraceListener()!=null) getTraceListener().argumentFound(party, level, argument);
 			return new SingleArgumentIterator(argument);
 		}
 	}	
@@ -0,0 +1,150 @@
+package org.aspic.inference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Cardinality statistics of a knowledge base's predicates, used to plan the order in which the literals
+ * of a rule's antecedent are sought when the query orders it's joins, (see <code>ElementList.argumentIterator</code>
+ * and <code>KnowledgeBaseSource.isJoinOrdering</code>).  For each rule tag it counts the rules and, for each
+ * argument position of their consequents, the number of distinct values, so the number of rules a literal might
+ * unify with can be estimated from which of it's arguments are bound.</p>
+ *
+ * <p>It also finds the rule tags whose arguments always have ground claims, (grounding rule tags): every variable
+ * of each of their rules' consequents occurs in an ordinary literal of the rule's antecedent, (not a built in
+ * predicate), and those literals' rule tags are grounding too.  A literal with a grounding rule tag binds all of
+ * it's variables, and has the same arguments whenever it's sought, (only filtered by the bindings made before it),
+ * so it can be sought earlier or later than it's written.  Any other literal, e.g. \+(p(X)), X is Y+1, or the name
+ * of a rule with variables, has to be sought in place, unless it's ground.</p>
+ */
+class PredicateStatistics {
+	private Map<String, Cardinality> cardinalities = new HashMap<String, Cardinality>();
+	private Set<String> nonGroundingRuleTags = new HashSet<String>();
+
+	/*
+	 * The number of rules for a rule tag, and the number of distinct values in each argument position of their consequents.
+	 */
+	private static class Cardinality {
+		int rules = 0;
+		List<Set<String>> values = new ArrayList<Set<String>>();
+		int[] distinct;
+	}
+
+	/**
+	 * Typical constructor.  Collects the statistics of all of a knowledge base's rules.
+	 * @param kb knowledge base.
+	 */
+	PredicateStatistics(KnowledgeBase kb) {
+		// the rule tags each rule tag's arguments depend on, (the names of rules aren't sought until the rest of the antecedent's bound them)
+		Map<String, Set<String>> dependencies = new HashMap<String, Set<String>>();
+		Iterator<Rule> ruleIterator = kb.ruleIterator();
+		while (ruleIterator.hasNext()) {
+			Rule rule = ruleIterator.next();
+			Constant consequent = rule.getConsequent();
+			String ruleTag = consequent.ruleTag();
+			count(ruleTag, consequent);
+			Set<String> bound = new HashSet<String>();
+			Set<String> ruleTags = dependencies.get(ruleTag);
+			if (ruleTags==null) {
+				ruleTags = new HashSet<String>();
+				dependencies.put(ruleTag, ruleTags);
+			}
+			for (Element element : rule.getAntecedent()) {
+				if (element instanceof Constant && !(element instanceof BuiltIn)) {
+					ruleTags.add(((Constant) element).ruleTag());
+					for (Variable var : element.getVariables()) bound.add(var.getInternalName());
+				}
+			}
+			for (Variable var : consequent.getVariables()) {
+				if (!bound.contains(var.getInternalName())) nonGroundingRuleTags.add(ruleTag);
+			}
+		}
+		for (Cardinality cardinality : cardinalities.values()) {
+			cardinality.distinct = new int[cardinality.values.size()];
+			for (int i=0; i<cardinality.distinct.length; i++) {
+				cardinality.distinct[i] = cardinality.values.get(i).size();
+			}
+			cardinality.values = null;
+		}
+		// a rule tag that depends on one that isn't grounding isn't grounding either, (until nothing changes)
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (Map.Entry<String, Set<String>> entry : dependencies.entrySet()) {
+				if (nonGroundingRuleTags.contains(entry.getKey())) continue;
+				for (String ruleTag : entry.getValue()) {
+					if (nonGroundingRuleTags.contains(ruleTag)) {
+						nonGroundingRuleTags.add(entry.getKey());
+						changed = true;
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	private void count(String ruleTag, Constant consequent) {
+		Cardinality cardinality = cardinalities.get(ruleTag);
+		if (cardinality==null) {
+			cardinality = new Cardinality();
+			cardinalities.put(ruleTag, cardinality);
+		}
+		cardinality.rules++;
+		if (consequent instanceof Term) {
+			ElementList args = ((Term) consequent).getArgList();
+			for (int i=0; i<args.size(); i++) {
+				if (cardinality.values.size()==i) cardinality.values.add(new HashSet<String>());
+				Element arg = args.get(i);
+				// a variable matches any value, so it isn't one
+				if (arg.getVariables().isEmpty()) cardinality.values.get(i).add(arg.inspect());
+			}
+		}
+	}
+
+	/**
+	 * Check whether the arguments for the literals with a rule tag always have ground claims.
+	 * @param ruleTag rule tag.
+	 * @return true if the rule tag is grounding, (a rule tag without any rules is).
+	 */
+	boolean isGrounding(String ruleTag) {
+		return !nonGroundingRuleTags.contains(ruleTag);
+	}
+
+	/**
+	 * Estimate the number of rules a literal unifies with.
+	 * @param literal literal.
+	 * @param bound the internal names of the variables that will be bound when the literal is sought.
+	 * @return the number of rules for the literal's rule tag, divided by the number of distinct values
+	 * in each of the argument positions where the literal's argument will be ground.
+	 */
+	double estimate(Constant literal, Set<String> bound) {
+		Cardinality cardinality = cardinalities.get(literal.ruleTag());
+		if (cardinality==null) return 0;
+		double result = cardinality.rules;
+		if (literal instanceof Term) {
+			ElementList args = ((Term) literal).getArgList();
+			for (int i=0; i<args.size() && i<cardinality.distinct.length; i++) {
+				if (cardinality.distinct[i]>1 && isBound(args.get(i), bound)) result = result / cardinality.distinct[i];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Check whether an element will be ground.
+	 * @param element element.
+	 * @param bound the internal names of the variables that will be bound.
+	 * @return true if all of the element's variables are bound.
+	 */
+	static boolean isBound(Element element, Set<String> bound) {
+		for (Variable var : element.getVariables()) {
+			if (!bound.contains(var.getInternalName())) return false;
+		}
+		return true;
+	}
+}
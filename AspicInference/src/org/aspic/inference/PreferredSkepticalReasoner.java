@@ -0,0 +1,19 @@
+package org.aspic.inference;
+
+
+/**
+ * <p>A Reasoner that implements Preferred Skeptical Semantics: an argument is accepted 
+ * if it's in every preferred extension.</p>
+ * <p>The arguments that are IN (or OUT) of the grounded labelling are in (or out of) every 
+ * preferred extension, so only arguments that are UNDEC in the grounded labelling are passed 
+ * to a LabellingSolver, which looks for a preferred extension of the UNDEC arguments that 
+ * they depend on that leaves them out.</p>
+ */
+class PreferredSkepticalReasoner extends GroundedLabellingReasoner {
+
+	long[] acceptUndecided(int test) {
+		LabellingSolver solver = undecidedRegion(test);
+		long[] extension = solver.skepticalPreferred();
+		return (extension==null) ? null : solver.toGraph(extension, getGraph().size());
+	}
+}
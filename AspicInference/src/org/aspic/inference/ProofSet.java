@@ -0,0 +1,95 @@
+package org.aspic.inference;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * <p>The arguments of a Query's proof, in the order they were added.  The reasoners add each argument
+ * they come across to the proof unless it's already there, (see <code>AbstractReasoner.evaluate</code>),
+ * so a proof is a list whose <code>contains</code> is hashed rather than a scan of the whole list,
+ * which made the proof of a query with thousands of arguments take most of it's time.</p>
+ *
+ * <p>Arguments are compared by identity, (RuleArgument doesn't override equals), so the proof can hold
+ * arguments that are semantically equal, e.g. when arguments aren't tabled, just like a LinkedList.
+ * Their fingerprints aren't used for hashing for the same reason: every copy of an argument has the
+ * same fingerprint.</p>
+ */
+class ProofSet extends AbstractList<RuleArgument> implements RandomAccess, Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private List<RuleArgument> arguments = new ArrayList<RuleArgument>();
+	// the number of times each argument is in the list
+	private Map<RuleArgument, Integer> occurrences = new IdentityHashMap<RuleArgument, Integer>();
+
+	/**
+	 * Default constructor, (an empty proof).
+	 */
+	ProofSet() {}
+
+	public RuleArgument get(int index) {
+		return arguments.get(index);
+	}
+
+	public int size() {
+		return arguments.size();
+	}
+
+	public boolean contains(Object o) {
+		return occurrences.containsKey(o);
+	}
+
+	public void add(int index, RuleArgument argument) {
+		arguments.add(index, argument);
+		occurred(argument);
+		modCount++;
+	}
+
+	public RuleArgument set(int index, RuleArgument argument) {
+		RuleArgument previous = arguments.set(index, argument);
+		occurred(argument);
+		vanished(previous);
+		return previous;
+	}
+
+	public RuleArgument remove(int index) {
+		RuleArgument previous = arguments.remove(index);
+		vanished(previous);
+		modCount++;
+		return previous;
+	}
+
+	public void clear() {
+		arguments.clear();
+		occurrences.clear();
+		modCount++;
+	}
+
+	/**
+	 * Add an argument to the end of the proof, unless it's already there.
+	 * @param argument argument to add.
+	 * @return true if it was added.
+	 */
+	boolean addIfAbsent(RuleArgument argument) {
+		if (occurrences.containsKey(argument)) return false;
+		return add(argument);
+	}
+
+	private void occurred(RuleArgument argument) {
+		Integer count = occurrences.get(argument);
+		occurrences.put(argument, (count==null) ? 1 : count+1);
+	}
+
+	private void vanished(RuleArgument argument) {
+		int count = occurrences.get(argument);
+		if (count==1) {
+			occurrences.remove(argument);
+		} else {
+			occurrences.put(argument, count-1);
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package org.aspic.inference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>A ground knowledge base, (one without any variables, like the knowledge bases of the
+ * scenario generator), compiled to propositional form: each ground literal is an atom with
+ * an int id and each rule is the int array of the atoms of it's premises, (it's antecedent and
+ * then it's name, the "hidden premise").  See <code>KnowledgeBase.getPropositionalProgram</code>.
+ * The arguments of a materialized knowledge base are developed bottom up from it, (see ArgumentStore).</p>
+ *
+ * <p>Compiling follows the knowledge base's own lookups, (<code>getArityMap</code>), so the rules
+ * of each atom are in the order the first order argument iterators of Constant try them, and an
+ * overlay is compiled with the rules of it's base.  The program is immutable, so it can be
+ * shared by the queries on a frozen knowledge base.</p>
+ */
+class PropositionalProgram {
+	private Map<Constant, Integer> ids = new HashMap<Constant, Integer>();
+	// the literal of each atom
+	private List<Constant> atoms = new ArrayList<Constant>();
+	// the rules with each atom as their consequent, (as indexes into rules), in the order they're tried
+	private int[][] rulesOf;
+	private Rule[] rules;
+	// the atoms of the premises of each rule
+	private int[][] premises;
+	// the atoms of each rule tag, in order
+	private Map<String, int[]> atomsOf;
+
+	/**
+	 * Stands for the program of a knowledge base that isn't ground, (so that it isn't compiled again).
+	 */
+	static final PropositionalProgram NOT_GROUND = new PropositionalProgram();
+
+	private PropositionalProgram() {}
+
+	/**
+	 * Compile a knowledge base.
+	 * @param kb knowledge base.
+	 * @return the knowledge base's propositional program, or NOT_GROUND if any of it's rules has a variable.
+	 */
+	static PropositionalProgram compile(KnowledgeBase kb) {
+		PropositionalProgram program = new PropositionalProgram();
+		// the rule tags in the order the rules were added, (for a deterministic numbering of the atoms)
+		Set<String> ruleTags = new LinkedHashSet<String>();
+		Iterator<Rule> ruleIterator = kb.ruleIterator();
+		while (ruleIterator.hasNext()) {
+			Rule rule = ruleIterator.next();
+			if (!rule.isGrounded()) return NOT_GROUND;
+			ruleTags.add(rule.getConsequent().ruleTag());
+		}
+		List<Rule> ruleList = new ArrayList<Rule>();
+		List<int[]> premiseList = new ArrayList<int[]>();
+		List<List<Integer>> rulesOfList = new ArrayList<List<Integer>>();
+		for (String ruleTag : ruleTags) {
+			// the same order as ConstantArgumentIterator: by arity, then in knowledge base order
+			Map<Integer, List<Rule>> arityMap = kb.getArityMap(ruleTag);
+			for (List<Rule> arityRules : arityMap.values()) {
+				for (Rule rule : arityRules) {
+					int consequent = program.atom(rule.getConsequent());
+					ElementList antecedent = rule.getAntecedent();
+					int[] atoms = new int[rule.isFact() ? 0 : antecedent.size()+1];
+					for (int i=0; i<antecedent.size() && !rule.isFact(); i++) {
+						atoms[i] = program.atom((Constant) antecedent.get(i));
+					}
+					if (!rule.isFact()) atoms[antecedent.size()] = program.atom(rule.getName());
+					while (rulesOfList.size()<program.atoms.size()) rulesOfList.add(null);
+					if (rulesOfList.get(consequent)==null) rulesOfList.set(consequent, new ArrayList<Integer>());
+					rulesOfList.get(consequent).add(ruleList.size());
+					ruleList.add(rule);
+					premiseList.add(atoms);
+				}
+			}
+		}
+		// every atom's negation is an atom too, (which may not have any rules)
+		for (int i=0, size=program.atoms.size(); i<size; i++) {
+			program.atom(program.atoms.get(i).negation());
+		}
+		program.rulesOf = new int[program.atoms.size()][];
+		for (int i=0; i<program.atoms.size(); i++) {
+			List<Integer> atomRules = (i<rulesOfList.size()) ? rulesOfList.get(i) : null;
+			program.rulesOf[i] = new int[(atomRules==null) ? 0 : atomRules.size()];
+			for (int j=0; j<program.rulesOf[i].length; j++) {
+				program.rulesOf[i][j] = atomRules.get(j);
+			}
+		}
+		program.rules = ruleList.toArray(new Rule[ruleList.size()]);
+		program.premises = premiseList.toArray(new int[premiseList.size()][]);
+		Map<String, List<Integer>> atomsOfList = new HashMap<String, List<Integer>>();
+		for (int i=0; i<program.atoms.size(); i++) {
+			String ruleTag = program.atoms.get(i).ruleTag();
+			if (!atomsOfList.containsKey(ruleTag)) atomsOfList.put(ruleTag, new ArrayList<Integer>());
+			atomsOfList.get(ruleTag).add(i);
+		}
+		program.atomsOf = new HashMap<String, int[]>();
+		for (Map.Entry<String, List<Integer>> entry : atomsOfList.entrySet()) {
+			int[] tagAtoms = new int[entry.getValue().size()];
+			for (int j=0; j<tagAtoms.length; j++) {
+				tagAtoms[j] = entry.getValue().get(j);
+			}
+			program.atomsOf.put(entry.getKey(), tagAtoms);
+		}
+		return program;
+	}
+
+	/**
+	 * Number of atoms.
+	 * @return number of atoms.
+	 */
+	int size() {
+		return atoms.size();
+	}
+
+	/**
+	 * Get the atom of a literal.
+	 * @param literal literal.
+	 * @return the literal's atom, or -1 if it isn't ground or doesn't occur in the knowledge base.
+	 */
+	int getAtom(Constant literal) {
+		if (!literal.isGrounded()) return -1;
+		Integer id = ids.get(literal);
+		return (id==null) ? -1 : id;
+	}
+
+	/**
+	 * Get the atoms of a rule tag.
+	 * @param ruleTag rule tag.
+	 * @return the atoms whose literals have the rule tag, in order, (empty if there aren't any).
+	 */
+	int[] getAtoms(String ruleTag) {
+		int[] result = atomsOf.get(ruleTag);
+		return (result==null) ? new int[0] : result;
+	}
+
+	/**
+	 * Get the literal of an atom.
+	 * @param atom atom.
+	 * @return literal.
+	 */
+	Constant getLiteral(int atom) {
+		return atoms.get(atom);
+	}
+
+	/**
+	 * Get the rules with an atom as their consequent.
+	 * @param atom atom.
+	 * @return the indexes of the rules, in the order they're tried.
+	 */
+	int[] getRules(int atom) {
+		return rulesOf[atom];
+	}
+
+	/**
+	 * Get a rule.
+	 * @param rule index of the rule.
+	 * @return rule.
+	 */
+	Rule getRule(int rule) {
+		return rules[rule];
+	}
+
+	/**
+	 * Get the premises of a rule: the atoms of it's antecedent, then of it's name, (none for a fact).
+	 * @param rule index of the rule.
+	 * @return atoms of the premises.
+	 */
+	int[] getPremises(int rule) {
+		return premises[rule];
+	}
+
+	private int atom(Constant literal) {
+		Integer id = ids.get(literal);
+		if (id==null) {
+			id = atoms.size();
+			ids.put(literal, id);
+			atoms.add(literal);
+		}
+		return id;
+	}
+}
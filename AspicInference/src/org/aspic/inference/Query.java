@@ -14,15 +14,33 @@ import java.util.*;
  * or undefeated). A Query also has a proof which returns a list of 
  * discovered Arguments relevant to the whole query.</p>
  * <p>To create a Query, use the Engine object's <code>createQuery</code> method.</p>
+ * <p>If the engine's PARALLEL property is on and it's knowledge base is frozen, the seed 
+ * arguments, (the arguments whose claims match the query expression), are evaluated 
+ * in parallel.  The results and proof are merged in seed order, so they're the same every time,
+ * but as each seed is evaluated with an argument table of it's own the proof may contain 
+ * equivalent arguments that were developed for different seeds.</p>
+ * <p>A Query records the versions of the rules it depended on, (the rules for the literals it sought 
+ * arguments for), so that it can tell when a change to the knowledge base could have changed it's 
+ * results, (see <code>isStale</code>).  Changes to other rules don't make it stale.</p>
+ * <p>A Query may have a budget, (see QueryBudget), in which case it stops when the budget runs out
+ * and it's results are partial, (see <code>isExhausted</code>).</p>
  *
  * @author mjs (matthew.south @ cancer.org.uk)
  *
  */
 public class Query implements Serializable {
 	private Element expression;
-	private List<RuleArgument> proof;
+	private ProofSet proof; // hashed, (see ProofSet)
 	private List<Result> results;
-	private Map<Engine.Property, Enum> engineProperties; // eventually source will make take over this role.
+	private Map<Engine.Property, Enum<?>> engineProperties; // eventually source will make take over this role.
+	// the evaluations of the seeds, if they've been evaluated in parallel
+	private transient Map<RuleArgument, SeedEvaluation> evaluations = null;
+	// the knowledge base the query was evaluated against, and the versions of the rule tags the query depended on
+	private transient KnowledgeBase knowledgeBase = null;
+	private transient Map<String, Long> dependencies = null;
+	// yields the results as they're decided
+	private transient Iterator<Result> resultIterator;
+	private boolean exhausted = false;
 
 	/**
 	 * <p>Construct a query.  The query needs a question, the 
@@ -36,27 +54,8 @@ public class Query implements Serializable {
 	 * @param reasoner the query's strategy for answering the question
 	 * @param engineProperties the yes or nowider context of the query
 	 */
-	Query(Constant expression, AbstractReasoner reasoner, KnowledgeBaseSource source, Map<Engine.Property, Enum> engineProperties) {
-		this.expression = expression;
-		this.engineProperties = engineProperties;
-		this.results = new LinkedList<Result>();
-		proof = new LinkedList<RuleArgument>();
-		Iterator<RuleArgument> matchIterator = source.argumentIterator(expression);
-		while (matchIterator.hasNext()) {
-			RuleArgument seed = matchIterator.next();
-			Result result = new Result(seed.getClaim(), false);
-			if (!proof.contains(seed)) proof.add(seed);
-			// present testPair to the reasoner
-			ReasonerPair reasoningResult = reasoner.evaluate(new ReasonerPair(new RuleArgumentList().cloneAndExtend(seed), new RuleArgumentList()), proof);
-			// check result
-			if (reasoningResult.getPRO().getArguments().size()>0) { 
-				result.setUndefeated(true);
-			}
-			// add any new arguments, returned by the reasoner, into the proof.
-			updateProof(reasoningResult.getPRO());
-			updateProof(reasoningResult.getOPP());
-			results.add(result);
-		}
+	Query(Constant expression, AbstractReasoner reasoner, KnowledgeBaseSource source, Map<Engine.Property, Enum<?>> engineProperties) {
+		this(expression, reasoner, source, engineProperties, false);
 	}
 	/**
 	 * <p>Construct a query.  The query needs a question, the 
@@ -70,34 +69,52 @@ public class Query implements Serializable {
 	 * @param reasoner the query's strategy for answering the question
 	 * @param engineProperties the wider context of the query
 	 * */
-	 Query(ConstantList list, AbstractReasoner reasoner, KnowledgeBaseSource source, Map<Engine.Property, Enum> engineProperties) {
-		this.expression = list;
+	 Query(ConstantList list, AbstractReasoner reasoner, KnowledgeBaseSource source, Map<Engine.Property, Enum<?>> engineProperties) {
+		this(list, reasoner, source, engineProperties, false);
+	}
+	/**
+	 * Construct a query, (see the other constructors), that's either evaluated straight away
+	 * or evaluated one result at a time by it's result iterator.
+	 * @param expression the query's question, a Constant or ConstantList
+	 * @param reasoner the query's strategy for answering the question
+	 * @param engineProperties the wider context of the query
+	 * @param streamed true if the query is evaluated by it's result iterator, (see <code>resultIterator</code>)
+	 */
+	Query(Element expression, AbstractReasoner reasoner, KnowledgeBaseSource source, Map<Engine.Property, Enum<?>> engineProperties, boolean streamed) {
+		this.expression = expression;
 		this.engineProperties = engineProperties;
 		this.results = new LinkedList<Result>();
-		proof = new LinkedList<RuleArgument>();
-		Iterator<RuleArgumentList> matchIterator = source.argumentIterator(list);
-		while (matchIterator.hasNext()) {
-			RuleArgumentList seedList = matchIterator.next();
-			Result result = new Result(seedList.getClaims(), false);
-			result.setUndefeated(true);
-			Iterator<RuleArgument> seedIterator = seedList.getArguments().iterator();
-			while (seedIterator.hasNext()) {
-				RuleArgument seed = seedIterator.next();
-				if (!proof.contains(seed)) proof.add(seed);
-				// present testPair to the reasoner
-				ReasonerPair reasoningResult = reasoner.evaluate(new ReasonerPair(new RuleArgumentList().cloneAndExtend(seed), new RuleArgumentList()), proof);
-				// check result
-				if (reasoningResult.getPRO().getArguments().size()==0) { 
-					result.setUndefeated(false);
-				}
-				// add any new arguments, returned by the reasoner, into the proof.
-				updateProof(reasoningResult.getPRO());
-				updateProof(reasoningResult.getOPP());
+		proof = new ProofSet();
+		resultIterator = new ResultIterator(reasoner, source);
+		if (!streamed) {
+			while (resultIterator.hasNext()) {
+				resultIterator.next();
 			}
-			results.add(result);
 		}
 	}
 	
+	/**
+	 * Copy a query that's been evaluated, (see <code>Engine.cachedQuery</code>).  The copy has the same
+	 * results and proof, but in lists of it's own, so changing them doesn't change the query's, or any
+	 * other copy's.  The arguments of the proof are shared, (they were developed for the query, so no
+	 * other query sets their status).
+	 * @param query the query to copy, (evaluated straight away, so the copy has nothing left to stream).
+	 */
+	Query(Query query) {
+		this.expression = query.expression;
+		this.engineProperties = query.engineProperties;
+		this.results = new LinkedList<Result>(query.results);
+		proof = new ProofSet();
+		Iterator<RuleArgument> argumentIterator = query.proof.iterator();
+		while (argumentIterator.hasNext()) {
+			proof.addIfAbsent(argumentIterator.next());
+		}
+		knowledgeBase = query.knowledgeBase;
+		dependencies = query.dependencies;
+		exhausted = query.exhausted;
+		resultIterator = Collections.<Result>emptyList().iterator();
+	}
+	
 	/**
 	 * A list of results - one for each different argument that could be develped whose claim
 	 * is a match to the query expression.
@@ -108,6 +125,32 @@ public class Query implements Serializable {
 		return results;
 	}
 	
+	/**
+	 * <p>Iterate over the query's results as they're decided, rather than waiting for all of them.
+	 * Each call to <code>hasNext</code> evaluates the next of the seed arguments, (the arguments whose claims
+	 * match the query expression), and the result is added to <code>getResults</code> and the
+	 * arguments used to decide it to <code>getProof</code>.  If the engine's PARALLEL property is on
+	 * the seeds are all evaluated by the first call, (see SeedEvaluation).</p>
+	 * <p>The query's QueryContext is only entered while a result is being decided, so the iterator
+	 * can be left between results, but it shouldn't be used by more than one thread at once.
+	 * The iterator of a query that's evaluated straight away, (see <code>Engine.createQuery</code>),
+	 * has nothing left to yield.</p>
+	 * @return iterator over the results that haven't been yielded yet.
+	 */
+	public Iterator<Result> resultIterator() {
+		return resultIterator;
+	}
+
+	/**
+	 * Check whether the query ran out of budget, (see QueryBudget).  The results of a query that ran out
+	 * are partial: the result it was deciding is undecided, (see <code>Result.isUndecided</code>), and the 
+	 * seeds it hadn't reached don't have results at all.
+	 * @return true if the query ran out of budget.
+	 */
+	public boolean isExhausted() {
+		return exhausted;
+	}
+	
 	/**
 	 * The proof for a Query is the Argument network used to resolve status of the query matches.
 	 * @return a List of Main Arguments used to resolve the status of the query expression matches.  
@@ -116,11 +159,42 @@ public class Query implements Serializable {
 		return proof;
 	}
 	
+	/**
+	 * Check whether the rules that the query depended on have changed since it was evaluated, (so it's 
+	 * results may have changed too and the query should be evaluated again).
+	 * @return true if the query is stale, (or it's dependencies aren't known, e.g. it's been deserialized).
+	 */
+	public boolean isStale() {
+		if (dependencies==null) return true;
+		Iterator<Map.Entry<String, Long>> entryIterator = dependencies.entrySet().iterator();
+		while (entryIterator.hasNext()) {
+			Map.Entry<String, Long> entry = entryIterator.next();
+			if (knowledgeBase.getVersion(entry.getKey())!=entry.getValue().longValue()) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * The knowledge base the query was evaluated against.
+	 * @return knowledge base, or null if it isn't known.
+	 */
+	KnowledgeBase getKnowledgeBase() {
+		return knowledgeBase;
+	}
+
+	/**
+	 * The rule tags of the literals the query sought arguments for, (see <code>Constant.ruleTag</code>).
+	 * @return rule tags, (empty if they aren't known).
+	 */
+	public Set<String> getDependencies() {
+		return (dependencies==null) ? Collections.<String>emptySet() : Collections.unmodifiableSet(dependencies.keySet());
+	}
+
 	/**
 	 * A way for an ArgumentWriter to see the context of the query.
 	 * @return The properties of the engine that generated this query.
 	 */
-	public Map<Engine.Property, Enum> getEngineProperties() {
+	public Map<Engine.Property, Enum<?>> getEngineProperties() {
 		return engineProperties;
 	}
 	
@@ -150,12 +224,207 @@ public class Query implements Serializable {
 		writer.write(this);
 	}
 	
+	private void recordDependencies(KnowledgeBaseSource source) {
+		knowledgeBase = source.getKnowledgeBase();
+		dependencies = new HashMap<String, Long>();
+		Iterator<String> ruleTagIterator = QueryContext.current().getRuleTags().iterator();
+		while (ruleTagIterator.hasNext()) {
+			String ruleTag = ruleTagIterator.next();
+			dependencies.put(ruleTag, knowledgeBase.getVersion(ruleTag));
+		}
+	}
+	
+	private boolean isParallel(KnowledgeBaseSource source) {
+		return source.isParallel() && source.getKnowledgeBase().isFrozen();
+	}
+	
+	private void evaluateInParallel(List<RuleArgument> seeds, KnowledgeBaseSource source) {
+		evaluations = SeedEvaluation.evaluateAll(seeds, (Reasoner) engineProperties.get(Engine.Property.SEMANTICS), source.getKnowledgeBase().getTraceListener());
+	}
+	
+	// present a seed to the reasoner, or pick up it's parallel evaluation, (null if the budget ran out)
+	private ReasonerPair evaluate(RuleArgument seed, AbstractReasoner reasoner) {
+		if (evaluations==null) {
+			try {
+				return reasoner.evaluate(new ReasonerPair(new RuleArgumentList().cloneAndExtend(seed), new RuleArgumentList()), proof);
+			} catch (BudgetExceededException e) {
+				exhausted = true;
+				return null;
+			}
+		}
+		SeedEvaluation evaluation = evaluations.get(seed);
+		Iterator<RuleArgument> argumentIterator = evaluation.getProof().iterator();
+		while (argumentIterator.hasNext()) {
+			RuleArgument candidate = argumentIterator.next();
+			proof.addIfAbsent(candidate);
+		}
+		if (evaluation.getResult()==null) exhausted = true;
+		return evaluation.getResult();
+	}
+	
+	// decide the result for a seed argument
+	private Result decide(RuleArgument seed, AbstractReasoner reasoner) {
+		Result result = new Result(seed.getClaim(), false);
+		proof.addIfAbsent(seed);
+		// present testPair to the reasoner
+		ReasonerPair reasoningResult = evaluate(seed, reasoner);
+		if (reasoningResult==null) {
+			result.setUndecided(true);
+			return result;
+		}
+		// check result
+		if (reasoningResult.getPRO().size()>0) { 
+			result.setUndefeated(true);
+		}
+		// add any new arguments, returned by the reasoner, into the proof.
+		updateProof(reasoningResult.getPRO());
+		updateProof(reasoningResult.getOPP());
+		return result;
+	}
+	
+	// decide the result for a list of seed arguments, (undecided if none of them is defeated but one is undecided)
+	private Result decide(RuleArgumentList seedList, AbstractReasoner reasoner) {
+		Result result = new Result(seedList.getClaims(), false);
+		result.setUndefeated(true);
+		boolean undecided = false;
+		Iterator<RuleArgument> seedIterator = seedList.getArguments().iterator();
+		while (seedIterator.hasNext() && !isStopped()) {
+			RuleArgument seed = seedIterator.next();
+			proof.addIfAbsent(seed);
+			// present testPair to the reasoner
+			ReasonerPair reasoningResult = evaluate(seed, reasoner);
+			if (reasoningResult==null) {
+				undecided = true;
+				continue;
+			}
+			// check result
+			if (reasoningResult.getPRO().size()==0) { 
+				result.setUndefeated(false);
+			}
+			// add any new arguments, returned by the reasoner, into the proof.
+			updateProof(reasoningResult.getPRO());
+			updateProof(reasoningResult.getOPP());
+		}
+		if ((undecided || seedIterator.hasNext()) && result.isUndefeated()) {
+			result.setUndefeated(false);
+			result.setUndecided(true);
+		}
+		return result;
+	}
+	
+	// whether no more seeds should be evaluated: once the budget has run out, (unless the seeds have been 
+	// evaluated in parallel), as the arguments tabled so far may be incomplete
+	private boolean isStopped() {
+		return exhausted && evaluations==null;
+	}
+	
 	private void updateProof(RuleArgumentList list) {
-		// TODO: check that Argument isnt already in proof.
 		Iterator<RuleArgument> argumentIterator = list.getArguments().iterator();
 		while (argumentIterator.hasNext()) {
 			RuleArgument candidate = argumentIterator.next();
-			if (!proof.contains(candidate)) proof.add(candidate);
+			proof.addIfAbsent(candidate);
+		}
+	}
+	
+	/**
+	 * <p>Decides the query's results one at a time, within the query's QueryContext, (see <code>resultIterator</code>).</p>
+	 * <p>Assumes user will poll hasNext() before calling next() after the first result has been returned.</p>  
+	 */
+	private class ResultIterator implements Iterator<Result> {
+		private AbstractReasoner reasoner;
+		private KnowledgeBaseSource source;
+		private QueryContext context;
+		private Iterator<?> matchIterator = null;
+		private boolean finished = false;
+		private boolean queuedResult = false;
+		private Result nextResult;
+		
+		ResultIterator(AbstractReasoner reasoner, KnowledgeBaseSource source) {
+			this.reasoner = reasoner;
+			this.source = source;
+			this.context = source.createQueryContext(expression);
+		}
+		
+		public boolean hasNext() {
+			if (queuedResult || finished) return queuedResult;
+			QueryContext previousContext = context.enter();
+			try {
+				if (matchIterator==null) start();
+				if (!isStopped() && matchIterator.hasNext()) {
+					Object match = matchIterator.next();
+					nextResult = (match instanceof RuleArgumentList) ? decide((RuleArgumentList) match, reasoner) : decide((RuleArgument) match, reasoner);
+					results.add(nextResult);
+					queuedResult = true;
+				} else {
+					finish();
+				}
+			} catch (BudgetExceededException e) {
+				// ran out while the seeds were being sought
+				exhausted = true;
+				finish();
+			} catch (RuntimeException e) {
+				end();
+				throw e;
+			} finally {
+				source.endQuery(previousContext);
+			}
+			return queuedResult;
+		}
+		
+		public Result next() {
+			if (!hasNext()) throw new NoSuchElementException();
+			queuedResult = false;
+			return nextResult;
+		}
+		
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+		
+		private void start() {
+			ReasonerTraceListener listener = source.getKnowledgeBase().getTraceListener();
+			reasoner.setTraceListener(listener);
+			if (listener!=null) listener.reasoningStarted((Reasoner) engineProperties.get(Engine.Property.SEMANTICS));
+			reasoner.beginQuery();
+			if (expression instanceof ConstantList) {
+				Iterator<RuleArgumentList> seedListIterator = source.argumentIterator((ConstantList) expression);
+				matchIterator = seedListIterator;
+				if (isParallel(source)) {
+					List<RuleArgumentList> seedLists = new ArrayList<RuleArgumentList>();
+					List<RuleArgument> seeds = new ArrayList<RuleArgument>();
+					while (seedListIterator.hasNext()) {
+						RuleArgumentList seedList = seedListIterator.next();
+						seedLists.add(seedList);
+						seeds.addAll(seedList.getArguments());
+					}
+					evaluateInParallel(seeds, source);
+					matchIterator = seedLists.iterator();
+				}
+			} else {
+				Iterator<RuleArgument> seedIterator = source.argumentIterator((Constant) expression);
+				matchIterator = seedIterator;
+				if (isParallel(source)) {
+					List<RuleArgument> seeds = new ArrayList<RuleArgument>();
+					while (seedIterator.hasNext()) {
+						seeds.add(seedIterator.next());
+					}
+					evaluateInParallel(seeds, source);
+					matchIterator = seeds.iterator();
+				}
+			}
+		}
+		
+		// all the results have been decided
+		private void finish() {
+			recordDependencies(source);
+			end();
+		}
+		
+		private void end() {
+			finished = true;
+			evaluations = null;
+			reasoner.endQuery();
+			context = null;
 		}
 	}
 }
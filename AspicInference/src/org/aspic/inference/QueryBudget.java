@@ -0,0 +1,119 @@
+package org.aspic.inference;
+
+/**
+ * <p>The resources a single Query may use, so that a pathological query can't stall whoever's asking it.
+ * A budget limits the number of arguments the query develops, the depth of recursion it reaches
+ * (the level of the literals it seeks, see <code>Constant.argumentIterator</code>), the number of
+ * attacks it checks and the time it takes.  A limit of 0 means that resource isn't limited.</p>
+ *
+ * <p>A budget is set with <code>Engine.setQueryBudget</code> (or <code>KnowledgeBaseSource.setQueryBudget</code>)
+ * and applies to each query separately.  When a query runs out of budget it stops, and the result of the
+ * seed it was evaluating is marked as undecided, (see <code>Result.isUndecided</code> and
+ * <code>Query.isExhausted</code>).  The results it had already decided are kept.</p>
+ */
+public class QueryBudget {
+	private int maxArguments = 0;
+	private int maxDepth = 0;
+	private long timeout = 0;
+	private int maxAttackChecks = 0;
+
+	/**
+	 * Default constructor, (nothing is limited).
+	 */
+	public QueryBudget() {}
+
+	/**
+	 * Typical constructor.
+	 * @param maxArguments maximum number of arguments developed, or 0.
+	 * @param maxDepth maximum level of recursion, or 0.
+	 * @param timeout maximum time in milliseconds, or 0.
+	 * @param maxAttackChecks maximum number of attacks checked, or 0.
+	 */
+	public QueryBudget(int maxArguments, int maxDepth, long timeout, int maxAttackChecks) {
+		setMaxArguments(maxArguments);
+		setMaxDepth(maxDepth);
+		setTimeout(timeout);
+		setMaxAttackChecks(maxAttackChecks);
+	}
+
+	/**
+	 * Getter for maximum number of arguments.
+	 * @return maximum number of arguments a query develops, or 0 if it isn't limited.
+	 */
+	public int getMaxArguments() {
+		return maxArguments;
+	}
+
+	/**
+	 * Setter for maximum number of arguments.
+	 * @param maxArguments maximum number of arguments a query develops, or 0 if it isn't limited.
+	 */
+	public void setMaxArguments(int maxArguments) {
+		if (maxArguments<0) throw new RuntimeException("The maximum number of arguments can't be negative.");
+		this.maxArguments = maxArguments;
+	}
+
+	/**
+	 * Getter for maximum depth.
+	 * @return maximum level of recursion a query reaches, or 0 if it isn't limited.
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Setter for maximum depth.
+	 * @param maxDepth maximum level of recursion a query reaches, or 0 if it isn't limited.
+	 */
+	public void setMaxDepth(int maxDepth) {
+		if (maxDepth<0) throw new RuntimeException("The maximum depth can't be negative.");
+		this.maxDepth = maxDepth;
+	}
+
+	/**
+	 * Getter for timeout.
+	 * @return maximum time in milliseconds a query takes, or 0 if it isn't limited.
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Setter for timeout.  Only the time spent evaluating the query counts, (for a query whose results
+	 * are streamed, see <code>Engine.resultIterator</code>, the time between results doesn't).
+	 * @param timeout maximum time in milliseconds a query takes, or 0 if it isn't limited.
+	 */
+	public void setTimeout(long timeout) {
+		if (timeout<0) throw new RuntimeException("The timeout can't be negative.");
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Getter for maximum number of attack checks.
+	 * @return maximum number of attacks a query checks, or 0 if it isn't limited.
+	 */
+	public int getMaxAttackChecks() {
+		return maxAttackChecks;
+	}
+
+	/**
+	 * Setter for maximum number of attack checks.
+	 * @param maxAttackChecks maximum number of attacks a query checks, or 0 if it isn't limited.
+	 */
+	public void setMaxAttackChecks(int maxAttackChecks) {
+		if (maxAttackChecks<0) throw new RuntimeException("The maximum number of attack checks can't be negative.");
+		this.maxAttackChecks = maxAttackChecks;
+	}
+
+	/**
+	 * Check whether any resource is limited.
+	 * @return true if nothing is limited.
+	 */
+	public boolean isUnlimited() {
+		return maxArguments==0 && maxDepth==0 && timeout==0 && maxAttackChecks==0;
+	}
+
+	public String toString() {
+		return "arguments " + maxArguments + ", depth " + maxDepth + ", timeout " + timeout + "ms, attack checks " + maxAttackChecks;
+	}
+}
@@ -0,0 +1,93 @@
+package org.aspic.inference;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>The queries an Engine has evaluated, so that a question that's asked again can be answered
+ * without evaluating it again.  Used by an Engine when it's QUERY_CACHE property is on.  Queries
+ * are keyed by their expression and the engine's settings that can change their results, (see
+ * <code>Engine.cacheKey</code>), and the least recently used query is evicted once the cache is
+ * full.</p>
+ *
+ * <p>A cached query is only returned while it isn't stale, (see <code>Query.isStale</code>), i.e.
+ * while none of the rules it depended on has changed, so changing the knowledge base only
+ * invalidates the queries that the change could affect.  The Query objects held here aren't handed
+ * out, (the Engine hands out copies of them, see <code>Query(Query)</code>), so whoever asks the same
+ * question gets the same answer, whatever an earlier asker did with theirs.</p>
+ */
+class QueryCache {
+	/** Default number of queries held. */
+	static final int DEFAULT_CAPACITY = 256;
+
+	private Map<String, Query> queries;
+	private int hits = 0;
+	private int misses = 0;
+
+	/**
+	 * Typical constructor.
+	 * @param capacity the maximum number of queries held.
+	 */
+	QueryCache(final int capacity) {
+		queries = new LinkedHashMap<String, Query>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, Query> eldest) {
+				return size()>capacity;
+			}
+		};
+	}
+
+	/**
+	 * Get a query that's been evaluated already.
+	 * @param key the query's key.
+	 * @param kb the knowledge base the query should have been evaluated against.
+	 * @return the query, or null if there isn't one or it's stale.
+	 */
+	synchronized Query get(String key, KnowledgeBase kb) {
+		Query result = queries.get(key);
+		if (result!=null && (result.getKnowledgeBase()!=kb || result.isStale())) {
+			queries.remove(key);
+			result = null;
+		}
+		if (result==null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return result;
+	}
+
+	/**
+	 * Remember a query that's been evaluated.
+	 * @param key the query's key.
+	 * @param query the query.
+	 */
+	synchronized void put(String key, Query query) {
+		queries.put(key, query);
+	}
+
+	/**
+	 * Number of queries that were answered from the cache.
+	 * @return number of cache hits.
+	 */
+	synchronized int getHits() {
+		return hits;
+	}
+
+	/**
+	 * Number of queries that had to be evaluated.
+	 * @return number of cache misses.
+	 */
+	synchronized int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Number of queries held.
+	 * @return size.
+	 */
+	synchronized int size() {
+		return queries.size();
+	}
+}
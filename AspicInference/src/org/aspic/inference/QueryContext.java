@@ -0,0 +1,406 @@
+package org.aspic.inference;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>The state of the Query that's being evaluated on the current thread: the knowledge base it's
+ * evaluated against, the numbering of the arguments it develops and it's argument table.  Keeping this state per query, rather than in
+ * statics or in the KnowledgeBase, means that any number of threads can evaluate queries
+ * against the same (frozen) KnowledgeBase at once.</p>
+ *
+ * <p>A context is entered by KnowledgeBaseSource.beginQuery and left by endQuery.  Contexts nest,
+ * so a query that's evaluated during another query on the same thread gets a context of it's own.
+ * Arguments are numbered by RuleArgument's global counter, so their numbers (and names) are unique
+ * across queries, which is what the writers rely on, unless the query numbers it's own arguments, 
+ * (see <code>KnowledgeBaseSource.isQueryNumbering</code>), in which case they're numbered from 1.</p>
+ *
+ * <p>A context can be forked, so that part of a query can be evaluated on another thread
+ * (see SeedEvaluation).  A fork has an argument table of it's own and gives the arguments it
+ * develops provisional numbers, which are replaced when the fork is joined back into the
+ * query's context.  The statuses a fork's reasoner gives arguments are held back until then too,
+ * as the arguments the fork shares with the query's other forks, (the seeds' sub-arguments), 
+ * mustn't be written by more than one thread, (see <code>deferStatus</code>).</p>
+ *
+ * <p>The variables of the recursive rules a query tries are renamed apart by it's context, (see 
+ * <code>rename</code>), so that queries on several threads don't contend for a shared naming counter.</p>
+ *
+ * <p>The context also records the rule tags of the literals the query seeks arguments for, which are
+ * the parts of the knowledge base that the query's results depend on, (see <code>Query.isStale</code>).</p>
+ *
+ * <p>If the query has a budget, (see QueryBudget), the context counts the arguments developed and the 
+ * attacks checked, (a fork shares the counts of the context it was forked from), and the time spent
+ * while the context, or one of it's forks, is entered, and throws a BudgetExceededException as soon 
+ * as any of the budget's limits is passed.  Once the budget is spent 
+ * every further check fails, so the query's forks stop too.</p>
+ *
+ * <p>The rules for a literal are looked up in the query's knowledge base rather than the literal's
+ * own, (see <code>getKnowledgeBase</code>), which matters when the query's knowledge base is an overlay:
+ * the literals in the base's rules still refer to the base, but must see the overlay's rules too.</p>
+ */
+class QueryContext {
+	private static final ThreadLocal<QueryContext> current = new ThreadLocal<QueryContext>();
+	// the number of contexts created, which gives each of them a prefix of it's own for renamed variables
+	private static final AtomicLong contexts = new AtomicLong();
+
+	private KnowledgeBase knowledgeBase;
+	private int argumentCounter = 0;
+	// the prefix of the internal names of the variables this context renames, and the number it's renamed
+	private final String renamingPrefix = "#" + contexts.incrementAndGet() + "_";
+	private int renamings = 0;
+	// whether the query numbers it's own arguments from 1, rather than with RuleArgument's global counter
+	private boolean queryNumbering = false;
+	private ArgumentTable argumentTable;
+	// whether the literals of an antecedent are sought in order of their selectivity
+	private boolean joinOrdering = false;
+	// the arguments of the query's knowledge base, developed bottom up, (null if they aren't)
+	private ArgumentStore argumentStore = null;
+	// the query's copies of the stored arguments it's been handed, (see replay)
+	private Map<RuleArgument, RuleArgument> replayed = null;
+	// the rule tags of the literals sought
+	private Set<String> ruleTags = new HashSet<String>();
+	// the arguments developed by a fork, in order, (null if this isn't a fork)
+	private List<RuleArgument> developed = null;
+	// the statuses a fork's reasoner gave arguments, set when it's joined, (null if this isn't a fork)
+	private Map<RuleArgument, RuleArgument.Status> statuses = null;
+	// the query's budget and what's been spent, (null if the query isn't limited)
+	private Spending spending = null;
+
+	/**
+	 * Typical constructor.
+	 * @param knowledgeBase the query's knowledge base.
+	 * @param argumentTable the query's argument table, or null if arguments aren't tabled.
+	 */
+	QueryContext(KnowledgeBase knowledgeBase, ArgumentTable argumentTable) {
+		this.knowledgeBase = knowledgeBase;
+		this.argumentTable = argumentTable;
+	}
+
+	/**
+	 * The context of the query being evaluated on this thread.
+	 * @return current context or null if no query is being evaluated.
+	 */
+	static QueryContext current() {
+		return current.get();
+	}
+
+	/**
+	 * Get the knowledge base that the rules for a literal should be looked up in.
+	 * @param kb the literal's knowledge base.
+	 * @return the knowledge base of the query being evaluated on this thread if it includes
+	 * <code>kb</code>, (e.g. it's an overlay of <code>kb</code>), otherwise <code>kb</code>.
+	 */
+	static KnowledgeBase getKnowledgeBase(KnowledgeBase kb) {
+		QueryContext context = current.get();
+		if (context==null || context.knowledgeBase==null || context.knowledgeBase==kb) return kb;
+		return (kb!=null && context.knowledgeBase.includes(kb)) ? context.knowledgeBase : kb;
+	}
+
+	/**
+	 * Setter for query numbering flag.
+	 * @param queryNumbering true if the query's arguments are numbered from 1, rather than with RuleArgument's global counter.
+	 */
+	void setQueryNumbering(boolean queryNumbering) {
+		this.queryNumbering = queryNumbering;
+	}
+
+	/**
+	 * Get the statistics that the order in which the literals of an antecedent are sought is planned with,
+	 * (see <code>ElementList.argumentIterator</code>).
+	 * @param kb the literals' knowledge base.
+	 * @return the statistics of the query's knowledge base, (see <code>getKnowledgeBase</code>), or null
+	 * if there's no query or it seeks the literals in the order they're written.
+	 */
+	static PredicateStatistics getPredicateStatistics(KnowledgeBase kb) {
+		QueryContext context = current.get();
+		if (context==null || !context.joinOrdering || kb==null) return null;
+		return getKnowledgeBase(kb).getPredicateStatistics();
+	}
+
+	/**
+	 * Setter for join ordering flag.
+	 * @param joinOrdering true if the literals of an antecedent are sought in order of their selectivity.
+	 */
+	void setJoinOrdering(boolean joinOrdering) {
+		this.joinOrdering = joinOrdering;
+	}
+
+	/**
+	 * Get the store that the arguments for a literal can be replayed from.
+	 * @param kb the literal's knowledge base.
+	 * @return the store of the query's knowledge base, or null if the query doesn't use one, the
+	 * literal belongs to another knowledge base or it's argument development is being traced.
+	 */
+	ArgumentStore getArgumentStore(KnowledgeBase kb) {
+		if (argumentStore==null || kb==null || kb.getTraceListener()!=null) return null;
+		return (kb==argumentStore.getKnowledgeBase() || argumentStore.getKnowledgeBase().includes(kb)) ? argumentStore : null;
+	}
+
+	/**
+	 * Setter for the argument store.
+	 * @param argumentStore the arguments of the query's knowledge base, developed bottom up, or null.
+	 */
+	void setArgumentStore(ArgumentStore argumentStore) {
+		this.argumentStore = argumentStore;
+	}
+
+	/**
+	 * Get the query's copy of a stored argument, (see ArgumentStore).  The stored arguments are shared by
+	 * every query that uses the store, so a query is handed copies, numbered by the query, whose status
+	 * and attackers are the query's own.  Each stored argument is copied once per query, (with it's sub 
+	 * arguments), so the copies share sub arguments just as the stored arguments do.
+	 * @param stored stored argument.
+	 * @return the query's copy.
+	 */
+	RuleArgument replay(RuleArgument stored) {
+		if (replayed==null) replayed = new IdentityHashMap<RuleArgument, RuleArgument>();
+		RuleArgument result = replayed.get(stored);
+		if (result==null) {
+			RuleArgumentList subArguments = stored.getSubArgumentList();
+			List<RuleArgument> copies = new ArrayList<RuleArgument>(subArguments.size());
+			for (RuleArgument subArgument : subArguments.getArguments()) {
+				copies.add(replay(subArgument));
+			}
+			result = new RuleArgument(stored, new RuleArgumentList(copies, subArguments.getSubstitution()));
+			replayed.put(stored, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Setter for the budget.  The budget's limits are copied and the query's time starts now.
+	 * @param budget the query's budget, or null if it isn't limited.
+	 */
+	void setBudget(QueryBudget budget) {
+		spending = (budget==null || budget.isUnlimited()) ? null : new Spending(budget);
+	}
+
+	/**
+	 * Check that a literal may be sought at a level of recursion, (see <code>Constant.argumentIterator</code>).
+	 * @param level the level of recursion.
+	 * @throws BudgetExceededException if the query's budget doesn't allow it.
+	 */
+	void checkDepth(int level) {
+		if (spending==null) return;
+		if (spending.maxDepth>0 && level>spending.maxDepth) spending.exceed("depth");
+		spending.check();
+	}
+
+	/**
+	 * Check that the query being evaluated on this thread may check another attack, and count it.
+	 * @throws BudgetExceededException if the query's budget doesn't allow it.
+	 */
+	static void checkAttack() {
+		QueryContext context = current.get();
+		if (context==null || context.spending==null) return;
+		Spending spending = context.spending;
+		if (spending.attackChecks.incrementAndGet()>spending.maxAttackChecks && spending.maxAttackChecks>0) spending.exceed("attack checks");
+		spending.check();
+	}
+
+	/**
+	 * Make this the current thread's context.
+	 * @return the context that was current, to be passed to <code>exit</code>.
+	 */
+	QueryContext enter() {
+		QueryContext previous = current.get();
+		current.set(this);
+		if (spending!=null) spending.resume();
+		return previous;
+	}
+
+	/**
+	 * Leave the current context.
+	 * @param previous the value returned by the matching <code>enter</code>.
+	 */
+	static void exit(QueryContext previous) {
+		QueryContext context = current.get();
+		if (context!=null && context.spending!=null) context.spending.pause();
+		if (previous==null) {
+			current.remove();
+		} else {
+			current.set(previous);
+		}
+	}
+
+	/**
+	 * Rename a variable apart, (see <code>Rule.renameVariables</code>).  A context is only entered on one 
+	 * thread at a time, (a fork is a context of it's own), so it's count of renamed variables needs no lock, 
+	 * and it's prefix keeps the new internal names apart from those of other contexts and of parsed variables.
+	 * @param variable the variable to rename.
+	 * @return new variable with the same public name, (and an internal name from Variable's own counter 
+	 * if no query is being evaluated on this thread).
+	 */
+	static Variable rename(Variable variable) {
+		QueryContext context = current.get();
+		if (context==null) return new Variable(variable.getName());
+		return new Variable(variable.getName(), variable.getName() + context.renamingPrefix + (++context.renamings));
+	}
+
+	/**
+	 * Number a new argument.
+	 * @param argument the argument being numbered.
+	 * @return the next argument number, (of this query, starting from 1, if it numbers it's own arguments), 
+	 * or a provisional (negative) number if this is a fork.
+	 */
+	int numberArgument(RuleArgument argument) {
+		if (spending!=null) {
+			if (spending.arguments.incrementAndGet()>spending.maxArguments && spending.maxArguments>0) spending.exceed("arguments");
+			spending.check();
+		}
+		return nextNumber(argument);
+	}
+
+	/**
+	 * Number the copy of a stored argument, (see <code>replay</code>), without counting it against the budget.
+	 * @param argument the copy being numbered.
+	 * @return the next argument number, (see <code>numberArgument</code>).
+	 */
+	int numberReplayed(RuleArgument argument) {
+		return nextNumber(argument);
+	}
+
+	// number an argument without counting it against the budget
+	private int nextNumber(RuleArgument argument) {
+		if (developed!=null) {
+			developed.add(argument);
+			return -developed.size();
+		}
+		return queryNumbering ? ++argumentCounter : RuleArgument.nextNumber();
+	}
+
+	/**
+	 * Create a context for evaluating part of this context's query on another thread.
+	 * @return new fork, with an argument table of it's own if this context has one.
+	 */
+	QueryContext fork() {
+		QueryContext fork = new QueryContext(knowledgeBase, (argumentTable!=null) ? new ArgumentTable() : null);
+		fork.developed = new ArrayList<RuleArgument>();
+		fork.statuses = new IdentityHashMap<RuleArgument, RuleArgument.Status>();
+		fork.joinOrdering = joinOrdering;
+		fork.queryNumbering = queryNumbering;
+		fork.argumentStore = argumentStore;
+		fork.ruleTags = new HashSet<String>();
+		fork.spending = spending;
+		return fork;
+	}
+
+	/**
+	 * Give the arguments developed by a fork their final numbers, following on from the arguments
+	 * developed so far in this context, and the statuses the fork's reasoner gave arguments, (so
+	 * forks joined in seed order leave the statuses that evaluating the seeds in turn would).
+	 * @param fork a fork of this context that's no longer in use.
+	 */
+	void join(QueryContext fork) {
+		for (RuleArgument argument : fork.developed) {
+			argument.renumber(nextNumber(argument));
+		}
+		fork.developed.clear();
+		for (Map.Entry<RuleArgument, RuleArgument.Status> entry : fork.statuses.entrySet()) {
+			entry.getKey().setStatus(entry.getValue());
+		}
+		fork.statuses.clear();
+		ruleTags.addAll(fork.ruleTags);
+	}
+
+	/**
+	 * Hold back the status that a fork's reasoner gives an argument until the fork is joined, (see 
+	 * <code>join</code>).  The reasoners never read the statuses, which are only for the writers.
+	 * @param argument the argument.
+	 * @param status it's status.
+	 * @return true if the status is held back, false if this isn't a fork and it should be set straight away.
+	 */
+	boolean deferStatus(RuleArgument argument, RuleArgument.Status status) {
+		if (statuses==null) return false;
+		statuses.put(argument, status);
+		return true;
+	}
+
+	/**
+	 * Record that the query depends on the rules for a literal.
+	 * @param literal a literal that's being sought.
+	 */
+	void dependsOn(Constant literal) {
+		ruleTags.add(literal.ruleTag());
+	}
+
+	/**
+	 * Record that the query depends on the rules for some rule tags.
+	 * @param ruleTags rule tags.
+	 */
+	void dependsOn(Collection<String> ruleTags) {
+		this.ruleTags.addAll(ruleTags);
+	}
+
+	/**
+	 * The rule tags of the literals the query has sought arguments for.
+	 * @return rule tags.
+	 */
+	Set<String> getRuleTags() {
+		return ruleTags;
+	}
+
+	/**
+	 * The arguments developed by this query.
+	 * @return argument table, or null if arguments aren't being tabled.
+	 */
+	ArgumentTable getArgumentTable() {
+		return argumentTable;
+	}
+
+	/**
+	 * The budget of a query and what it has spent, shared by the query's context and it's forks.
+	 */
+	private static class Spending {
+		private int maxArguments;
+		private int maxDepth;
+		private int maxAttackChecks;
+		private boolean timed;
+		// the time left, in nanoseconds, when the query's contexts were last left, (only if timed)
+		private long remaining;
+		// System.nanoTime() at which the time runs out, while the query's contexts are entered
+		private volatile long deadline;
+		// the number of times the query's contexts are entered, (on any thread)
+		private int entered = 0;
+		private AtomicInteger arguments = new AtomicInteger();
+		private AtomicInteger attackChecks = new AtomicInteger();
+		private volatile String exceeded = null;
+
+		Spending(QueryBudget budget) {
+			maxArguments = budget.getMaxArguments();
+			maxDepth = budget.getMaxDepth();
+			maxAttackChecks = budget.getMaxAttackChecks();
+			timed = budget.getTimeout()>0;
+			remaining = budget.getTimeout()*1000000L;
+			deadline = System.nanoTime() + remaining;
+		}
+
+		// start the clock, as the query's being evaluated
+		synchronized void resume() {
+			if (timed && entered++==0) deadline = System.nanoTime() + remaining;
+		}
+
+		// stop the clock, e.g. between the results of a streamed query
+		synchronized void pause() {
+			if (timed && --entered==0) remaining = deadline - System.nanoTime();
+		}
+
+		// fail if the budget has been spent, or the time has run out
+		void check() {
+			if (exceeded!=null) throw new BudgetExceededException("The query has run out of " + exceeded + ".");
+			if (timed && System.nanoTime()-deadline>0) exceed("time");
+		}
+
+		void exceed(String resource) {
+			if (exceeded==null) exceeded = resource;
+			throw new BudgetExceededException("The query has run out of " + exceeded + ".");
+		}
+	}
+}
@@ -11,7 +11,15 @@ public enum Reasoner {
 	/** Grounded semantics **/
 	GROUNDED { public GroundedReasoner createReasoner() { return new GroundedReasoner(); }},
 	/** Preferred credulous semantics **/
-	PREFERRED_CREDULOUS { public PreferredCredulousReasoner createReasoner() { return new PreferredCredulousReasoner(); }};
+	PREFERRED_CREDULOUS { public PreferredCredulousReasoner createReasoner() { return new PreferredCredulousReasoner(); }},
+	/** Grounded semantics, by labelling the materialized argumentation framework.  NB this doesn't always give
+	 * the same results as GROUNDED: the dialogue game can accept both of two arguments that defeat each other, 
+	 * which the labelling leaves UNDEC, (see GroundedLabellingReasoner) **/
+	GROUNDED_LABELLING { public GroundedLabellingReasoner createReasoner() { return new GroundedLabellingReasoner(); }},
+	/** Preferred skeptical semantics **/
+	PREFERRED_SKEPTICAL { public PreferredSkepticalReasoner createReasoner() { return new PreferredSkepticalReasoner(); }},
+	/** Stable (skeptical) semantics **/
+	STABLE { public StableReasoner createReasoner() { return new StableReasoner(); }};
 	
 	/** A factory method for the selected Reasoner. **/
 	abstract AbstractReasoner createReasoner(); 
@@ -0,0 +1,222 @@
+package org.aspic.inference;
+
+/**
+ * <p>Receives the events of argument development and of the reasoners' dispute games,
+ * e.g. for logging, visualisation or profiling.  A listener is registered with
+ * <code>Engine.setTraceListener</code> (or directly on the KnowledgeBase).  When no
+ * listener is registered the events are never built, so tracing costs nothing
+ * more than a null check.</p>
+ *
+ * <p>The <code>level</code> of an event is the depth of recursion at which it happened,
+ * which can be used for indentation.  LoggingTraceListener writes the events to
+ * <code>java.util.logging</code> as the engine's log messages.</p>
+ *
+ * <p>If the engine's PARALLEL property is on, a query's seeds are evaluated on the worker threads
+ * of a ForkJoinPool, (see SeedEvaluation), and the listener is called from all of them at once, so
+ * it must be thread-safe, and the events of different seeds are interleaved.</p>
+ */
+public interface ReasonerTraceListener {
+
+	/**
+	 * A query's reasoner is about to evaluate it's arguments on the current thread, (the
+	 * dispute game events that follow on this thread come from a reasoner of these semantics).
+	 * @param semantics the reasoner's semantics.
+	 */
+	void reasoningStarted(Reasoner semantics);
+
+	/**
+	 * Arguments are being sought for a literal.
+	 * @param party the party that's seeking the arguments.
+	 * @param level depth of recursion.
+	 * @param literal the literal sought.
+	 * @param needed the support the arguments need, (0.0 if any support will do).
+	 */
+	void literalSought(Party party, int level, Constant literal, Double needed);
+
+	/**
+	 * The knowledge base has rules (or facts) with a given arity whose consequent has the same rule tag as a sought literal.
+	 * @param party the party that's seeking the arguments.
+	 * @param level depth of recursion.
+	 * @param literal the literal sought.
+	 * @param arity the number of antecedents of the rules, (0 for facts).
+	 */
+	void rulesFound(Party party, int level, Constant literal, int arity);
+
+	/**
+	 * A rule whose consequent has the same rule tag as a sought literal has been tried.
+	 * @param party the party that's seeking the arguments.
+	 * @param level depth of recursion.
+	 * @param literal the literal sought.
+	 * @param rule the rule that was tried.
+	 * @param unifiable true if the rule's consequent unifies with the literal, i.e. if the rule will be used.
+	 */
+	void ruleTried(Party party, int level, Constant literal, Rule rule, boolean unifiable);
+
+	/**
+	 * A rule has been instantiated by unifying it's consequent with a sought literal.
+	 * @param party the party that's seeking the arguments.
+	 * @param level depth of recursion.
+	 * @param instantiation the instantiated rule.
+	 */
+	void ruleInstantiated(Party party, int level, Rule instantiation);
+
+	/**
+	 * A rule's consequent doesn't unify with a sought literal.
+	 * @param party the party that's seeking the arguments.
+	 * @param level depth of recursion.
+	 * @param literal the literal sought.
+	 * @param rule the rule.
+	 */
+	void unificationFailed(Party party, int level, Constant literal, Rule rule);
+
+	/**
+	 * Arguments are being sought for the premises of an instantiated rule.
+	 * @param party the party that's seeking the arguments.
+	 * @param level depth of recursion.
+	 * @param premises the rule's antecedents, (and it's name, if it's not a fact).
+	 */
+	void premisesSought(Party party, int level, ElementList premises);
+
+	/**
+	 * An argument has been developed for a sought literal.
+	 * @param party the party that's seeking the arguments.
+	 * @param level depth of recursion.
+	 * @param argument the argument found.
+	 */
+	void argumentFound(Party party, int level, RuleArgument argument);
+
+	/**
+	 * A built-in predicate can't develop an argument for a literal.
+	 * @param party the party that's seeking the arguments.
+	 * @param level depth of recursion.
+	 * @param literal the literal sought.
+	 */
+	void literalFailed(Party party, int level, Constant literal);
+
+	/**
+	 * The attackers of a sub-argument are being sought.
+	 * @param party the party that's seeking the attackers.
+	 * @param level depth of recursion.
+	 * @param subArgument the sub-argument.
+	 */
+	void subArgumentExamined(Party party, int level, RuleArgument subArgument);
+
+	/**
+	 * An attacking argument has been compared with the argument it attacks.
+	 * @param party the party that's seeking the attackers.
+	 * @param level depth of recursion.
+	 * @param victim the attacked argument.
+	 * @param attacker the attacking argument.
+	 * @param successful true if the attacker is strong enough to defeat the victim.
+	 */
+	void attackTried(Party party, int level, RuleArgument victim, RuleArgument attacker, boolean successful);
+
+	/**
+	 * A reasoner has started testing the last argument of a PRO list.
+	 * @param level depth of recursion.
+	 * @param testPair the PRO and OPP lists of the dispute so far.
+	 */
+	void disputeStarted(int level, ReasonerPair testPair);
+
+	/**
+	 * OPP has started looking for defeaters of the argument under test.
+	 * @param level depth of recursion.
+	 * @param victim the argument under test.
+	 */
+	void attackStarted(int level, RuleArgument victim);
+
+	/**
+	 * OPP has found a defeater of the argument under test.
+	 * @param level depth of recursion.
+	 * @param victim the argument under test.
+	 * @param attacker the defeater.
+	 * @param number the number of defeaters found so far, including this one.
+	 */
+	void attackFound(int level, RuleArgument victim, RuleArgument attacker, int number);
+
+	/**
+	 * A party can't use an argument, (e.g. because it's already been used or it conflicts with PRO).
+	 * @param party the party that can't use the argument.
+	 * @param level depth of recursion.
+	 * @param argument the ignored argument.
+	 */
+	void argumentIgnored(Party party, int level, RuleArgument argument);
+
+	/**
+	 * PRO has started looking for defenders against a defeater.
+	 * @param level depth of recursion.
+	 * @param victim the argument under test.
+	 * @param attacker the defeater.
+	 */
+	void defenseStarted(int level, RuleArgument victim, RuleArgument attacker);
+
+	/**
+	 * PRO is trying to defend against a defeater.
+	 * @param level depth of recursion.
+	 * @param victim the argument under test.
+	 * @param attacker the defeater.
+	 * @param defender the argument PRO is trying.
+	 */
+	void defenseTried(int level, RuleArgument victim, RuleArgument attacker, RuleArgument defender);
+
+	/**
+	 * PRO has defended against a defeater.
+	 * @param level depth of recursion.
+	 * @param victim the argument under test.
+	 * @param attacker the defeater.
+	 * @param defender the successful defender.
+	 */
+	void defenseSucceeded(int level, RuleArgument victim, RuleArgument attacker, RuleArgument defender);
+
+	/**
+	 * A defense has failed.
+	 * @param level depth of recursion.
+	 * @param victim the argument under test.
+	 * @param attacker the defeater.
+	 * @param defender the failed defender, or null if PRO has no defenders left.
+	 */
+	void defenseFailed(int level, RuleArgument victim, RuleArgument attacker, RuleArgument defender);
+
+	/**
+	 * PRO has defended against a defeater, so OPP tries the next one.
+	 * @param level depth of recursion.
+	 * @param victim the argument under test.
+	 * @param attacker the defeater.
+	 * @param testPair the PRO and OPP lists of the dispute, including the defense.
+	 */
+	void attackRepelled(int level, RuleArgument victim, RuleArgument attacker, ReasonerPair testPair);
+
+	/**
+	 * OPP has no defeaters left to attack the argument under test with.
+	 * @param level depth of recursion.
+	 * @param victim the argument under test.
+	 * @param numberOfAttacks the number of defeaters found.
+	 */
+	void attacksExhausted(int level, RuleArgument victim, int numberOfAttacks);
+
+	/**
+	 * The argument under test has been labelled, (by a reasoner that labels the materialized
+	 * argumentation framework, see GroundedLabellingReasoner).
+	 * @param level depth of recursion.
+	 * @param argument the argument under test.
+	 * @param label the argument's label, IN, OUT or UNDEC.
+	 * @param accepted true if an UNDEC argument is accepted all the same.
+	 * @param arguments the number of arguments in the labelled framework.
+	 */
+	void argumentLabelled(int level, RuleArgument argument, String label, boolean accepted, int arguments);
+
+	/**
+	 * The argument under test has been accepted.
+	 * @param level depth of recursion.
+	 * @param argument the argument under test.
+	 * @param pro the PRO arguments that defend it.
+	 */
+	void argumentAccepted(int level, RuleArgument argument, RuleArgumentList pro);
+
+	/**
+	 * The argument under test has been rejected.
+	 * @param level depth of recursion.
+	 * @param argument the argument under test.
+	 */
+	void argumentRejected(int level, RuleArgument argument);
+}
@@ -6,12 +6,14 @@ import java.io.Serializable;
 
 /**
  * Simple data class for representing a match to a <code>Query</code> expression.
- * Accessible via the Query.getResults() collection.
+ * Accessible via the Query.getResults() collection.  A result is undecided if the
+ * Query ran out of budget before it could decide it, (see QueryBudget).
  * @author mjs (matthew.south @ cancer.org.uk)
  */
 public class Result implements Serializable {
 	private Element expression = null;
 	private boolean result = false;
+	private boolean undecided = false;
 	/**
 	 * Default constructor.
 	public Result() {
@@ -40,6 +42,13 @@ public class Result implements Serializable {
 	public boolean isUndefeated() {
 		return result;
 	}
+	/**
+	 * Getter for undecided flag.  An undecided result is never undefeated.
+	 * @return true if the Query ran out of budget before this result was decided.
+	 */
+	public boolean isUndecided() {
+		return undecided;
+	}
 	/**
 	 * Setter for expression.
 	 * @param expression result's expression.
@@ -54,8 +63,15 @@ public class Result implements Serializable {
 	void setUndefeated(boolean undefeated) {
 		this.result = undefeated;
 	}
+	/**
+	 * Setter for undecided flag.
+	 * @param undecided true if the Query ran out of budget before this result was decided.
+	 */
+	void setUndecided(boolean undecided) {
+		this.undecided = undecided;
+	}
 	
 	public String toString() {
-		return expression.toString() + ". " + (result ? "yes" : "no");
+		return expression.toString() + ". " + (undecided ? "undecided" : (result ? "yes" : "no"));
 	}
 }
\ No newline at end of file
@@ -3,7 +3,6 @@ package org.aspic.inference;
 import org.aspic.inference.writers.*;
 
 import java.util.*;
-import java.util.logging.Logger;
 
 /**
  * <p>A Rule is a specialised Term, rule/4. The four parameters are:
@@ -59,7 +58,6 @@ public class Rule extends Term {
  * Update. I tried this and it wasnt pretty.
  * Unification stopped working.  I think because inheriting from Term means the instanceof condition holds in the Term.unify() implementation.
  */
-	private static Logger logger = Logger.getLogger(Rule.class.getName());		
 
 	private boolean isAutoGenerated = false; // if true this rule has been autogenerated
 	private boolean isAutoNamed = false; // if true, this rule's name has been autogenerated.
@@ -68,6 +66,8 @@ public class Rule extends Term {
     private String description;
     private String claimCaption;
     private String claimDescription;
+    // the degree of belief, read from parameter 3 when first needed, (0.0 until then, a dob is never 0.0).
+    private transient double dob;
     
 	/**
 	 * Default constructor.
@@ -98,7 +98,7 @@ public class Rule extends Term {
 	 * @param belief defeasible constant/term
 	 * @param dob degree of belief (0, 1.0]
 	 */
-	public Rule(Constant belief, Double dob) {
+	public Rule(Constant belief, double dob) {
 		super("rule", belief, new ElementList(), new ConstantFloat(dob));
 		checkDob(dob);
 	}
@@ -109,7 +109,7 @@ public class Rule extends Term {
 	 * @param dob degree of belief (0, 1.0]
 	 * @param name consumer supplied rule name
 	 */
-	public Rule(Constant belief, Double dob, Constant name) {
+	public Rule(Constant belief, double dob, Constant name) {
 		super("rule", belief, new ElementList(), new ConstantFloat(dob), name);
 		checkDob(dob);
 	}
@@ -129,7 +129,7 @@ public class Rule extends Term {
 	 * @param antecedent premises
 	 * @param dob degree of belief (0, 1.0]
 	 */
-	public Rule(Constant consequent, ElementList antecedent, Double dob) {
+	public Rule(Constant consequent, ElementList antecedent, double dob) {
 		super("rule", consequent, antecedent, new ConstantFloat(dob));
 		checkDob(dob);
 	}
@@ -141,7 +141,7 @@ public class Rule extends Term {
 	 * @param dob degree of belief (0, 1.0]
 	 * @param name consumer supplied rule name
 	 */
-	public Rule(Constant consequent, ElementList antecedent, Double dob, Constant name) {
+	public Rule(Constant consequent, ElementList antecedent, double dob, Constant name) {
 		super("rule", consequent, antecedent, new ConstantFloat(dob), name);
 		checkDob(dob);
 		checkRuleName();
@@ -255,19 +255,32 @@ public class Rule extends Term {
 	 * Getter for Rule's Degree of Belief.
 	 * @return degree of belief for Rule (0, 1.0]
 	 */
-	public Double getDob() {
-		return Double.valueOf(((Constant) super.getArg(2)).getFunctor());
+	public double getDob() {
+		if (dob==0.0) dob = Double.parseDouble(((Constant) super.getArg(2)).getFunctor());
+		return dob;
 	}
 
 	/**
 	 * Setter for Rule's Degree of Belief.
 	 * @param dob Degree of Belief (0, 1.0]
 	 */
-	public void setDob(Double dob) {
+	public void setDob(double dob) {
 		checkDob(dob);
 		ConstantFloat constantDob = new ConstantFloat(dob);
 		constantDob.setKnowledgeBase(this.getKnowledgeBase());
 		super.setArg(2, constantDob);
+		this.dob = dob;
+	}
+
+	public Term setArg(int index, Element element) {
+		super.setArg(index, element);
+		if (index==2) dob = 0.0; // read the new degree of belief when it's next needed
+		return this;
+	}
+
+	public void setArgList(ElementList argList) {
+		super.setArgList(argList);
+		dob = 0.0;
 	}
 	
 	/**
@@ -314,7 +327,7 @@ public class Rule extends Term {
 			
 			return (getName()!=null && (!this.isAutoNamed || showAutoGeneratedRuleNames) ? "[" + getName().inspect() + "] " : "") + getConsequent().inspect() +
 					((getAntecedent()!=null && getAntecedent().size()>0) ? " <- " + getAntecedent().inspect() : "") +
-					(getDob().compareTo(new Double(1.0))==0 ? "" : " " + getDob().toString());
+					(getDob()==1.0 ? "" : " " + getDob());
 			
 			
 		} else {
@@ -329,6 +342,7 @@ public class Rule extends Term {
 		} else {
 			// Next line a little awkward - refactor?
 			Rule rule = new Rule(super.applyArgs(subs));
+			rule.dob = this.dob; // the substitution doesn't change the degree of belief
 			// set the caption of the new Rule with placeholders instantiated if possible
 			if (this.getClaimCaption()!=null) {
 				String[] toBeInstantiated = this.getClaimCaption().split("\\{");
@@ -399,7 +413,7 @@ public class Rule extends Term {
 	 * @return true if this object is a rule and it's dob is 1.0
 	 */
 	public boolean isStrict() {
-		return (this.getDob().compareTo(new Double(1.0))==0);
+		return (this.getDob()==1.0);
 	}
 
 	public void write(KnowledgeWriter writer) {
@@ -448,9 +462,9 @@ public class Rule extends Term {
 		this.isAutoNamed = isAutoNamed;
 	}
 	
-	private void checkDob(Double dob) {
+	private void checkDob(double dob) {
 		if (dob > 1.0 || dob <= 0.0) {
-			throw new RuntimeException ("Degree of Belief, " + dob.toString() + " is outside of the boudns (0,1.0]");
+			throw new RuntimeException ("Degree of Belief, " + dob + " is outside of the boudns (0,1.0]");
 		}
 	}
 	
@@ -479,18 +493,35 @@ public class Rule extends Term {
 	 * @return Iterator over all arguments for literal, based on this rule.
 	 */
 	Iterator<RuleArgument> argumentIterator(Constant literal, Double needed, Party party, int level, int d_top, RuleArgumentValuator valuator, boolean restrictedRebutting) {
+		ReasonerTraceListener listener = literal.getTraceListener();
 		if (literal.isUnifiable(this.getConsequent())) {
 			// get mgu (most general unifier) and apply it
 			Substitution unifier = literal.unify(this.getConsequent(), new Substitution());
 			Rule instantiation = this.apply(unifier);
-			if (unifier.size()>0) logger.fine(party.toString() + ": instantiated to " + instantiation.inspect());
-			return new RuleArgumentIterator(instantiation, unifier, needed, party, level, d_top, valuator, restrictedRebutting);
+			if (listener!=null && unifier.size()>0) listener.ruleInstantiated(party, level, instantiation);
+			return new RuleArgumentIterator(instantiation, unifier, needed, party, level, d_top, valuator, restrictedRebutting, listener);
 		} else {
-			logger.fine(party.toString() + ": unification " + literal.inspect() + " ~> " + getConsequent().inspect() + " fails.");
+			if (listener!=null) listener.unificationFailed(party, level, literal, this);
 			return null;
 		}
 	}
 
+	/**
+	 * Copy the rule, with a fresh variable in place of each of it's variables.
+	 * See <code>KnowledgeBase.isRecursive</code>.
+	 * @return renamed copy of the rule, or the rule itself if it's grounded.
+	 */
+	Rule renameVariables() {
+		if (this.isGrounded()) return this;
+		Substitution renaming = new Substitution();
+		Iterator<Variable> itr = this.getVariables().iterator();
+		while (itr.hasNext()) {
+			Variable variable = itr.next();
+			if (!renaming.containsVariable(variable)) renaming.add(variable, QueryContext.rename(variable));
+		}
+		return this.apply(renaming);
+	}
+
 	List<Predicate> getPredicates() {
 		List<Predicate> result = getArgList().getPredicates();
 		if (this.isAutoNamed) {
@@ -538,7 +569,7 @@ public class Rule extends Term {
 		private ElementList coisa;
 		private Iterator<RuleArgumentList> argumentListIterator;
 		
-		public RuleArgumentIterator(Rule instantiation, Substitution unifier, Double needed, Party party, int level, int d_top, RuleArgumentValuator valuator, boolean restrictedRebutting) {
+		public RuleArgumentIterator(Rule instantiation, Substitution unifier, Double needed, Party party, int level, int d_top, RuleArgumentValuator valuator, boolean restrictedRebutting, ReasonerTraceListener listener) {
 			this.instantiation = instantiation;
 			this.unifier = unifier;
 			this.needed = needed;
@@ -551,7 +582,7 @@ public class Rule extends Term {
 			coisa = (ElementList) instantiation.getAntecedent().copy();
 			// clever bit - if a rule is a proper rule, then it's name is added as a "hidden" premise.
 			if (!instantiation.isFact()) coisa.add(instantiation.getName()); // add the name as the last premise so that it picks up the substitutions made in earlier argument generation.
-			if (coisa.size()>0) logger.fine(party.toString() + ": searching for arguments for: " + coisa.inspect() + ".");
+			if (listener!=null && coisa.size()>0) listener.premisesSought(party, level, coisa);
 			argumentListIterator = coisa.argumentIterator(needed, party, level+1, d_top+1, valuator, restrictedRebutting);
 			queuedArgument = hasNext();
 		}
@@ -560,12 +591,13 @@ public class Rule extends Term {
 			if (queuedArgument==true) {
 				return true;
 			} else {
-				if (argumentListIterator.hasNext()) {
+				// skip the sub-argument lists that don't give enough support, (in a loop, not a recursive call per list).
+				while (argumentListIterator.hasNext()) {
 					RuleArgumentList subArgs = argumentListIterator.next();
 					Substitution deeperUnifier = unifier.compose(subArgs.getSubstitution()); 
 					// get support from sub-args
 					//Double support = (subArgs.getArguments().size()==0) ? Rule.this.getDob() : subArgs.getSupport();
-					Double support = (subArgs.getArguments().size()==0) ? Rule.this.getDob() : subArgs.valuate(valuator);
+					double support = (subArgs.getArguments().size()==0) ? Rule.this.getDob() : subArgs.valuate(valuator);
 					if (support>=needed) {
 						Rule topRule = instantiation.apply(deeperUnifier);
 						/*
@@ -575,12 +607,9 @@ public class Rule extends Term {
 						nextArgument = new RuleArgument(topRule, support, deeperUnifier, subArgs, party, level, d_top, valuator, restrictedRebutting);
 						queuedArgument=true;
 						return true;
-					} else {
-						return this.hasNext();
 					}
-				} else {
-					return false;
 				}
+				return false;
 			}
 		}
 		
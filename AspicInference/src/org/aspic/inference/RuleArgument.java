@@ -4,7 +4,7 @@ import org.aspic.inference.writers.ReasonerWriter;
 
 import java.io.Serializable;
 import java.util.*;
-import java.util.logging.Logger;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>
@@ -44,16 +44,17 @@ import java.util.logging.Logger;
  * */
 public class RuleArgument implements Serializable {
 	private static final long serialVersionUID = 1L;
-	private static Logger logger = Logger.getLogger(Rule.class.getName());
 	/**
 	 * Enumeration of possible Argument status values, as defined within the context of a particular Query.
 	 * @author mjs (matthew.south @ cancer.org.uk)
 	 */
 	public enum Status {DEFEATED, UNDEFEATED}	
-	private static int counter = 0;	
+	// numbers arguments, unless the query they're developed by numbers it's own (see QueryContext)
+	private static AtomicInteger counter = new AtomicInteger();
 	
 	private Rule topRule;
-	private Double modifier;
+	private double modifier;
+	private double strength; // the valuation of this argument by it's own valuator, (see valuate)
 	private Substitution substitution; 
 	private RuleArgumentList subArgumentList;
 	private Party owner;
@@ -61,9 +62,10 @@ public class RuleArgument implements Serializable {
 	private int d_top;
 	private RuleArgumentValuator valuator;
 	private boolean restrictedRebutting;
-	private Status status;
+	private Status status; // NB set by the Query the argument was developed for, (a fork's statuses are set when it's joined, see QueryContext.deferStatus)
 	private int number;
 	private int parentNumber;
+	private long fingerprint; // see getFingerprint
 
 	private List<RuleArgument> successfulAttackerCache = new ArrayList<RuleArgument>();
 	private List<RuleArgument> unsuccessfulAttackerCache = new ArrayList<RuleArgument>();
@@ -84,7 +86,7 @@ public class RuleArgument implements Serializable {
 	 * @param valuator the valuator used when generating attacking arguments.
 	 * @param restrictedRebutting a flag for controlling allowed successful attacks.
 	 */
-	public RuleArgument(Rule topRule, Double modifier, Substitution substitution, RuleArgumentList subArguments, Party party, int level, int d_top, RuleArgumentValuator valuator, boolean restrictedRebutting) {
+	public RuleArgument(Rule topRule, double modifier, Substitution substitution, RuleArgumentList subArguments, Party party, int level, int d_top, RuleArgumentValuator valuator, boolean restrictedRebutting) {
 		// NB d_top used for isMainArgument, level used for pretty printing log messages
 		this.topRule = topRule;
 		this.modifier = modifier;
@@ -95,15 +97,49 @@ public class RuleArgument implements Serializable {
 		this.d_top = d_top;
 		this.valuator = valuator;
 		this.restrictedRebutting = restrictedRebutting;
-		this.number = ++counter;
+		QueryContext context = QueryContext.current();
+		this.number = (context!=null) ? context.numberArgument(this) : nextNumber();
+		this.fingerprint = topRule.getConsequent().fingerprint();
 		Iterator<RuleArgument> subArgsIterator = subArguments.getArguments().iterator();
 		while (subArgsIterator.hasNext()) {
-			subArgsIterator.next().parentNumber = this.number;
+			RuleArgument subArgument = subArgsIterator.next();
+			this.fingerprint = Element.fingerprint(this.fingerprint, subArgument.fingerprint);
+			// NB sub arguments can be shared (see ArgumentTable), so the first parent wins.
+			if (subArgument.parentNumber==0) subArgument.parentNumber = this.number;
 		}
+		// valuated once, here, the sub arguments' strengths having been valuated when they were developed.
+		this.strength = (valuator!=null) ? valuator.valuate(this) : modifier;
 /*		SchemeApplication<Constant, Double> inferenceSchemeApplication =  new SchemeApplication(Scheme.getScheme("dMP"), subArguments.getArguments());
 		addSchemeApplication(inferenceSchemeApplication); */
 	}
 
+	/**
+	 * Copy constructor, used to replay a stored argument in a query, (see <code>QueryContext.replay</code>).
+	 * The copy is numbered by the query, and it's status and attackers are the query's own.
+	 * @param argument the argument to copy.
+	 * @param subArguments the copies of it's sub arguments.
+	 */
+	RuleArgument(RuleArgument argument, RuleArgumentList subArguments) {
+		this.topRule = argument.topRule;
+		this.modifier = argument.modifier;
+		this.strength = argument.strength;
+		this.substitution = argument.substitution;
+		this.subArgumentList = subArguments;
+		this.owner = argument.owner;
+		this.level = argument.level;
+		this.d_top = argument.d_top;
+		this.valuator = argument.valuator;
+		this.restrictedRebutting = argument.restrictedRebutting;
+		this.fingerprint = argument.fingerprint;
+		QueryContext context = QueryContext.current();
+		this.number = (context!=null) ? context.numberReplayed(this) : nextNumber();
+		Iterator<RuleArgument> subArgsIterator = subArguments.getArguments().iterator();
+		while (subArgsIterator.hasNext()) {
+			RuleArgument subArgument = subArgsIterator.next();
+			if (subArgument.parentNumber==0) subArgument.parentNumber = this.number;
+		}
+	}
+
 	/* Methods */
 
 	/**  
@@ -111,6 +147,8 @@ public class RuleArgument implements Serializable {
 	 * variable names and the same holds for their subarguments.
 	 */
 	public boolean isSemanticallyEqual(RuleArgument candidate) {
+		if (candidate==this) return true;
+		if (candidate.fingerprint!=this.fingerprint) return false; // can't be equal
 		if (this.getClaim().isEqualModuloVariables(candidate.getClaim())) {
 			if (this.subArgumentList.getArguments().size()==candidate.subArgumentList.getArguments().size()) {
 				boolean tentativeResult = true;
@@ -142,6 +180,18 @@ public class RuleArgument implements Serializable {
 		} else return false;
 	}
 
+	/**
+	 * <p>A 64 bit hash of the argument's structure: it's claim, (with every variable hashed alike), and
+	 * it's sub arguments' fingerprints, in order.  Worked out once, when the argument is developed.</p>
+	 * <p>Semantically equal arguments have the same fingerprint, so it can be used to hash arguments
+	 * that are compared with <code>isSemanticallyEqual</code>, which uses it to reject most unequal
+	 * arguments straight away.</p>
+	 * @return fingerprint.
+	 */
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
 	/**
 	 * Checks this argument against a supposed attacker and returns true if this argument has equal or greater support than the attacker.
 	 * @param attacker argument to check
@@ -254,7 +304,7 @@ public class RuleArgument implements Serializable {
 	 * Support is the belief of the conclusion.
 	 * @return support for conclusion.
 	 */
-	public Double getModifier() {
+	public double getModifier() {
 		return modifier;
 	}
 
@@ -282,6 +332,20 @@ public class RuleArgument implements Serializable {
 		return substitution;
 	}
 
+	/**
+	 * Replace the argument's number, e.g. when a forked QueryContext is joined.  Sub arguments that
+	 * have this argument as their parent are updated too.
+	 * @param number new number.
+	 */
+	void renumber(int number) {
+		Iterator<RuleArgument> subArgsIterator = subArgumentList.getArguments().iterator();
+		while (subArgsIterator.hasNext()) {
+			RuleArgument subArgument = subArgsIterator.next();
+			if (subArgument.parentNumber==this.number) subArgument.parentNumber = number;
+		}
+		this.number = number;
+	}
+	
 	/**
 	 * Gets the status of the argument (if set).
 	 * @return the argument's status
@@ -295,7 +359,8 @@ public class RuleArgument implements Serializable {
 	 * @param status
 	 */
 	public void setStatus(Status status) {
-		this.status = status;
+		QueryContext context = QueryContext.current();
+		if (context==null || !context.deferStatus(this, status)) this.status = status;
 	}
 	
 	/* Virtual Getters */
@@ -386,7 +451,15 @@ public class RuleArgument implements Serializable {
 	 * Useful for Testing.
 	 */
 	public static void resetArgCounter() {
-		counter = 0;
+		counter.set(0);
+	}
+
+	/**
+	 * Take the next number from the internal counter.
+	 * @return argument number, (unique unless the counter's been reset).
+	 */
+	static int nextNumber() {
+		return counter.incrementAndGet();
 	}
 
 	public String toSimpleString() {
@@ -440,8 +513,14 @@ public class RuleArgument implements Serializable {
 		return this.getName() + " : " + this.getClaim().inspect() + " : " + this.getModifier();
 	}
 	
-	Double valuate(RuleArgumentValuator valuator) {
-		return valuator.valuate(this);
+	/**
+	 * Valuate this argument.  The valuation by the argument's own valuator is worked out when the argument
+	 * is developed, so it's only worked out again, (from the whole sub argument tree), for another valuator.
+	 * @param valuator valuator.
+	 * @return valuation.
+	 */
+	double valuate(RuleArgumentValuator valuator) {
+		return (valuator==this.valuator) ? strength : valuator.valuate(this);
 	}
 
 	/** 
@@ -568,18 +647,16 @@ public class RuleArgument implements Serializable {
 		 			queued=true;
 		 			return true;
 		 		} else {
-		 			if (subArgumentIterator!=null && subArgumentIterator.hasNext()) {
-		 				nextArgument = subArgumentIterator.next();
-		 				queued=true;
-		 				return true;
-		 			} else {
+		 			while (subArgumentIterator==null || !subArgumentIterator.hasNext()) {
 		 				if (subArgumentListIterator.hasNext()) {
 			 				subArgumentIterator = subArgumentListIterator.next().subArgumentIterator();
-			 				return hasNext();		 			
 			 			} else {
 			 				return false;
 		 				}
 		 			}
+		 			nextArgument = subArgumentIterator.next();
+		 			queued=true;
+		 			return true;
 		 		}
 		 	}
 		}
@@ -609,10 +686,12 @@ public class RuleArgument implements Serializable {
 		Iterator<RuleArgument> attackingArgumentIterator;
 		boolean queuedArgument = false;
 		RuleArgument nextArgument;
+		ReasonerTraceListener listener;
 		
 		public SuccessfulAttackingArgumentIterator(Party party, int level) {
 			this.party = party;
 			this.level = level;
+			this.listener = RuleArgument.this.getClaim().getTraceListener();
 			attackingArgumentIterator = RuleArgument.this.attackingArgumentIterator(party, level);
 			queuedArgument = hasNext();
 		}
@@ -623,6 +702,7 @@ public class RuleArgument implements Serializable {
 			} else {				
 				while(attackingArgumentIterator.hasNext()) {
 					RuleArgument attackingArgument = attackingArgumentIterator.next();
+					QueryContext.checkAttack(); // counts against the query's budget, if it has one
 					/*
 					if (attackingArgument.isMainArgument() && attackingArgument.getTopRule().getKnowledgeBase().isRuleName(attackingArgument.getTopRule().getConsequent())) {
 						// add undercutter interaction
@@ -636,8 +716,10 @@ public class RuleArgument implements Serializable {
 					*/
 					boolean restricted = (restrictedRebutting && !attackingArgument.getTopRule().isStrict() && RuleArgument.this.getTopRule().isStrict());
 					if ((RuleArgument.this.getModifier()<1.0) && attackingArgument.isAsStrongAs(RuleArgument.this) && !restricted) { 
-						logger.fine(party.toString() + ": " + attackingArgument.getName() + " strong enough to interfere with " + RuleArgument.this.getName());
-						successfulAttackerCache.add(attackingArgument);
+						if (listener!=null) listener.attackTried(party, level, RuleArgument.this, attackingArgument, true);
+						synchronized (successfulAttackerCache) {
+							if (!successfulAttackerCache.contains(attackingArgument)) successfulAttackerCache.add(attackingArgument);
+						}
 						// add defeat interaction 
 						/*
 						SchemeApplication<Constant, Double> inferenceSchemeApplication =  new SchemeApplication<Constant, Double>(Scheme.getScheme("dft"), attackingArgument);
@@ -646,9 +728,11 @@ public class RuleArgument implements Serializable {
 						queuedArgument = true;
 						return true;
 					} else {
-						logger.fine(party.toString() + ": " + attackingArgument.getName() + " too weak to interfere with " + RuleArgument.this.getName());
-						unsuccessfulAttackerCache.add(attackingArgument);
-						return hasNext();
+						if (listener!=null) listener.attackTried(party, level, RuleArgument.this, attackingArgument, false);
+						synchronized (unsuccessfulAttackerCache) {
+							if (!unsuccessfulAttackerCache.contains(attackingArgument)) unsuccessfulAttackerCache.add(attackingArgument);
+						}
+						// carry on with the next attacker
 					}
 				}
 				return false;
@@ -680,10 +764,12 @@ public class RuleArgument implements Serializable {
 		private Iterator<RuleArgument> successfulAttackingArgumentIterator;
 		private boolean queuedArgument = false;
 		private RuleArgument nextArgument;
+		private ReasonerTraceListener listener;
 		
 		public DeepSuccessfulAttackingArgumentIterator(Party party, int level) {
 			this.party = party;
 			this.level = level;
+			this.listener = RuleArgument.this.getClaim().getTraceListener();
 			subArgIterator = RuleArgument.this.subArgumentIterator();
 			queuedArgument = hasNext();
 		}
@@ -692,19 +778,18 @@ public class RuleArgument implements Serializable {
 			if (queuedArgument==true) {
 				return true; // in case someone tries hasNext() twice.
 			} else {
-				if (successfulAttackingArgumentIterator!=null && successfulAttackingArgumentIterator.hasNext()) {
-					nextArgument = successfulAttackingArgumentIterator.next();
-					return true;
-				} else {
+				// move on through the sub-arguments until one has a successful attacker, (a loop rather than a recursive call per sub-argument).
+				while (successfulAttackingArgumentIterator==null || !successfulAttackingArgumentIterator.hasNext()) {
 					if (subArgIterator.hasNext()) {
 						currentSubArg = subArgIterator.next();
-						logger.fine(party.toString() + ": examining " + currentSubArg.getName());
+						if (listener!=null) listener.subArgumentExamined(party, level, currentSubArg);
 						successfulAttackingArgumentIterator = currentSubArg.successfulAttackingArgumentIterator(party, level);
-						return hasNext();
 					} else {
 						return false;
 					}
 				}
+				nextArgument = successfulAttackingArgumentIterator.next();
+				return true;
 			}
 		}
 		
@@ -7,21 +7,37 @@ import org.aspic.inference.writers.ReasonerWriter;
 
 
 /**
- * A List of Arguments and a Substitution that is common to those Arguments.
- * Used to represent sub-arguments in an argument tree.
+ * <p>A List of Arguments and a Substitution that is common to those Arguments.
+ * Used to represent sub-arguments in an argument tree, and the PRO and OPP
+ * lists of the reasoners' dispute trees.</p>
+ * 
+ * <p>The list is immutable and persistent: it's a cons-list whose head is the last
+ * argument, so <code>cloneAndExtend</code> takes constant time and shares the
+ * rest of the list with the original.  The substitution is only composed when 
+ * it's asked for, (the reasoners never ask), and the <code>getArguments()</code>
+ * view is only built when it's asked for.</p>
  * 
  * @author mjs (matthew.south@cancer.org.uk)
  *
  */
 public class RuleArgumentList implements Cloneable, Serializable {
+	// the list without it's last argument, (null for the empty list)
+	private RuleArgumentList previous;
+	// the last argument (null for the empty list)
+	private RuleArgument last;
+	private int size;
+	// null until asked for, unless it was passed to the constructor
 	private Substitution substitution;
-	private List<RuleArgument> arguments;
+	// read-only view of the arguments in order, built when it's first asked for
+	private transient List<RuleArgument> arguments = null;
 
 	/**
 	 * Default constructor.
 	 */
 	public RuleArgumentList() {
-		arguments = new ArrayList<RuleArgument>();
+		previous = null;
+		last = null;
+		size = 0;
 		substitution = new Substitution();
 	}
 	
@@ -31,17 +47,85 @@ public class RuleArgumentList implements Cloneable, Serializable {
 	 * @param substitution substitution used in the list of arguments
 	 */
 	public RuleArgumentList(List<RuleArgument> arguments, Substitution substitution) {
-		this.arguments = arguments;
+		RuleArgumentList list = new RuleArgumentList();
+		for (int i=0; i<arguments.size()-1; i++) {
+			list = new RuleArgumentList(list, arguments.get(i));
+		}
+		if (arguments.size()>0) {
+			this.previous = list;
+			this.last = arguments.get(arguments.size()-1);
+		}
+		this.size = arguments.size();
 		this.substitution = substitution;
 	}
 
+	// used in .cloneAndExtend()
+	private RuleArgumentList(RuleArgumentList previous, RuleArgument last) {
+		this.previous = previous;
+		this.last = last;
+		this.size = previous.size + 1;
+		this.substitution = null;
+	}
+
 	/**
 	 * Getter for argument list.
-	 * @return arguments in this list
+	 * @return read-only list of the arguments in this list
 	 */
 	public List<RuleArgument> getArguments() {
+		if (arguments==null) {
+			arguments = Collections.unmodifiableList(Arrays.asList(toArray()));
+		}
 		return arguments;
 	}
+
+	private RuleArgument[] toArray() {
+		RuleArgument[] array = new RuleArgument[size];
+		RuleArgumentList list = this;
+		for (int i=size-1; i>=0; i--) {
+			array[i] = list.last;
+			list = list.previous;
+		}
+		return array;
+	}
+
+	/**
+	 * Number of arguments in the list.
+	 * @return size of list.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get the last argument that was added to the list.
+	 * @return last argument, or null if the list is empty.
+	 */
+	public RuleArgument getLast() {
+		return last;
+	}
+
+	/**
+	 * Iterate over the arguments, starting with the last argument that was added.  Cheaper 
+	 * than <code>getArguments().iterator()</code> where the order doesn't matter.
+	 * @return iterator over the arguments in reverse order.
+	 */
+	Iterator<RuleArgument> reverseIterator() {
+		return new Iterator<RuleArgument>() {
+			private RuleArgumentList list = RuleArgumentList.this;
+			public boolean hasNext() {
+				return list.size>0;
+			}
+			public RuleArgument next() {
+				if (list.size==0) throw new NoSuchElementException();
+				RuleArgument argument = list.last;
+				list = list.previous;
+				return argument;
+			}
+			public void remove() {
+				throw new UnsupportedOperationException("RuleArgumentList is immutable");
+			}
+		};
+	}
 	/*
 	public void setArguments(List<Argument> arguments) {
 		this.arguments = arguments;
@@ -52,6 +136,20 @@ public class RuleArgumentList implements Cloneable, Serializable {
 	 * @return this argument lists's substitution
 	 */
 	public Substitution getSubstitution() {
+		if (substitution==null) {
+			// find the nearest list that has it's substitution, then compose forwards from there
+			List<RuleArgumentList> pending = new ArrayList<RuleArgumentList>();
+			RuleArgumentList list = this;
+			while (list.substitution==null) {
+				pending.add(list);
+				list = list.previous;
+			}
+			Substitution result = list.substitution;
+			for (int i=pending.size()-1; i>=0; i--) {
+				result = result.compose(pending.get(i).last.getSubstitution());
+				pending.get(i).substitution = result;
+			}
+		}
 		return substitution;
 	}
 
@@ -66,15 +164,8 @@ public class RuleArgumentList implements Cloneable, Serializable {
 	 * @return cloned and extended RuleArgumentList
 	 */
 	RuleArgumentList cloneAndExtend(RuleArgument argument) {
-		List<RuleArgument> newarguments = new ArrayList<RuleArgument>();
-		// clone current list of arguments
-		Iterator<RuleArgument> itr = arguments.iterator();
-		while (itr.hasNext()) {
-			newarguments.add(itr.next());
-		}
-		// add new argument, and return a new ArgumentList that incorporates the new argument and substitution
-		newarguments.add(argument);
-		return new RuleArgumentList(newarguments, substitution.compose(argument.getSubstitution()));
+		// share this list as the tail of the new one; the new substitution is composed if it's needed
+		return new RuleArgumentList(this, argument);
 	}
 	
 	/**
@@ -82,7 +173,7 @@ public class RuleArgumentList implements Cloneable, Serializable {
 	 * @param valuator
 	 * @return
 	 */
-	Double valuate(RuleArgumentValuator valuator) {
+	double valuate(RuleArgumentValuator valuator) {
 		return valuator.valuate(this);
 	}
 	/**
@@ -94,9 +185,8 @@ public class RuleArgumentList implements Cloneable, Serializable {
 	 * @return true iff candidate is semantically equal to any argument in the list
 	 */
 	public boolean includesSemanticallyEqual(RuleArgument candidate) {
-		Iterator<RuleArgument> argumentIterator = arguments.iterator();
-		while (argumentIterator.hasNext()) {
-			if (candidate.isSemanticallyEqual(argumentIterator.next())==true) return true;
+		for (RuleArgumentList list = this; list.size>0; list = list.previous) {
+			if (candidate.isSemanticallyEqual(list.last)==true) return true;
 		}
 		return false;
 	}
@@ -107,7 +197,7 @@ public class RuleArgumentList implements Cloneable, Serializable {
 	 */
 	public String inspect() {
 		StringBuffer sb = new StringBuffer("[");
-		Iterator<RuleArgument> argIterator = arguments.iterator();
+		Iterator<RuleArgument> argIterator = (arguments!=null) ? arguments.iterator() : Arrays.asList(toArray()).iterator();
 		while (argIterator.hasNext()) {
 			sb.append(argIterator.next().getName());
 			if (argIterator.hasNext()) sb.append(", ");
@@ -126,7 +216,7 @@ public class RuleArgumentList implements Cloneable, Serializable {
 	 */
 	public ConstantList getClaims() {
 		ConstantList list = new ConstantList();
-		Iterator<RuleArgument> argIterator= arguments.iterator();
+		Iterator<RuleArgument> argIterator= getArguments().iterator();
 		while (argIterator.hasNext()) {
 			list.add(argIterator.next().getClaim());
 		}
@@ -139,8 +229,8 @@ public class RuleArgumentList implements Cloneable, Serializable {
 	 * @return true if the candidate can be unified with a member of this list
 	 */
 	public boolean includesUnifiable(RuleArgument candidate) {
-		for (RuleArgument argument : arguments) {
-			if (candidate.isUnifiable(argument)) return true;
+		for (RuleArgumentList list = this; list.size>0; list = list.previous) {
+			if (candidate.isUnifiable(list.last)) return true;
 		}
 		return false;
 	}
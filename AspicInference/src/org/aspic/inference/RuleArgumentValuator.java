@@ -12,11 +12,11 @@ public interface RuleArgumentValuator {
 	 * @param argument RuleArgument to valuate.
 	 * @return valuation.
 	 */
-	public Double valuate(RuleArgument argument);
+	public double valuate(RuleArgument argument);
 	/**
 	 * Valuate a RuleArgumentList.
 	 * @param argumentList RuleArgumentList to valuate.
 	 * @return valuation.
 	 */
-	public Double valuate(RuleArgumentList argumentList);
+	public double valuate(RuleArgumentList argumentList);
 }
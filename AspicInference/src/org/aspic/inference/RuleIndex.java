@@ -0,0 +1,132 @@
+package org.aspic.inference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>An argument index over one of the KnowledgeBase's rule lists, (i.e. all rules with the same
+ * consequent rule_tag and antecedent arity).  Looking up a literal returns only the rules whose
+ * consequent could unify with it, so that, for example, looking up <code>do(o_3)</code> doesn't
+ * try to unify with the consequents of <code>do(o_1)</code> ... <code>do(o_17)</code>.</p>
+ *
+ * <p>A literal is looked up on it's first argument that isn't a variable, (the arguments of
+ * <code>~p(...)</code> are those of <code>p(...)</code>).  The index for an argument position is
+ * only built the first time a literal needs it, so most rule lists will only ever be indexed on
+ * their first argument.  Each index maps the functor found at that position to the rules with
+ * that functor or a variable there, in their original order.  Literals whose argument isn't
+ * indexed get the rules with a variable there and literals with no bound arguments get the whole list.</p>
+ *
+ * <p>The index is a view of the list at the time it was built, so the KnowledgeBase discards it
+ * whenever it changes the list.  Lookups may be made by several threads at once, so the map of
+ * indexed positions is replaced, rather than changed, when a position is indexed.</p>
+ */
+class RuleIndex {
+	private List<Rule> rules;
+	// indexed argument position -> index of that position
+	private volatile Map<Integer, Position> positions = new HashMap<Integer, Position>();
+
+	/**
+	 * Typical constructor.
+	 * @param rules rule list to be indexed.
+	 */
+	RuleIndex(List<Rule> rules) {
+		this.rules = rules;
+	}
+
+	/**
+	 * Get the rules whose consequent might unify with <code>literal</code>.
+	 * @param literal the literal that's being sought.
+	 * @return list of candidate rules (in knowledge base order), which must not be modified.
+	 */
+	List<Rule> getCandidateRules(Constant literal) {
+		ElementList args = indexedArgs(literal);
+		if (args!=null) {
+			for (int i=0; i<args.size(); i++) {
+				String key = key(args.get(i));
+				if (key!=null) {
+					Position position = positions.get(i);
+					if (position==null) {
+						position = build(i);
+					}
+					List<Rule> candidates = position.index.get(key);
+					return (candidates==null) ? position.unindexed : candidates;
+				}
+			}
+		}
+		return rules;
+	}
+
+	private synchronized Position build(int position) {
+		Position built = positions.get(position);
+		if (built!=null) return built; // built by another thread
+		Map<String, List<Rule>> index = new HashMap<String, List<Rule>>();
+		List<Rule> wildcards = new ArrayList<Rule>();
+		String[] keys = new String[rules.size()];
+		for (int i=0; i<rules.size(); i++) {
+			ElementList args = indexedArgs(rules.get(i).getConsequent());
+			keys[i] = (args==null || args.size()<=position) ? null : key(args.get(position));
+			if (keys[i]!=null && !index.containsKey(keys[i])) {
+				index.put(keys[i], new ArrayList<Rule>());
+			}
+		}
+		for (int i=0; i<rules.size(); i++) {
+			if (keys[i]==null) {
+				wildcards.add(rules.get(i));
+				Iterator<List<Rule>> itrLists = index.values().iterator();
+				while (itrLists.hasNext()) {
+					itrLists.next().add(rules.get(i));
+				}
+			} else {
+				index.get(keys[i]).add(rules.get(i));
+			}
+		}
+		built = new Position(index, wildcards);
+		Map<Integer, Position> newPositions = new HashMap<Integer, Position>(positions);
+		newPositions.put(position, built);
+		positions = newPositions;
+		return built;
+	}
+
+	/**
+	 * The index of one argument position.
+	 */
+	private static class Position {
+		// functor -> candidate rules
+		final Map<String, List<Rule>> index;
+		// rules with a variable (or anything else that can't be indexed) at that position
+		final List<Rule> unindexed;
+
+		Position(Map<String, List<Rule>> index, List<Rule> unindexed) {
+			this.index = index;
+			this.unindexed = unindexed;
+		}
+	}
+
+	/**
+	 * The arguments of a literal, looking through negation.
+	 */
+	private static ElementList indexedArgs(Constant literal) {
+		if (literal instanceof Term) {
+			Term term = (Term) literal;
+			if (term.getFunctor().equals("~")) {
+				return (term.numberOfArgs()==1 && term.getArg(0) instanceof Term) ? ((Term) term.getArg(0)).getArgList() : null;
+			} else {
+				return term.getArgList();
+			}
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * The index key of an argument: the functor of constants and terms, (NB a Constant and a Term with the
+	 * same functor share a key, because a Constant will unify with a Term that has the same functor), or
+	 * null for variables and anything else that can't be indexed.
+	 */
+	private static String key(Element arg) {
+		return (arg instanceof Constant) ? ((Constant) arg).getFunctor() : null;
+	}
+}
@@ -0,0 +1,103 @@
+package org.aspic.inference;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>The evaluation of one of a Query's seed arguments, as a fork/join task.  Used by a Query
+ * when the PARALLEL engine property is on, (and the knowledge base is frozen), to evaluate the
+ * seeds of the query at the same time rather than one after another.</p>
+ *
+ * <p>Each evaluation has a reasoner and a QueryContext of it's own, (forked from the Query's
+ * context), so it develops arguments and a proof independently of the other seeds.  When all
+ * the seeds have been evaluated the forks are joined back into the Query's context in seed
+ * order, which numbers the arguments they developed the same way every time.</p>
+ *
+ * <p>The forks share the Query's budget, (see QueryBudget), so when it runs out the seeds that
+ * are still being evaluated are left undecided, but the seeds that have been decided are kept.</p>
+ */
+class SeedEvaluation extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+
+	private RuleArgument seed;
+	private Reasoner semantics;
+	private ReasonerTraceListener listener;
+	private QueryContext context;
+	private List<RuleArgument> proof = new ProofSet();
+	private ReasonerPair result;
+
+	/**
+	 * Typical constructor.
+	 * @param seed the seed argument to be evaluated.
+	 * @param semantics the semantics of the Query's reasoner.
+	 * @param listener trace listener, or null.
+	 * @param context the context to evaluate the seed in.
+	 */
+	SeedEvaluation(RuleArgument seed, Reasoner semantics, ReasonerTraceListener listener, QueryContext context) {
+		this.seed = seed;
+		this.semantics = semantics;
+		this.listener = listener;
+		this.context = context;
+	}
+
+	/**
+	 * Evaluate a list of seeds in parallel, within the current QueryContext.
+	 * @param seeds the seeds (a seed that appears more than once is evaluated once).
+	 * @param semantics the semantics of the Query's reasoner.
+	 * @param listener trace listener, or null.
+	 * @return the evaluation of each seed.
+	 */
+	static Map<RuleArgument, SeedEvaluation> evaluateAll(List<RuleArgument> seeds, Reasoner semantics, ReasonerTraceListener listener) {
+		QueryContext parent = QueryContext.current();
+		Map<RuleArgument, SeedEvaluation> evaluations = new IdentityHashMap<RuleArgument, SeedEvaluation>();
+		List<SeedEvaluation> tasks = new ArrayList<SeedEvaluation>();
+		for (RuleArgument seed : seeds) {
+			if (!evaluations.containsKey(seed)) {
+				SeedEvaluation task = new SeedEvaluation(seed, semantics, listener, parent.fork());
+				evaluations.put(seed, task);
+				tasks.add(task);
+			}
+		}
+		ForkJoinTask.invokeAll(tasks);
+		for (SeedEvaluation task : tasks) {
+			parent.join(task.context);
+		}
+		return evaluations;
+	}
+
+	protected void compute() {
+		AbstractReasoner reasoner = semantics.createReasoner();
+		reasoner.setTraceListener(listener);
+		if (listener!=null) listener.reasoningStarted(semantics);
+		QueryContext previous = context.enter();
+		reasoner.beginQuery();
+		try {
+			result = reasoner.evaluate(new ReasonerPair(new RuleArgumentList().cloneAndExtend(seed), new RuleArgumentList()), proof);
+		} catch (BudgetExceededException e) {
+			result = null; // the query ran out of budget, (see getResult)
+		} finally {
+			reasoner.endQuery();
+			QueryContext.exit(previous);
+		}
+	}
+
+	/**
+	 * The reasoner's result for the seed.
+	 * @return evaluated pair, or null if the Query ran out of budget before the seed was decided.
+	 */
+	ReasonerPair getResult() {
+		return result;
+	}
+
+	/**
+	 * The arguments added to the proof while the seed was evaluated.
+	 * @return proof.
+	 */
+	List<RuleArgument> getProof() {
+		return proof;
+	}
+}
@@ -0,0 +1,21 @@
+package org.aspic.inference;
+
+
+/**
+ * <p>A Reasoner that implements (skeptical) Stable Semantics: an argument is accepted 
+ * if there is a stable extension and the argument is in every stable extension.</p>
+ * <p>The arguments that are IN (or OUT) of the grounded labelling are in (or out of) every 
+ * stable extension, so only arguments that are UNDEC in the grounded labelling are passed 
+ * to a LabellingSolver, which looks for a stable extension of the UNDEC arguments that 
+ * they depend on that leaves them out.  NB Stable extensions are therefore sought in the part 
+ * of the framework that's relevant to the query, so an unrelated odd cycle of attacks elsewhere 
+ * in the knowledge base doesn't stop a query from being answered.</p>
+ */
+class StableReasoner extends GroundedLabellingReasoner {
+
+	long[] acceptUndecided(int test) {
+		LabellingSolver solver = undecidedRegion(test);
+		long[] extension = solver.skepticalStable();
+		return (extension==null) ? null : solver.toGraph(extension, getGraph().size());
+	}
+}
@@ -14,27 +14,39 @@ import org.aspic.inference.writers.ReasonerWriter;
  * <p>If you attempt to add a different element for an existing
  * variable then that variable is removed from the substitution 
  * map and the isConsistant flag returns false.</p>
+ * 
+ * <p>The bindings are held in persistent tries (see BindingTrie), so
+ * cloning a substitution is O(1), adding a binding is O(log n) and 
+ * composing substitutions only re-applies the bindings whose elements 
+ * aren't grounded yet, rather than copying the whole map.</p>
  *
  * @author mjs (matthew.south @ cancer.org.uk)
  */
 public class Substitution implements Cloneable, Serializable {
 
 	private static final long serialVersionUID = 1L;
-	// Note that if the internal implementation of substitutionMap or bannedVariablesList changes then the .clone() method will need to be changed appropriately
-	// a Map that links variables to their substituted Elements
-	private Map<Variable, Element> substitutionMap = new HashMap<Variable, Element>();
-	// a List of variables that cannot be used in this substitution, because a contradiction was found deeper in the argument tree.
-	private List<Variable> bannedVariablesList = new ArrayList<Variable>();
+	// The bindings are persistent tries, so a clone shares them with the original and each .add() copies only the path to one binding.
+	// the variables and their substituted Elements
+	private BindingTrie substitutionMap = BindingTrie.EMPTY;
+	private int size = 0;
+	// the bindings (also in substitutionMap) whose Elements could be changed by applying another substitution
+	private BindingTrie openMap = BindingTrie.EMPTY;
+	private int openSize = 0;
+	// variables that cannot be used in this substitution, because a contradiction was found deeper in the argument tree (each is bound to itself).
+	private BindingTrie bannedVariables = BindingTrie.EMPTY;
 	
 	/**
 	 * Default constructor.
 	 */
 	public Substitution() {} // explicitly defined because of the presence of the private constructor
 
-	// used in .clone()
-	private Substitution(Map<Variable, Element> substitutionList, List<Variable> bannedVariablesList) {
-		this.substitutionMap = substitutionList;
-		this.bannedVariablesList = bannedVariablesList;
+	// used in .clone() and .compose()
+	private Substitution(Substitution original, BindingTrie bannedVariables) {
+		this.substitutionMap = original.substitutionMap;
+		this.size = original.size;
+		this.openMap = original.openMap;
+		this.openSize = original.openSize;
+		this.bannedVariables = bannedVariables;
 	}
 
 	/**
@@ -46,13 +58,36 @@ public class Substitution implements Cloneable, Serializable {
 	 * @return new, potentially deeper substitution.
 	 */		
 	public Substitution compose(Substitution second) {
-		Substitution newsubs = new Substitution();
-		Iterator<Variable> e = this.variables().iterator();
-		while (e.hasNext()) {
-			Variable key = e.next();
-			newsubs.add(key, ((Element) this.get(key)).apply(second));
+		Substitution newsubs;
+		if (this.size < this.openSize + second.size) {
+			// start from the second substitution and add this one's (applied) bindings
+			newsubs = new Substitution(second, second.bannedVariables);
+			BindingTrie.Entries e = this.substitutionMap.entries();
+			while (e.hasNext()) {
+				Variable key = e.next();
+				Element value = e.value();
+				if (this.openMap.containsKey(key)) value = value.apply(second);
+				if (second.bannedVariables.containsKey(key)) {
+					newsubs.bind(key, value);
+				} else {
+					Element secondValue = second.substitutionMap.get(key);
+					if (secondValue==null || secondValue.equals(value)) {
+						newsubs.bind(key, value);
+					} else {
+						newsubs.ban(key);
+					}
+				}
+			}
+		} else {
+			// start from this substitution, apply the second to the bindings that it could change, then add the second
+			newsubs = new Substitution(this, BindingTrie.EMPTY);
+			BindingTrie.Entries e = this.openMap.entries();
+			while (e.hasNext()) {
+				Variable key = e.next();
+				newsubs.bind(key, e.value().apply(second));
+			}
+			newsubs.add(second);
 		}
-		newsubs.add(second);
 		return newsubs;	
 	}
 
@@ -65,14 +100,14 @@ public class Substitution implements Cloneable, Serializable {
 	 * @param value the Element that is to be substituted for the variable
 	 */
 	public void add(Variable key, Element value) {
-		if (!bannedVariablesList.contains(key)) {
-			if (substitutionMap.containsKey(key)) {
-				if (!value.equals(substitutionMap.get(key))) {
-					substitutionMap.remove(key);
-					bannedVariablesList.add(key);
+		if (!bannedVariables.containsKey(key)) {
+			Element existing = substitutionMap.get(key);
+			if (existing!=null) {
+				if (!value.equals(existing)) {
+					ban(key);
 				}
 			} else {
-				substitutionMap.put(key, value);
+				bind(key, value);
 			}
 		}
 	}
@@ -86,14 +121,63 @@ public class Substitution implements Cloneable, Serializable {
 	 */
 	public void add(Substitution substitution) {
 		// add any new banned variables to the banned list
-		bannedVariablesList.addAll(substitution.bannedVariablesList);
+		if (bannedVariables.isEmpty()) {
+			bannedVariables = substitution.bannedVariables;
+		} else {
+			BindingTrie.Entries bannedIterator = substitution.bannedVariables.entries();
+			while (bannedIterator.hasNext()) {
+				Variable banned = bannedIterator.next();
+				bannedVariables = bannedVariables.put(banned, banned);
+			}
+		}
 		// add substitutions from the passed substitution
-		Iterator<Variable> variableIterator = substitution.variables().iterator();
+		BindingTrie.Entries variableIterator = substitution.substitutionMap.entries();
 		while(variableIterator.hasNext()) {
 			Variable variableUniqueName = variableIterator.next();
-			this.add(variableUniqueName, substitution.get(variableUniqueName));
+			this.add(variableUniqueName, variableIterator.value());
+		}
+	}
+
+	// bind (or rebind) a variable, keeping track of whether the binding is open
+	private void bind(Variable key, Element value) {
+		BindingTrie newMap = substitutionMap.put(key, value);
+		if (newMap==substitutionMap) return;
+		if (substitutionMap.containsKey(key)) {
+			if (openMap.containsKey(key)) {
+				openMap = openMap.remove(key);
+				openSize--;
+			}
+		} else {
+			size++;
+		}
+		substitutionMap = newMap;
+		if (isOpen(value)) {
+			openMap = openMap.put(key, value);
+			openSize++;
 		}
 	}
+
+	// remove a contradicted variable and ban it
+	private void ban(Variable key) {
+		if (substitutionMap.containsKey(key)) {
+			substitutionMap = substitutionMap.remove(key);
+			size--;
+			if (openMap.containsKey(key)) {
+				openMap = openMap.remove(key);
+				openSize--;
+			}
+		}
+		bannedVariables = bannedVariables.put(key, key);
+	}
+
+	/*
+	 * True unless applying a substitution to the element is certain to return the element itself,
+	 * (i.e. it's a grounded Term, or a Constant or number that isn't a built-in).
+	 */
+	private static boolean isOpen(Element value) {
+		if (value.getClass()==Term.class) return !value.isGrounded();
+		return !(value.getClass()==Constant.class || value instanceof ConstantNumber);
+	}
 	
 	/**
 	 * Check whether this is a clean substitution or whether
@@ -102,7 +186,7 @@ public class Substitution implements Cloneable, Serializable {
 	 * @return true if there are no banned variables.
 	 */
 	public boolean isConsistant() {
-		return bannedVariablesList.size()==0;
+		return bannedVariables.isEmpty();
 	}
 	
 	/**
@@ -111,11 +195,11 @@ public class Substitution implements Cloneable, Serializable {
 	 * @return string representation of substitution list
 	 */
 	public String inspect() {
-		Iterator<Variable> itr = this.variables().iterator();
+		BindingTrie.Entries itr = substitutionMap.entries();
 		String result = "{";
 		while (itr.hasNext()) {
 			Variable key = itr.next();
-			result += key + "=" + this.get(key).inspect() + (itr.hasNext() ? ", " : ""); 
+			result += key + "=" + itr.value().inspect() + (itr.hasNext() ? ", " : ""); 
 		}
 		return result += "}";
 	}
@@ -134,7 +218,7 @@ public class Substitution implements Cloneable, Serializable {
 	 */
 	public int size() {
 		//TODO?: replace all references to this method with .variables.size()
-		return substitutionMap.size();
+		return size;
 	}
 	
 	/**
@@ -152,7 +236,19 @@ public class Substitution implements Cloneable, Serializable {
 	 * @return a set of valid variables contained within this substitution
 	 */
 	public Set<Variable> variables() {
-		return substitutionMap.keySet();
+		final BindingTrie variables = substitutionMap;
+		final int count = size;
+		return new AbstractSet<Variable>() {
+			public Iterator<Variable> iterator() {
+				return variables.entries();
+			}
+			public int size() {
+				return count;
+			}
+			public boolean contains(Object o) {
+				return (o instanceof Variable) && variables.containsKey((Variable) o);
+			}
+		};
 	}
 	
 	/**
@@ -162,7 +258,12 @@ public class Substitution implements Cloneable, Serializable {
 	 * @return true if the passed value is included in this substitution
 	 */
 	public boolean containsElement(Element value) {
-		return substitutionMap.containsValue(value);
+		BindingTrie.Entries itr = substitutionMap.entries();
+		while (itr.hasNext()) {
+			itr.next();
+			if (value==null ? itr.value()==null : value.equals(itr.value())) return true;
+		}
+		return false;
 	}
 	
 	/**
@@ -175,7 +276,7 @@ public class Substitution implements Cloneable, Serializable {
 	}
 	
 	public Object clone() {
-		return new Substitution((Map<Variable, Element>) ((HashMap<Variable, Element>) this.substitutionMap).clone(), (List<Variable>) ((ArrayList<Variable>) this.bannedVariablesList).clone());
+		return new Substitution(this, this.bannedVariables);
 	}
 
 	/*
@@ -184,8 +285,14 @@ public class Substitution implements Cloneable, Serializable {
 	 * same consistancy.
 	 */
 	public boolean equals(Object substitution) {
-		return (substitution instanceof Substitution) &&
-				this.isConsistant()==((Substitution) substitution).isConsistant() && 
-				this.substitutionMap.equals(((Substitution) substitution).substitutionMap);
+		if (!(substitution instanceof Substitution)) return false;
+		Substitution other = (Substitution) substitution;
+		if (this.isConsistant()!=other.isConsistant() || this.size!=other.size) return false;
+		BindingTrie.Entries itr = substitutionMap.entries();
+		while (itr.hasNext()) {
+			Variable key = itr.next();
+			if (!itr.value().equals(other.substitutionMap.get(key))) return false;
+		}
+		return true;
 	}
 }
@@ -0,0 +1,122 @@
+package org.aspic.inference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>A KnowledgeBase's symbol table.  Functors are interned to int ids (and to a single
+ * String instance per functor), and ground Constants and Terms are hash-consed: when a rule
+ * is added to the knowledge base, each ground Constant or Term in it's consequent or
+ * antecedent is replaced by the table's single shared instance of that Constant or Term.</p>
+ *
+ * <p>Two hash-consed instances from the same table are equal if and only if they are the same
+ * object, so <code>isEqualModuloVariables</code> can decide their equality by reference, and
+ * a hash-consed Term caches it's <code>hashCode</code> and knows it's grounded.  Hash-consed
+ * instances are shared between rules so they must not be modified.</p>
+ *
+ * <p>The table also caches the "neg_" rule tags of negated literals, which would otherwise
+ * be concatenated every time a negated literal was looked up in the knowledge base.</p>
+ */
+class SymbolTable {
+	private Map<String, Integer> ids = new HashMap<String, Integer>();
+	private List<String> symbols = new ArrayList<String>();
+	private Map<Constant, Constant> constants = new HashMap<Constant, Constant>();
+	// looked up while queries are evaluated, possibly by several threads at once (see KnowledgeBase.freeze)
+	private Map<String, String> negationTags = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * Get the id of a functor, adding it to the table if it's new.
+	 * @param functor functor to look up.
+	 * @return the functor's id.
+	 */
+	int getId(String functor) {
+		Integer id = ids.get(functor);
+		if (id==null) {
+			id = symbols.size();
+			ids.put(functor, id);
+			symbols.add(functor);
+		}
+		return id;
+	}
+
+	/**
+	 * Get the (interned) functor with a particular id.
+	 * @param id functor id.
+	 * @return functor.
+	 */
+	String getSymbol(int id) {
+		return symbols.get(id);
+	}
+
+	/**
+	 * Get the rule tag of the negation of a functor, i.e. "neg_" + functor.
+	 * @param functor functor to be negated.
+	 * @return rule tag of the negated functor.
+	 */
+	String getNegationTag(String functor) {
+		String tag = negationTags.get(functor);
+		if (tag==null) {
+			tag = "neg_" + functor;
+			negationTags.put(functor, tag);
+		}
+		return tag;
+	}
+
+	/**
+	 * Replace the ground Constants and Terms in a rule's consequent and antecedent with their
+	 * shared instances.
+	 * @param rule rule to be hash-consed.
+	 */
+	void intern(Rule rule) {
+		Constant consequent = intern(rule.getConsequent());
+		if (consequent!=rule.getConsequent()) rule.setConsequent(consequent);
+		ElementList antecedent = rule.getAntecedent();
+		for (int i=0; i<antecedent.size(); i++) {
+			if (antecedent.get(i) instanceof Constant) {
+				Constant premise = intern((Constant) antecedent.get(i));
+				if (premise!=antecedent.get(i)) antecedent.set(i, premise);
+			}
+		}
+	}
+
+	/**
+	 * Get the shared instance of a ground Constant or Term, making the passed instance
+	 * the shared instance if there isn't one yet.  Anything else, (variables, numbers,
+	 * built-ins and ungrounded terms), is returned unchanged.
+	 * @param constant Constant to be hash-consed.
+	 * @return the shared instance.
+	 */
+	Constant intern(Constant constant) {
+		if (constant.getSymbolTable()==this) return constant;
+		if (constant.getClass()!=Constant.class && constant.getClass()!=Term.class) return constant;
+		if (!constant.isGrounded()) return constant;
+		if (constant.getSymbolTable()!=null) {
+			// shared by another knowledge base, so use a copy.
+			try {
+				constant = (Constant) constant.clone();
+			} catch (CloneNotSupportedException e) {
+				return constant;
+			}
+		}
+		if (constant instanceof Term) {
+			ElementList args = ((Term) constant).getArgList();
+			for (int i=0; i<args.size(); i++) {
+				if (args.get(i) instanceof Constant) {
+					Constant arg = intern((Constant) args.get(i));
+					if (arg!=args.get(i)) args.set(i, arg);
+				}
+			}
+		}
+		constant.setFunctor(getSymbol(getId(constant.getFunctor())));
+		Constant shared = constants.get(constant);
+		if (shared==null) {
+			constant.setSymbolTable(this);
+			constants.put(constant, constant);
+			shared = constant;
+		}
+		return shared;
+	}
+}
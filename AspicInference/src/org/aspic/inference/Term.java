@@ -21,6 +21,10 @@ import org.aspic.inference.writers.KnowledgeWriter;
 public class Term extends Constant {
 	
 	private ElementList argList = new ElementList();
+	// cached hashCode, only used once the term is hash-consed (and immutable).
+	private transient int hash = 0;
+	// cached fingerprint, also only used once the term is hash-consed.
+	private transient long fingerprint = 0;
 
 	/**
 	 * Default Constructor.
@@ -31,6 +35,7 @@ public class Term extends Constant {
 
     public void setArgList(ElementList argList) {
         this.argList = argList;
+        setSymbolTable(null);
     }  
         
 	
@@ -78,6 +83,7 @@ public class Term extends Constant {
 	public Term addArg(int index, Element element) {
 		argList.add(index, element); 
 		consolidateVariables();
+		setSymbolTable(null);
 		return this; 
 	}
 	
@@ -103,6 +109,7 @@ public class Term extends Constant {
 	public Term setArg(int index, Element element) {
 		argList.set(index, element);
 		consolidateVariables();
+		setSymbolTable(null);
 		return this;
 	}
 	
@@ -165,17 +172,35 @@ public class Term extends Constant {
 	}
 
 	public boolean isEqualModuloVariables(Element testClause) {
+		if (testClause==this) return true;
+		// two shared instances from the same symbol table are only equal if they're the same instance
+		if (this.getSymbolTable()!=null && ((testClause instanceof Term) && ((Term) testClause).getSymbolTable()==this.getSymbolTable())) return false;
 		return (testClause instanceof Term) &&
 			(((Term)testClause).getFunctor().equals(this.getFunctor()))
 			&& (((Term)testClause).getArgList().isEqualModuloVariables(this.argList));
 	}
 	
+	long fingerprint() {
+		if (this.getSymbolTable()!=null && fingerprint!=0) return fingerprint;
+		// NB a term is never equal to a constant, but it doesn't matter if their fingerprints collide.
+		long result = fingerprint(fingerprint(this.getFunctor()), argList.fingerprint());
+		if (this.getSymbolTable()!=null) fingerprint = result;
+		return result;
+	}
+	
 	public boolean isGrounded() {
+		if (this.getSymbolTable()!=null) return true; // only ground terms are hash-consed
 		return argList.isGrounded();
 	}
 	
 	public String ruleTag() {
-		return this.getFunctor().equals("~") ? "neg_" + ((Constant) argList.get(0)).getFunctor() : this.getFunctor() ;
+		if (this.getFunctor().equals("~")) {
+			// use the knowledge base's cached tag rather than concatenating a new one for every lookup
+			String functor = ((Constant) argList.get(0)).getFunctor();
+			return (this.getKnowledgeBase()==null) ? "neg_" + functor : this.getKnowledgeBase().getSymbolTable().getNegationTag(functor);
+		} else {
+			return this.getFunctor();
+		}
 	}
 
 	public void write(KnowledgeWriter writer) {
@@ -220,9 +245,11 @@ public class Term extends Constant {
 	}
 	
 	public int hashCode() {
+		if (this.getSymbolTable()!=null && hash!=0) return hash;
 		int result = 17;
 		result = 37*result + this.getFunctor().hashCode();
 		result = 37*result + this.getArgList().hashCode();
+		if (this.getSymbolTable()!=null) hash = result;
 		return result;
 	}
 	
@@ -230,6 +257,7 @@ public class Term extends Constant {
 		Object result = super.clone();
         //Henrik: 02/11/06 - changed access methods to use getArgList and setArgList
 		((Term) result).setArgList((ElementList) ((Term) result).getArgList().clone());
+		((Term) result).hash = 0;
 		return result;
 	}
 
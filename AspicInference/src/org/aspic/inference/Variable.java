@@ -2,7 +2,9 @@ package org.aspic.inference;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.aspic.inference.writers.KnowledgeWriter;
 
@@ -43,8 +45,11 @@ import org.aspic.inference.writers.KnowledgeWriter;
 public class Variable extends Element {
 	
 	// private static int counter = 0;
-	// used to assign internal names. The key is the public name and the value is the next counter.
-	private static HashMap<String, Integer> names = new HashMap<String, Integer>();
+	// used to assign internal names. The key is the public name and the value is the next counter,
+	// (one counter per name, so that variables can be parsed on several threads at once without a lock).
+	private static ConcurrentMap<String, AtomicInteger> names = new ConcurrentHashMap<String, AtomicInteger>();
+	
+	private static final long VARIABLE_FINGERPRINT = fingerprint("_");
 	
 	private String name;
 	private String internalName=null;
@@ -57,6 +62,16 @@ public class Variable extends Element {
 		this.name = name;
 		this.internalName = generateUniqueName();
 	}
+
+	/**
+	 * Constructor for a variable that's been given an internal name already, (see <code>QueryContext.rename</code>).
+	 * @param name public name of variable.
+	 * @param internalName unique internal name.
+	 */
+	Variable(String name, String internalName) {
+		this.name = name;
+		this.internalName = internalName;
+	}
     
 	/**
 	 * Default constructor.
@@ -141,6 +156,13 @@ public class Variable extends Element {
 		return false;
 	}
 
+	/**
+	 * All variables have the same fingerprint, because they're all equal modulo variables.
+	 */
+	long fingerprint() {
+		return VARIABLE_FINGERPRINT;
+	}
+
 	public void write(KnowledgeWriter writer) {
 		writer.write(this);
 	}
@@ -162,15 +184,13 @@ public class Variable extends Element {
 	}
 	
 	private String generateUniqueName() {
-		// slightly awkward because you can't increment an immutable Integer object with ++
-		Integer counter = names.get(name);
+		AtomicInteger counter = names.get(name);
 		if (counter==null) {
-			counter=0;
-			names.put(name, counter);
+			AtomicInteger created = new AtomicInteger();
+			counter = names.putIfAbsent(name, created);
+			if (counter==null) counter = created;
 		}
-		String result = name + "_" + counter;
-		names.put(name, counter+1); // put the next name in.
-		return result;
+		return name + "_" + counter.getAndIncrement();
 	}
 	
 	
@@ -12,16 +12,16 @@ class WeakestLinkValuator implements RuleArgumentValuator, Serializable {
 
 	WeakestLinkValuator() {}
 	
-	public Double valuate(RuleArgument argument) {
+	public double valuate(RuleArgument argument) {
 		return Math.min(argument.getTopRule().getDob(), 
 				(argument.getSubArgumentList()!=null ? argument.getSubArgumentList().valuate(this) : 1.0));
 	}
 
-	public Double valuate(RuleArgumentList argumentList) {
+	public double valuate(RuleArgumentList argumentList) {
 		Iterator<RuleArgument> itr = argumentList.getArguments().iterator();
-		Double min = 1.0;
+		double min = 1.0;
 		while (itr.hasNext()) {
-			Double valuation = itr.next().valuate(this);
+			double valuation = itr.next().valuate(this);
 			if (valuation<min) {
 				min = valuation;
 			}
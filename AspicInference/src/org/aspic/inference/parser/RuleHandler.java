@@ -0,0 +1,17 @@
+package org.aspic.inference.parser;
+
+import org.aspic.inference.Rule;
+
+/**
+ * Receives the rules that a RuleReader parses, one at a time, as soon as each of them has been read,
+ * (see <code>RuleReader.read(RuleHandler)</code>).
+ */
+public interface RuleHandler {
+
+	/**
+	 * Handle the next rule that's been read.
+	 * @param rule the rule, (a fact or a rule, as parsed by <code>PrologSyntax.Expression</code>).
+	 * @throws ParseException to stop reading, e.g. if the rule isn't acceptable.
+	 */
+	void handleRule(Rule rule) throws ParseException;
+}
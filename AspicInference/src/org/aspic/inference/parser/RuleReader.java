@@ -0,0 +1,102 @@
+package org.aspic.inference.parser;
+
+import java.io.InputStream;
+import java.io.Reader;
+
+import org.aspic.inference.KnowledgeBase;
+import org.aspic.inference.Rule;
+
+/**
+ * <p>Reads Prolog syntax knowledge from a character or byte stream one rule at a time, rather than all of it
+ * at once, as <code>PrologSyntax.Knowledge</code> does.  Each rule is parsed as it's asked for, (see next),
+ * and is handed to a RuleHandler, or added to a knowledge base, before the one after it's read, so the text
+ * doesn't have to be held in memory, (e.g. as a String), and only the tokens of the rule that's being parsed
+ * are.  This is how machine generated knowledge with hundreds of thousands of rules is best loaded.</p>
+ *
+ * <p>The rules are parsed by a PrologSyntax parser, so they have the same syntax, and lexical errors are
+ * thrown as ParseExceptions, (like they are by the Engine).</p>
+ */
+public class RuleReader {
+	private PrologSyntax parser;
+	private int count = 0; // the number of rules read so far
+
+	/**
+	 * Typical constructor.
+	 * @param reader the knowledge's characters, (which the parser buffers itself).
+	 */
+	public RuleReader(Reader reader) {
+		parser = new PrologSyntax(reader);
+	}
+
+	/**
+	 * Constructor for a byte stream.
+	 * @param stream the knowledge's bytes.
+	 * @param encoding the name of the stream's character encoding, or null for the platform's default.
+	 */
+	public RuleReader(InputStream stream, String encoding) {
+		parser = new PrologSyntax(stream, encoding);
+	}
+
+	/**
+	 * Read the next rule.
+	 * @return the rule, or null at the end of the stream.
+	 * @throws ParseException if the rule cannot be parsed.
+	 */
+	public Rule next() throws ParseException {
+		try {
+			if (parser.getToken(1).kind==PrologSyntaxConstants.EOF) return null;
+			Rule rule = parser.Expression();
+			count++;
+			return rule;
+		} catch (TokenMgrError e) {
+			throw new ParseException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Read the rest of the rules, handing each one to a handler as soon as it's been read.
+	 * @param handler the rules' handler.
+	 * @return the number of rules read.
+	 * @throws ParseException if a rule cannot be parsed, or the handler stopped reading.
+	 */
+	public int read(RuleHandler handler) throws ParseException {
+		int read = 0;
+		Rule rule;
+		while ((rule = next())!=null) {
+			handler.handleRule(rule);
+			read++;
+		}
+		return read;
+	}
+
+	/**
+	 * Read the rest of the rules into a knowledge base, adding each one as soon as it's been read.
+	 * @param kb the knowledge base to add the rules to.
+	 * @return the knowledge base.
+	 * @throws ParseException if a rule cannot be parsed.
+	 */
+	public KnowledgeBase read(KnowledgeBase kb) throws ParseException {
+		Rule rule;
+		while ((rule = next())!=null) {
+			kb.addRule(rule);
+		}
+		return kb;
+	}
+
+	/**
+	 * Read the rest of the rules into a new knowledge base, (the streaming equivalent of <code>PrologSyntax.Knowledge</code>).
+	 * @return new knowledge base.
+	 * @throws ParseException if a rule cannot be parsed.
+	 */
+	public KnowledgeBase readKnowledgeBase() throws ParseException {
+		return read(new KnowledgeBase());
+	}
+
+	/**
+	 * Getter for the number of rules read so far.
+	 * @return number of rules.
+	 */
+	public int getCount() {
+		return count;
+	}
+}
@@ -0,0 +1,234 @@
+package nl.uu.cs.arg.exp.engine;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import nl.uu.cs.arg.platform.local.AgentXmlData;
+import nl.uu.cs.arg.shared.dialogue.Goal;
+
+import org.aspic.inference.Constant;
+import org.aspic.inference.Engine;
+import org.aspic.inference.Engine.OnOff;
+import org.aspic.inference.KnowledgeBase;
+import org.aspic.inference.Query;
+import org.aspic.inference.QueryBudget;
+import org.aspic.inference.Rule;
+import org.aspic.inference.RuleArgument;
+
+/**
+ * Checks that the engine's alternative ways of developing arguments don't change what an agent concludes.
+ * The belief base of every agent of the test cases is queried for the agent's goals and options, and their
+ * negations, (as the agents ask about them during a dialogue), once with each of its options adopted, with
+ * every combination of the MATERIALIZATION, SLICING, TABLING, JOIN_ORDERING and PARALLEL engine properties.
+ * The results and proofs are compared with those of the engine's default settings. PARALLEL only evaluates
+ * in parallel once the knowledge base is frozen, so the engine is frozen whenever PARALLEL is on. A recursive belief base (such as those of the
+ * EngineProperties cases) loops when it is neither tabled nor materialized; such a query runs out of its depth
+ * budget, which is reported, but not counted as a failure.
+ */
+public class EnginePropertyTester {
+
+	private static final Engine.Property[] PROPERTIES = new Engine.Property[] { Engine.Property.MATERIALIZATION,
+			Engine.Property.SLICING, Engine.Property.TABLING, Engine.Property.JOIN_ORDERING, Engine.Property.PARALLEL };
+	private static final String LOOPS = "loops";
+	// The level of recursion at which a query is taken to loop
+	private static final int MAX_DEPTH = 100;
+
+	private final File casesDirectory;
+	private final boolean printResultsToConsole;
+	private int queries = 0;
+	private int failures = 0;
+
+	public EnginePropertyTester(File casesDirectory, boolean printResultsToConsole) {
+		this.casesDirectory = casesDirectory;
+		this.printResultsToConsole = printResultsToConsole;
+	}
+
+	/**
+	 * Main entry point to test the engine properties on the agents of the test cases
+	 *
+	 * @param args Command line arguments; optionally the directory with the test cases (BaiddTest/cases by default)
+	 */
+	public static void main(String[] args) {
+		EnginePropertyTester tester = new EnginePropertyTester(new File(args.length > 0 ? args[0] : "BaiddTest/cases"), true);
+		tester.testAllAgents();
+		if (tester.getFailures() > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Tests every agent (.agent file) found in the cases directory or any of its sub-directories
+	 */
+	public void testAllAgents() {
+		List<File> agentFiles = new ArrayList<File>();
+		findAgentFiles(casesDirectory, agentFiles);
+		for (File agentFile : agentFiles) {
+			testAgent(agentFile);
+		}
+		System.out.println(queries + " queries compared over " + agentFiles.size() + " agents; " + failures + " failed");
+	}
+
+	/**
+	 * Tests an agent's belief base with each combination of the engine properties
+	 * @param agentFile The agent's XML file
+	 */
+	public void testAgent(File agentFile) {
+
+		AgentXmlData data = load(agentFile);
+		if (data == null) {
+			return;
+		}
+		List<Constant> literals = getLiterals(data);
+
+		// Adopt each option in turn (or none, if the agent has no options)
+		int options = Math.max(1, data.getOptions().size());
+		for (int option = 0; option < options; option++) {
+			String context = agentFile.getParentFile().getName() + "/" + agentFile.getName() + (data.getOptions().isEmpty() ? "" : " [" + data.getOptions().get(option).getConsequent() + "]");
+			List<String> expected = evaluate(agentFile, option, null);
+			for (int setting = 0; setting < (1 << PROPERTIES.length); setting++) {
+				OnOff[] values = new OnOff[PROPERTIES.length];
+				for (int p = 0; p < PROPERTIES.length; p++) {
+					values[p] = (setting & (1 << p)) == 0 ? OnOff.OFF : OnOff.ON;
+				}
+				compare(context + " " + describe(values), literals, expected, evaluate(agentFile, option, values), values);
+			}
+		}
+
+	}
+
+	/**
+	 * Gives the literals an agent asks about: its goals and options and their negations
+	 * @param data The agent's data
+	 * @return The literals, in the order of the agent file
+	 */
+	private List<Constant> getLiterals(AgentXmlData data) {
+		List<Constant> literals = new ArrayList<Constant>();
+		List<Goal> goals = new ArrayList<Goal>(data.getHiddenGoals());
+		goals.addAll(data.getPublicGoals());
+		for (Goal goal : goals) {
+			literals.add(goal.getGoalContent());
+			literals.add(goal.getGoalContent().negation());
+		}
+		for (Rule option : data.getOptions()) {
+			literals.add(option.getConsequent());
+			literals.add(option.getConsequent().negation());
+		}
+		return literals;
+	}
+
+	/**
+	 * Queries an agent's belief base for the literals it asks about. The agent file is read again for every
+	 * evaluation, as a literal stays bound to the knowledge base it was first queried on.
+	 * @param agentFile The agent's XML file
+	 * @param option The index of the option to adopt into the belief base (ignored if the agent has no options)
+	 * @param values The values of the PROPERTIES, or null to use the engine's defaults
+	 * @return For each literal, its results and the claims of the arguments in its proof, or LOOPS if it ran out of budget
+	 */
+	private List<String> evaluate(File agentFile, int option, OnOff[] values) {
+		List<String> outcomes = new ArrayList<String>();
+		AgentXmlData data = load(agentFile);
+		if (data == null) {
+			return outcomes;
+		}
+		KnowledgeBase kb = data.getBeliefBase();
+		if (!data.getOptions().isEmpty()) {
+			kb.addRule(data.getOptions().get(option));
+		}
+		Engine engine = new Engine(kb);
+		engine.setQueryBudget(new QueryBudget(0, MAX_DEPTH, 0, 0));
+		if (values != null) {
+			for (int p = 0; p < PROPERTIES.length; p++) {
+				engine.setProperty(PROPERTIES[p], values[p]);
+			}
+			if (getValue(values, Engine.Property.PARALLEL) == OnOff.ON) {
+				engine.freeze();
+			}
+		}
+		for (Constant literal : getLiterals(data)) {
+			try {
+				Query query = engine.createQuery(literal);
+				outcomes.add(query.isExhausted() ? LOOPS : describe(query));
+			} catch (Exception e) {
+				outcomes.add(e.toString());
+			}
+		}
+		return outcomes;
+	}
+
+	private AgentXmlData load(File agentFile) {
+		try {
+			return AgentXmlData.loadAgentDataFromXml(agentFile.getName(), agentFile);
+		} catch (Exception e) {
+			writeFailure(agentFile + ": cannot be loaded (" + e.getMessage() + ")");
+			return null;
+		}
+	}
+
+	private void compare(String context, List<Constant> literals, List<String> expected, List<String> found, OnOff[] values) {
+		boolean bottomUpOrTabled = getValue(values, Engine.Property.MATERIALIZATION) == OnOff.ON || getValue(values, Engine.Property.TABLING) == OnOff.ON;
+		for (int i = 0; i < literals.size(); i++) {
+			queries++;
+			String outcome = i < found.size() ? found.get(i) : "not evaluated";
+			if (outcome.equals(expected.get(i)) && !outcome.equals(LOOPS)) {
+				continue;
+			}
+			if (outcome.equals(LOOPS) && !bottomUpOrTabled) {
+				// Expected for a recursive belief base
+				if (printResultsToConsole) {
+					System.out.println(context + " ?" + literals.get(i).inspect() + " loops without tabling");
+				}
+				continue;
+			}
+			writeFailure(context + " ?" + literals.get(i).inspect() + "\n\texpected: " + expected.get(i) + "\n\tfound:    " + outcome);
+		}
+	}
+
+	private String describe(Query query) {
+		Set<String> claims = new TreeSet<String>();
+		for (RuleArgument argument : query.getProof()) {
+			claims.add(argument.toSimpleString() + " " + argument.getModifier());
+		}
+		return query.getResults() + " " + claims;
+	}
+
+	private static OnOff getValue(OnOff[] values, Engine.Property property) {
+		return values[Arrays.asList(PROPERTIES).indexOf(property)];
+	}
+
+	private String describe(OnOff[] values) {
+		String description = "";
+		for (int p = 0; p < PROPERTIES.length; p++) {
+			description += (p > 0 ? " " : "") + PROPERTIES[p] + "=" + values[p];
+		}
+		return description;
+	}
+
+	private void writeFailure(String failure) {
+		failures++;
+		System.err.println(failure);
+	}
+
+	private static void findAgentFiles(File directory, List<File> agentFiles) {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files);
+		for (File file : files) {
+			if (file.isDirectory()) {
+				findAgentFiles(file, agentFiles);
+			} else if (file.getName().endsWith(".agent")) {
+				agentFiles.add(file);
+			}
+		}
+	}
+
+	public int getFailures() {
+		return failures;
+	}
+
+}
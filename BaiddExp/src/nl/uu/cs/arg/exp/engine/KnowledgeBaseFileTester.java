@@ -0,0 +1,286 @@
+package nl.uu.cs.arg.exp.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import nl.uu.cs.arg.platform.local.AgentXmlData;
+import nl.uu.cs.arg.platform.local.XmlElementReader;
+
+import org.aspic.inference.KnowledgeBase;
+import org.aspic.inference.KnowledgeBaseFile;
+import org.aspic.inference.Rule;
+import org.aspic.inference.parser.PrologSyntax;
+import org.aspic.inference.parser.RuleReader;
+
+/**
+ * Checks the two faster ways of reading a belief base against the ones they replace. The belief base of every
+ * agent of the test cases, and a knowledge base with rule names, captions and built-ins, is read by the streaming
+ * RuleReader and by the PrologSyntax parser, which should give the same knowledge base, with the same rule names
+ * and captions. It is then written to a compiled knowledge base file (see KnowledgeBaseFile) and read back, which
+ * should give it again. A file with the wrong magic number or version has to be rejected, and an agent whose
+ * compiled file is truncated has to be loaded from its XML file instead.
+ */
+public class KnowledgeBaseFileTester {
+
+	private static final String XML_BELIEFBASE = "beliefbase";
+	private static final String KNOWLEDGE = "[r1] p(X) <- q(X), >(X, 2) 0.8. $p of X$ $p$\n"
+			+ "[r2] s(Y) <- q(Y), is(Z, +(Y, 1)), =<(Z, 5), \\+(p(Y)). $s of Y$\n" + "q(3).\nq(4) 0.6.\n"
+			+ "~p(4) <- q(4) 0.3.\n" + "[f1] t. $t$ $a claim$\n";
+
+	private final File casesDirectory;
+	private final boolean printResultsToConsole;
+	private int checks = 0;
+	private int failures = 0;
+
+	public KnowledgeBaseFileTester(File casesDirectory, boolean printResultsToConsole) {
+		this.casesDirectory = casesDirectory;
+		this.printResultsToConsole = printResultsToConsole;
+	}
+
+	/**
+	 * Main entry point to check the reading and writing of the belief bases of the test cases
+	 *
+	 * @param args Command line arguments; optionally the directory with the test cases (BaiddTest/cases by default)
+	 */
+	public static void main(String[] args) {
+		KnowledgeBaseFileTester tester = new KnowledgeBaseFileTester(new File(args.length > 0 ? args[0] : "BaiddTest/cases"), true);
+		tester.testAll();
+		if (tester.getFailures() > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Checks the knowledge base with rule names, captions and built-ins, the rejection of files that can't be read,
+	 * and every agent (.agent file) found in the cases directory or any of its sub-directories
+	 */
+	public void testAll() {
+		testKnowledge("rule names, captions and built-ins", KNOWLEDGE);
+		testRejection();
+		List<File> agentFiles = new ArrayList<File>();
+		findAgentFiles(casesDirectory, agentFiles);
+		for (File agentFile : agentFiles) {
+			testAgent(agentFile);
+		}
+		System.out.println(checks + " checks over " + agentFiles.size() + " agents; " + failures + " failed");
+	}
+
+	/**
+	 * Checks the reading and writing of an agent's belief base, and the loading of the agent when its compiled
+	 * file is truncated
+	 * @param agentFile The agent's XML file
+	 */
+	public void testAgent(File agentFile) {
+		KnowledgeBase kb;
+		try {
+			kb = testKnowledge(agentFile.toString(), readBeliefBase(agentFile));
+		} catch (IOException e) {
+			writeFailure(agentFile + ": cannot be read (" + e.getMessage() + ")");
+			return;
+		}
+		if (kb != null) {
+			testTruncated(agentFile, kb);
+		}
+	}
+
+	/**
+	 * Reads a knowledge base with both parsers, writes it to a compiled file and reads it back
+	 * @param context The description of the knowledge base
+	 * @param knowledge The knowledge base in Prolog syntax
+	 * @return The knowledge base as read by RuleReader, or null if it can't be read
+	 */
+	private KnowledgeBase testKnowledge(String context, String knowledge) {
+		KnowledgeBase streamed;
+		try {
+			streamed = new RuleReader(new StringReader(knowledge)).readKnowledgeBase();
+		} catch (Exception e) {
+			writeFailure(context + ": cannot be read by RuleReader (" + e + ")");
+			return null;
+		}
+		try {
+			compare(context + " RuleReader vs PrologSyntax", streamed, new PrologSyntax(new StringReader(knowledge)).Knowledge());
+		} catch (Exception e) {
+			writeFailure(context + ": cannot be read by PrologSyntax (" + e + ")");
+		}
+		try {
+			compare(context + " " + KnowledgeBaseFile.EXTENSION + " round trip", streamed, KnowledgeBaseFile.read(ByteBuffer.wrap(toBytes(streamed))));
+		} catch (Exception e) {
+			checks++;
+			writeFailure(context + ": " + KnowledgeBaseFile.EXTENSION + " round trip failed (" + e + ")");
+		}
+		return streamed;
+	}
+
+	/**
+	 * Checks that a compiled file with the wrong magic number or version, or that ends too soon, is rejected
+	 */
+	private void testRejection() {
+		byte[] bytes;
+		try {
+			bytes = toBytes(new RuleReader(new StringReader(KNOWLEDGE)).readKnowledgeBase());
+		} catch (Exception e) {
+			writeFailure("rejection: cannot write a knowledge base (" + e + ")");
+			return;
+		}
+		byte[] magic = bytes.clone();
+		magic[0]++;
+		expectRejection("wrong magic number", magic);
+		byte[] version = bytes.clone();
+		ByteBuffer.wrap(version).putInt(4, KnowledgeBaseFile.VERSION + 1);
+		expectRejection("wrong version", version);
+		expectRejection("truncated", Arrays.copyOf(bytes, bytes.length / 2));
+	}
+
+	private void expectRejection(String context, byte[] bytes) {
+		checks++;
+		try {
+			KnowledgeBaseFile.read(ByteBuffer.wrap(bytes));
+			writeFailure("rejection: a " + context + " file is read");
+		} catch (IOException e) {
+			if (printResultsToConsole) {
+				System.out.println("rejection: a " + context + " file is rejected (" + e.getMessage() + ")");
+			}
+		} catch (Exception e) {
+			writeFailure("rejection: a " + context + " file is not rejected with an IOException (" + e + ")");
+		}
+	}
+
+	/**
+	 * Loads a copy of an agent, with a truncated compiled file next to it, which should be ignored
+	 * @param agentFile The agent's XML file
+	 * @param expected The agent's belief base, as read from the XML file
+	 */
+	private void testTruncated(File agentFile, KnowledgeBase expected) {
+		checks++;
+		File copy = null;
+		File compiled = null;
+		try {
+			copy = File.createTempFile("truncated", ".agent");
+			copyFile(agentFile, copy);
+			byte[] bytes = toBytes(expected);
+			compiled = KnowledgeBaseFile.getCompiledFile(copy);
+			OutputStream out = new FileOutputStream(compiled);
+			try {
+				out.write(bytes, 0, bytes.length / 2);
+			} finally {
+				out.close();
+			}
+			compiled.setLastModified(copy.lastModified() + 1000);
+			if (!KnowledgeBaseFile.isCompiled(copy)) {
+				writeFailure(agentFile + ": the truncated compiled file is not taken to be up to date");
+				return;
+			}
+			KnowledgeBase loaded = AgentXmlData.loadAgentDataFromXml(agentFile.getName(), copy).getBeliefBase();
+			if (!describe(expected).equals(describe(loaded))) {
+				writeFailure(agentFile + ": loaded with a truncated compiled file\n\texpected: " + describe(expected) + "\n\tfound:    " + describe(loaded));
+			} else if (printResultsToConsole) {
+				System.out.println(agentFile + ": loaded with a truncated compiled file");
+			}
+		} catch (Exception e) {
+			writeFailure(agentFile + ": cannot be loaded with a truncated compiled file (" + e + ")");
+		} finally {
+			if (compiled != null) {
+				compiled.delete();
+			}
+			if (copy != null) {
+				copy.delete();
+			}
+		}
+	}
+
+	private void compare(String context, KnowledgeBase expected, KnowledgeBase found) {
+		checks++;
+		List<String> expectedRules = describe(expected);
+		List<String> foundRules = describe(found);
+		if (!expected.equals(found) || !expectedRules.equals(foundRules)) {
+			writeFailure(context + "\n\texpected: " + expectedRules + "\n\tfound:    " + foundRules);
+		} else if (printResultsToConsole) {
+			System.out.println(context + ": " + expectedRules.size() + " rules");
+		}
+	}
+
+	/**
+	 * Lists the rules of a knowledge base with their names and captions
+	 */
+	private List<String> describe(KnowledgeBase kb) {
+		List<String> rules = new ArrayList<String>();
+		for (Rule rule : kb.getRules()) {
+			rules.add(rule.inspect(true, false) + " [" + (rule.getName() == null ? "" : rule.getName().inspect()) + "] $"
+					+ rule.getCaption() + "$ $" + rule.getClaimCaption() + "$");
+		}
+		return rules;
+	}
+
+	private static byte[] toBytes(KnowledgeBase kb) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		KnowledgeBaseFile.write(kb, out);
+		return out.toByteArray();
+	}
+
+	private static String readBeliefBase(File agentFile) throws IOException {
+		StringBuilder text = new StringBuilder();
+		Reader reader = new XmlElementReader(agentFile, XML_BELIEFBASE);
+		try {
+			char[] buffer = new char[4096];
+			for (int read = reader.read(buffer); read >= 0; read = reader.read(buffer)) {
+				text.append(buffer, 0, read);
+			}
+		} finally {
+			reader.close();
+		}
+		return text.toString();
+	}
+
+	private static void copyFile(File from, File to) throws IOException {
+		InputStream in = new FileInputStream(from);
+		try {
+			OutputStream out = new FileOutputStream(to);
+			try {
+				byte[] buffer = new byte[4096];
+				for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+					out.write(buffer, 0, read);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private void writeFailure(String failure) {
+		failures++;
+		System.err.println(failure);
+	}
+
+	private static void findAgentFiles(File directory, List<File> agentFiles) {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files);
+		for (File file : files) {
+			if (file.isDirectory()) {
+				findAgentFiles(file, agentFiles);
+			} else if (file.getName().endsWith(".agent")) {
+				agentFiles.add(file);
+			}
+		}
+	}
+
+	public int getFailures() {
+		return failures;
+	}
+
+}
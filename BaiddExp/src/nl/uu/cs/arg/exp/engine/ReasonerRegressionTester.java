@@ -0,0 +1,135 @@
+package nl.uu.cs.arg.exp.engine;
+
+import java.io.StringReader;
+
+import org.aspic.inference.Engine;
+import org.aspic.inference.KnowledgeBase;
+import org.aspic.inference.Query;
+import org.aspic.inference.Reasoner;
+import org.aspic.inference.Result;
+import org.aspic.inference.parser.RuleReader;
+
+/**
+ * Checks the engine's reasoners on knowledge bases that once made them slow or wrong. Each case queries
+ * a knowledge base with some semantics and compares whether the query is accepted with what's expected;
+ * the timing cases also fail if a query takes longer than MAX_MILLIS.
+ */
+public class ReasonerRegressionTester {
+
+	// The time a query of a timing case may take
+	private static final long MAX_MILLIS = 2000;
+	// The numbers of mutual rebuttals of the timing cases
+	private static final int[] REBUTTALS = new int[] { 8, 10, 12, 14, 20 };
+
+	private final boolean printResultsToConsole;
+	private int queries = 0;
+	private int failures = 0;
+
+	public ReasonerRegressionTester(boolean printResultsToConsole) {
+		this.printResultsToConsole = printResultsToConsole;
+	}
+
+	/**
+	 * Main entry point to run all the regression cases
+	 *
+	 * @param args Command line arguments (not used)
+	 */
+	public static void main(String[] args) {
+		ReasonerRegressionTester tester = new ReasonerRegressionTester(true);
+		tester.testAll();
+		if (tester.getFailures() > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Runs all the regression cases
+	 */
+	public void testAll() {
+		testMutualRebuttals();
+		testGroundedLabelling();
+		System.out.println(queries + " queries checked; " + failures + " failed");
+	}
+
+	/**
+	 * Times p against k arguments for ~p that it rebuts and that are rebutted themselves, (each ~p <- qi
+	 * is undermined by ~qi). There are exponentially many preferred and stable extensions, so the skeptical
+	 * semantics have to stop at the first one without p rather than enumerate them.
+	 */
+	public void testMutualRebuttals() {
+		for (int k : REBUTTALS) {
+			StringBuilder kb = new StringBuilder("p 0.5.\n");
+			for (int i = 1; i <= k; i++) {
+				kb.append("~p <- q" + i + " 0.5.\nq" + i + " 0.5.\n~q" + i + " 0.5.\n");
+			}
+			String context = "mutual rebuttals k=" + k;
+			check(context, kb.toString(), "p", Reasoner.PREFERRED_CREDULOUS, true, true);
+			check(context, kb.toString(), "p", Reasoner.PREFERRED_SKEPTICAL, false, true);
+			check(context, kb.toString(), "p", Reasoner.STABLE, false, true);
+		}
+	}
+
+	/**
+	 * Checks that GROUNDED_LABELLING leaves a3 and ~a3, which defeat each other, (both are 0.3 strong), UNDEC, 
+	 * and so ~a2 too. The GROUNDED dialogue game accepts all three of them, (see GroundedLabellingReasoner),
+	 * which is reported, but not checked.
+	 */
+	public void testGroundedLabelling() {
+		String kb = "~a6 0.7.\na5 0.9.\n~a4 <- ~a6.\na6.\n~a3 <- a4, a5 0.5.\na3 <- a4.\n~a2 <- ~a3.\na4 <- a5, a5 0.3.\n";
+		for (String literal : new String[] { "~a2", "a3", "~a3" }) {
+			check("equal rebuttal", kb, literal, Reasoner.GROUNDED_LABELLING, false, false);
+			if (printResultsToConsole) {
+				System.out.println("equal rebuttal " + Reasoner.GROUNDED + " ?" + literal + ": " + evaluate(kb, literal, Reasoner.GROUNDED) + " (not checked)");
+			}
+		}
+	}
+
+	private void check(String context, String knowledge, String literal, Reasoner semantics, boolean expected, boolean timed) {
+		queries++;
+		String description = context + " " + semantics + " ?" + literal;
+		try {
+			Engine engine = createEngine(knowledge, semantics);
+			long start = System.currentTimeMillis();
+			Query query = engine.createQuery(literal);
+			long millis = System.currentTimeMillis() - start;
+			boolean accepted = false;
+			for (Result result : query.getResults()) {
+				accepted |= result.isUndefeated();
+			}
+			if (accepted != expected) {
+				writeFailure(description + ": expected " + (expected ? "yes" : "no") + ", found " + query.getResults());
+			} else if (timed && millis > MAX_MILLIS) {
+				writeFailure(description + ": took " + millis + " ms");
+			} else if (printResultsToConsole) {
+				System.out.println(description + ": " + query.getResults() + " in " + millis + " ms");
+			}
+		} catch (Exception e) {
+			writeFailure(description + ": " + e);
+		}
+	}
+
+	private String evaluate(String knowledge, String literal, Reasoner semantics) {
+		try {
+			return createEngine(knowledge, semantics).createQuery(literal).getResults().toString();
+		} catch (Exception e) {
+			return e.toString();
+		}
+	}
+
+	private Engine createEngine(String knowledge, Reasoner semantics) throws Exception {
+		KnowledgeBase kb = new RuleReader(new StringReader(knowledge)).readKnowledgeBase();
+		Engine engine = new Engine(kb);
+		engine.setProperty(Engine.Property.SEMANTICS, semantics);
+		return engine;
+	}
+
+	private void writeFailure(String failure) {
+		failures++;
+		System.err.println(failure);
+	}
+
+	public int getFailures() {
+		return failures;
+	}
+
+}
@@ -1,5 +1,7 @@
 package nl.uu.cs.arg.shared.dialogue;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import nl.uu.cs.arg.shared.Participant;
 import nl.uu.cs.arg.shared.dialogue.locutions.Locution;
 import nl.uu.cs.arg.shared.util.IndexedObject;
@@ -18,7 +20,7 @@ public class Move<T extends Locution> implements IndexedObject {
 	/**
 	 * A counter used to create unique move identifiers; buildMove() will use and increment this
 	 */
-	private static int uniqueMoveCounter = 0;
+	private static AtomicInteger uniqueMoveCounter = new AtomicInteger();
 	
 	/**
 	 * The internal, dialogue-unique identifier for a single move.
@@ -98,14 +100,14 @@ public class Move<T extends Locution> implements IndexedObject {
 	 */
 	public static <T extends Locution> Move<T> buildMove(Participant player, Move<? extends Locution> targetMove, T locution) {
 		// Note that the move id counter is incremented (after the Move object was instantiated)
-		return new Move<T>(uniqueMoveCounter++, player, targetMove, locution);
+		return new Move<T>(uniqueMoveCounter.getAndIncrement(), player, targetMove, locution);
 	}
 	
 	/**
 	 * Resets the internal move counter; to be used when starting a new dialogue (platform)
 	 */
 	public static void resetMoveCounter() {
-		uniqueMoveCounter = 0;
+		uniqueMoveCounter.set(0);
 	}
 
 	/**
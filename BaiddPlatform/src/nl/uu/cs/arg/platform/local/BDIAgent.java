@@ -135,10 +135,11 @@ public class BDIAgent extends DeliberatingAgent implements Agent, StrategyExpose
 				for (Constant b : exposed) {
 				
 					if (b instanceof Rule) {
-						// We add rules if it didn't exist yet and it doesn't cause any loops
-						/*if (!beliefs.ruleExists((Rule)b) && !helper.causesLoop(beliefs, (Rule)b)) {
-							beliefs.addRule((Rule)b);
-						}*/
+						// We add rules if it didn't exist yet and it doesn't cause any loops that the inference engine can't handle
+						// (A copy is added, as the rule itself is still part of the other agent's knowledge base)
+						if (!beliefs.ruleExists((Rule)b) && helper.canAdoptRule(beliefs, (Rule)b)) {
+							beliefs.addRule((Rule)((Rule)b).clone());
+						}
 					} else {
 						// We add constants and terms directly, if they are not options or the mutual goal
 						if (!dialogue.getTopicGoal().getGoalContent().equals(b) && 
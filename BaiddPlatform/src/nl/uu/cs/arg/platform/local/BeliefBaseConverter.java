@@ -0,0 +1,111 @@
+package nl.uu.cs.arg.platform.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.aspic.inference.KnowledgeBaseFile;
+import org.aspic.inference.parser.ParseException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Converts the belief bases of agent XML files to compiled knowledge base files
+ * (see {@link KnowledgeBaseFile}), so that they don't have to be parsed every time
+ * the agents are loaded. The belief base of an .agent file is written next to it,
+ * with the {@link KnowledgeBaseFile#EXTENSION} added to its name, and
+ * {@link AgentXmlData} reads it from there for as long as the agent file hasn't
+ * changed since. For a MAS file (such as a .baidd file) the belief bases of all
+ * of its agents are converted.
+ *
+ * Usage: BeliefBaseConverter file.baidd|file.agent ...
+ */
+public class BeliefBaseConverter {
+
+	private static final String XML_AGENT = "agent";
+	private static final String XML_FILE = "file";
+
+	/**
+	 * @param args The .baidd (MAS) and .agent files to convert
+	 */
+	public static void main(String[] args) {
+
+		if (args.length == 0) {
+			System.out.println("Usage: BeliefBaseConverter file.baidd|file.agent ...");
+			return;
+		}
+		for (String arg : args) {
+			try {
+				for (File compiled : convert(new File(arg))) {
+					System.out.println("Wrote " + compiled);
+				}
+			} catch (Exception e) {
+				System.out.println("An error occured during the conversion of " + arg);
+				e.printStackTrace();
+			}
+		}
+
+	}
+
+	/**
+	 * Converts the belief base of an agent file, or those of all the agents of a MAS file
+	 * @param xmlFile The agent or MAS XML file
+	 * @return The compiled knowledge base files that were written
+	 * @throws ParserConfigurationException Exception on configuring the XML parser
+	 * @throws IOException Exception on reading an input file or writing a compiled file
+	 * @throws SAXException Exception on parsing the XML structure
+	 * @throws ParseException Exception while parsing a beliefbase into Prolog-syntax knowledge
+	 */
+	public static List<File> convert(File xmlFile) throws SAXException, IOException, ParserConfigurationException, ParseException {
+
+		// A MAS file lists its agents as <agent file="..."> tags; otherwise it's an agent file itself
+		Document xmlDoc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(xmlFile);
+		NodeList agentTags = xmlDoc.getElementsByTagName(XML_AGENT);
+		List<File> agentFiles = new ArrayList<File>();
+		for (int i = 0; i < agentTags.getLength(); i++) {
+			Node file = agentTags.item(i).getAttributes() == null? null: agentTags.item(i).getAttributes().getNamedItem(XML_FILE);
+			if (file != null) {
+				agentFiles.add(new File(xmlFile.getParent() + File.separator + file.getNodeValue()));
+			}
+		}
+		if (agentFiles.isEmpty()) {
+			agentFiles.add(xmlFile);
+		}
+
+		List<File> compiled = new ArrayList<File>();
+		for (File agentFile : agentFiles) {
+			compiled.add(convertAgent(agentFile));
+		}
+		return compiled;
+
+	}
+
+	/**
+	 * Converts the belief base of a single agent file (again, if it was converted before)
+	 * @param agentFile The agent XML file
+	 * @return The compiled knowledge base file
+	 * @throws ParserConfigurationException Exception on configuring the XML parser
+	 * @throws IOException Exception on reading the agent file or writing the compiled file
+	 * @throws SAXException Exception on parsing the XML structure
+	 * @throws ParseException Exception while parsing the beliefbase into Prolog-syntax knowledge
+	 */
+	public static File convertAgent(File agentFile) throws SAXException, IOException, ParserConfigurationException, ParseException {
+
+		// Remove an earlier conversion first, so that the belief base is parsed from the agent file itself
+		File compiled = KnowledgeBaseFile.getCompiledFile(agentFile);
+		if (compiled.exists()) {
+			compiled.delete();
+		}
+		AgentXmlData agent = AgentXmlData.loadAgentDataFromXml(agentFile.getName(), agentFile);
+		KnowledgeBaseFile.write(agent.getBeliefBase(), compiled);
+		return compiled;
+
+	}
+
+}
@@ -2,9 +2,14 @@ package nl.uu.cs.arg.platform.local;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import nl.uu.cs.arg.shared.dialogue.DialogueException;
@@ -15,24 +20,37 @@ import nl.uu.cs.arg.shared.dialogue.locutions.ArgueLocution;
 import nl.uu.cs.arg.shared.dialogue.locutions.Locution;
 import nl.uu.cs.arg.shared.dialogue.locutions.WhyLocution;
 
+import org.aspic.inference.BuiltIn;
 import org.aspic.inference.Constant;
 import org.aspic.inference.ConstantList;
 import org.aspic.inference.Engine;
 import org.aspic.inference.Engine.Property;
 import org.aspic.inference.Element;
 import org.aspic.inference.KnowledgeBase;
+import org.aspic.inference.NegationAsFailure;
 import org.aspic.inference.Query;
 import org.aspic.inference.Reasoner;
 import org.aspic.inference.ReasonerException;
 import org.aspic.inference.Rule;
 import org.aspic.inference.RuleArgument;
+import org.aspic.inference.Term;
 import org.aspic.inference.parser.ParseException;
 
 public class StrategyHelper {
 	
 	public static StrategyHelper DefaultHelper = new StrategyHelper(Reasoner.PREFERRED_CREDULOUS);
 	
+	// The number of knowledge bases whose engines are kept (the engine of the one queried least recently is dropped)
+	private static final int MAX_ENGINES = 32;
+	
 	private Reasoner reasonerToUse;
+	
+	// Whether the engines table arguments, which makes them stop on rules that loop (see canAdoptRule)
+	private boolean tabling = true;
+	
+	// The engines of the knowledge bases queried last, most recently queried first; every agent that uses this
+	// helper keeps an engine (and it's query cache) of its own, as long as the same knowledge is queried
+	private LinkedList<KnowledgeBaseEngine> engines = new LinkedList<KnowledgeBaseEngine>();
 
 	public StrategyHelper(Reasoner reasonerToUse) {
 		this.reasonerToUse = reasonerToUse;
@@ -46,6 +64,16 @@ public class StrategyHelper {
 		this.reasonerToUse = reasonerToUse;
 	}
 
+	public boolean isTabling() {
+		return tabling;
+	}
+
+	public synchronized void setTabling(boolean tabling) {
+		this.tabling = tabling;
+		// The engines are built again with the new setting
+		engines.clear();
+	}
+
 	/**
 	 * Run a single query on some knowledge base and find all the proofs for it. This
 	 * uses the ASPIC logic reasoner. It may add specific knowledge for this query
@@ -60,17 +88,17 @@ public class StrategyHelper {
 	 */
 	public List<RuleArgument> findProof(ConstantList query, Double needed, KnowledgeBase kb, List<Rule> addKnowledge, Constant requiredPremise) throws ParseException, ReasonerException {
 		
-		//KnowledgeBase useKb = (KnowledgeBase) kb.clone(); // KnowledgeBase.clone() leaks memory!
-		KnowledgeBase useKb = kb;
-		// Add new knowledge
-		if (addKnowledge != null) {
-			useKb.addRules(addKnowledge);
-		} 
-		
 		// Start the reasoning engine on our query
-		Engine engine = new Engine(useKb);
-		engine.setProperty(Property.SEMANTICS, this.getReasonerToUse());
-		Query runQuery = engine.createQuery(query);
+		// (Other threads may query the same knowledge base, so the semantics are set and the query is created under
+		// one lock; the query is a copy of our own if it was answered from the query cache)
+		Engine engine = getEngine(kb, addKnowledge);
+		Query runQuery;
+		synchronized (engine) {
+			if (engine.getProperty(Property.SEMANTICS) != this.getReasonerToUse()) {
+				engine.setProperty(Property.SEMANTICS, this.getReasonerToUse());
+			}
+			runQuery = engine.createQuery(query);
+		}
 		List<RuleArgument> proofs = new LinkedList<RuleArgument>();
 		for (RuleArgument proof: runQuery.getProof()) {
 			// Throw away trivial undercutter counter-arguments: these are not allowed by ASPIC but the implementation does return them
@@ -88,14 +116,72 @@ public class StrategyHelper {
 			}
 		}
 		
-		// Remove added knowledge
-		if (addKnowledge != null)
-			for (Rule r : addKnowledge) { kb.removeRule(r); }
-		
 		return proofs;
 		
 	}
 
+	/**
+	 * Get an engine for querying some knowledge base with some extra knowledge. Every knowledge
+	 * base has an engine of its own, which is used again if the knowledge is the same as in the
+	 * last call for that knowledge base, so that a question that was asked before (e.g. for a 
+	 * counter-argument) is answered from the engine's query cache.
+	 * @param kb A reference to knowledge base to query against
+	 * @param addKnowledge A set of rules to add to the knowledge base first (which won't be added to the kb permanently)
+	 * @return An engine with the query cache switched on
+	 */
+	private synchronized Engine getEngine(KnowledgeBase kb, List<Rule> addKnowledge) {
+		// Find the knowledge base's engine (by identity, as equal knowledge bases may still change differently)
+		KnowledgeBaseEngine kbEngine = null;
+		for (Iterator<KnowledgeBaseEngine> i = engines.iterator(); i.hasNext(); ) {
+			KnowledgeBaseEngine candidate = i.next();
+			if (candidate.kb == kb) {
+				i.remove();
+				kbEngine = candidate;
+				break;
+			}
+		}
+		if (kbEngine == null) {
+			kbEngine = new KnowledgeBaseEngine(kb);
+			if (engines.size() >= MAX_ENGINES) {
+				engines.removeLast();
+			}
+		}
+		engines.addFirst(kbEngine);
+		
+		if (kbEngine.engine == null || kbEngine.kbVersion != kb.getVersion() || 
+				(addKnowledge == null ? kbEngine.addKnowledge != null : !addKnowledge.equals(kbEngine.addKnowledge))) {
+			// Add new knowledge to an overlay of the knowledge base, which leaves the knowledge base itself untouched
+			// (A new overlay is needed whenever the knowledge base itself has changed)
+			KnowledgeBase useKb = kb;
+			if (addKnowledge != null) {
+				useKb = kb.overlay();
+				useKb.addRules(addKnowledge);
+			}
+			Engine engine = new Engine(useKb);
+			engine.setProperty(Property.QUERY_CACHE, Engine.OnOff.ON);
+			engine.setProperty(Property.SEMANTICS, this.getReasonerToUse());
+			engine.setProperty(Property.TABLING, tabling ? Engine.OnOff.ON : Engine.OnOff.OFF);
+			kbEngine.engine = engine;
+			kbEngine.kbVersion = kb.getVersion();
+			kbEngine.addKnowledge = (addKnowledge == null ? null : new ArrayList<Rule>(addKnowledge));
+		}
+		return kbEngine.engine;
+	}
+	
+	/**
+	 * The engine that a knowledge base is queried with, and the knowledge it was built for
+	 */
+	private static class KnowledgeBaseEngine {
+		private final KnowledgeBase kb;
+		private long kbVersion = -1;
+		private List<Rule> addKnowledge = null;
+		private Engine engine = null;
+		
+		private KnowledgeBaseEngine(KnowledgeBase kb) {
+			this.kb = kb;
+		}
+	}
+
 	/**
 	 * Determines which goals are satisfied by the supplied option
 	 * @param option The option to check goal satisfaction for
@@ -332,12 +418,82 @@ public class StrategyHelper {
 	}
 
 	/**
-	 * Look whether a new rule would cause a loop when applying rules (which is a way of circular reasoning not
-	 * supported by the AspicInference project)
+	 * Look whether a new rule can be adopted, i.e. whether querying the rule pool still ends once it has 
+	 * been added. If the engines table arguments (see isTabling), any loop that asks for the same literal 
+	 * again stops, so the rule can be adopted unless one of the rules it leads to makes terms deeper, like 
+	 * p(X) <- p(f(X)) does, as that loop asks for a new literal every time round. Without tabling, a rule 
+	 * can only be adopted if it doesn't cause a loop at all.
+	 * @param beliefs The current rule pool
+	 * @param newRule The new rule we are looking to add
+	 * @return True if the new rule can be added, false otherwise
+	 */
+	public boolean canAdoptRule(KnowledgeBase beliefs, Rule newRule) {
+		if (!tabling) {
+			return !causesLoop(beliefs, newRule);
+		}
+		// Index the rules on the tag of their consequent, so that only the rules for a literal are tried
+		Map<String, List<Rule>> rulesByTag = new HashMap<String, List<Rule>>();
+		List<Rule> allRules = beliefs.getRules();
+		allRules.add(newRule);
+		for (Rule r : allRules) {
+			List<Rule> rules = rulesByTag.get(r.getConsequent().ruleTag());
+			if (rules == null) {
+				rules = new ArrayList<Rule>();
+				rulesByTag.put(r.getConsequent().ruleTag(), rules);
+			}
+			rules.add(r);
+		}
+		// Check every rule that can be applied once the new rule is (each of them once)
+		Set<Rule> reached = Collections.newSetFromMap(new IdentityHashMap<Rule, Boolean>());
+		LinkedList<Rule> toCheck = new LinkedList<Rule>();
+		reached.add(newRule);
+		toCheck.add(newRule);
+		while (!toCheck.isEmpty()) {
+			for (Element a : toCheck.removeFirst().getAntecedent()) {
+				if (deepensTerms(a)) {
+					return false;
+				}
+				List<Rule> rules = (a instanceof Constant ? rulesByTag.get(((Constant)a).ruleTag()) : null);
+				if (rules != null) {
+					for (Rule r : rules) {
+						if (r.getConsequent().isUnifiable(a) && reached.add(r)) {
+							toCheck.add(r);
+						}
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	// Whether an antecedent asks for a literal with a compound term that has a variable in it, e.g. p(f(X))
+	private boolean deepensTerms(Element antecedent) {
+		while (antecedent instanceof Term && (antecedent instanceof NegationAsFailure || ((Term)antecedent).getFunctor().equals("~"))) {
+			antecedent = ((Term)antecedent).getArg(0);
+		}
+		if (!(antecedent instanceof Term) || antecedent instanceof BuiltIn) {
+			// A constant, or a built-in such as X > 2, which doesn't apply rules
+			return false;
+		}
+		Term literal = (Term)antecedent;
+		for (int i = 0; i < literal.numberOfArgs(); i++) {
+			Element arg = literal.getArg(i);
+			if (arg instanceof Term && !((Term)arg).isGrounded()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Look whether a new rule would cause a loop when applying rules (i.e. a way of circular reasoning)
 	 * @param beliefs The current rule pool
 	 * @param newRule The new rule we are looking to add
 	 * @return True if the new rule would cause a loop, false otherwise
+	 * @deprecated The AspicInference project tables the arguments for recursive rules, so use canAdoptRule,
+	 * which only refuses a loop that tabling can't stop
 	 */
+	@Deprecated
 	public boolean causesLoop(KnowledgeBase beliefs, Rule newRule) {
 		List<Rule> applied = new ArrayList<Rule>();
 		List<Rule> newRules = beliefs.getRules();
@@ -374,4 +530,4 @@ public class StrategyHelper {
 		return false;
 	}
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,208 @@
+package nl.uu.cs.arg.platform.local;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.sax.SAXSource;
+
+import org.w3c.dom.Document;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+/**
+ * Reads the text of an element of an XML file, such as the <beliefbase> of an agent file, as a character
+ * stream. The file is read with a (StAX) pull parser, up to the start of the first element with the given
+ * name and then only as far as the text is read, so the text can be parsed one rule at a time (see
+ * org.aspic.inference.parser.RuleReader) without all of it being in memory at once, as it would be in a
+ * DOM tree. The text of any nested elements is included; comments are not. Use parseDocumentWithout to
+ * read the rest of the file into a DOM tree.
+ */
+public class XmlElementReader extends Reader {
+
+	// Asks the JDK's parsers to report a long CDATA section in chunks, rather than as one piece
+	private static final String CDATA_CHUNK_SIZE = "jdk.xml.cdataChunkSize";
+	private static final int CHUNK_SIZE = 8192;
+
+	private InputStream input;
+	private XMLStreamReader xml;
+	private int depth = 0; // The nesting depth within the element, or 0 if the element wasn't found or has been read
+	private int offset = -1; // The number of characters of the current text event that have been read, or -1 outside text
+
+	/**
+	 * Opens an XML file to read the text of one of its elements
+	 * @param xmlFile The XML file to read
+	 * @param tagName The name of the element; if the file has more than one, the first is read
+	 * @throws IOException Exception on reading the file or parsing the XML structure up to the element
+	 */
+	public XmlElementReader(File xmlFile, String tagName) throws IOException {
+		input = new BufferedInputStream(new FileInputStream(xmlFile));
+		try {
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			try {
+				factory.setProperty(CDATA_CHUNK_SIZE, CHUNK_SIZE);
+			} catch (IllegalArgumentException e) {
+				// Not supported by this parser, so a CDATA section is reported in one piece
+			}
+			xml = factory.createXMLStreamReader(xmlFile.toURI().toString(), input);
+			while (xml.hasNext()) {
+				if (xml.next() == XMLStreamConstants.START_ELEMENT && xml.getLocalName().equals(tagName)) {
+					depth = 1;
+					break;
+				}
+			}
+		} catch (XMLStreamException e) {
+			close();
+			throw new IOException("Cannot parse " + xmlFile + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Whether the file has the element at all
+	 * @return True if the element was found and its text hasn't been read completely yet
+	 */
+	public boolean isFound() {
+		return depth > 0;
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		try {
+			while (depth > 0) {
+				if (offset >= 0) {
+					// Copy the next part of the current text event
+					int length = Math.min(len, xml.getTextLength() - offset);
+					if (length > 0) {
+						System.arraycopy(xml.getTextCharacters(), xml.getTextStart() + offset, cbuf, off, length);
+						offset += length;
+						return length;
+					}
+					offset = -1;
+				}
+				switch (xml.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					depth++;
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					depth--;
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					offset = 0;
+					break;
+				}
+			}
+			return -1;
+		} catch (XMLStreamException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		depth = 0;
+		try {
+			if (xml != null) {
+				xml.close();
+			}
+		} catch (XMLStreamException e) {
+			// The input stream is closed below anyway
+		}
+		input.close();
+	}
+
+	/**
+	 * Parses an XML file into a DOM tree, but leaves out the text of the elements with a given name (which can
+	 * be read with an XmlElementReader instead), as well as comments
+	 * @param xmlFile The XML file to read
+	 * @param tagName The name of the elements whose text is left out; the elements themselves are in the tree
+	 * @return The DOM tree
+	 * @throws ParserConfigurationException Exception on configuring the XML parser
+	 * @throws IOException Exception on reading the input file
+	 * @throws SAXException Exception on parsing the XML structure
+	 */
+	public static Document parseDocumentWithout(File xmlFile, final String tagName) throws SAXException, IOException, ParserConfigurationException {
+
+		XMLReader parser = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+		try {
+			parser.setProperty(CDATA_CHUNK_SIZE, CHUNK_SIZE);
+		} catch (SAXException e) {
+			// Not supported by this parser, so a CDATA section is reported in one piece
+		}
+		XMLFilterImpl filter = new XMLFilterImpl(parser) {
+			private int depth = 0; // The nesting depth within a left out element
+
+			@Override
+			public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+				if (depth > 0 || qName.equals(tagName)) {
+					depth++;
+				}
+				super.startElement(uri, localName, qName, atts);
+			}
+
+			@Override
+			public void endElement(String uri, String localName, String qName) throws SAXException {
+				if (depth > 0) {
+					depth--;
+				}
+				super.endElement(uri, localName, qName);
+			}
+
+			@Override
+			public void characters(char[] ch, int start, int length) throws SAXException {
+				if (depth == 0) {
+					super.characters(ch, start, length);
+				}
+			}
+
+			@Override
+			public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+				if (depth == 0) {
+					super.ignorableWhitespace(ch, start, length);
+				}
+			}
+
+			@Override
+			public void setProperty(String name, Object value) throws SAXNotRecognizedException {
+				// Comments (which are lexical events) would pass the filter, so they aren't passed on at all
+				throw new SAXNotRecognizedException(name);
+			}
+		};
+
+		DOMResult result = new DOMResult();
+		try {
+			TransformerFactory.newInstance().newTransformer().transform(new SAXSource(filter, new InputSource(xmlFile.toURI().toString())), result);
+		} catch (TransformerException e) {
+			if (e.getException() instanceof SAXException) {
+				throw (SAXException) e.getException();
+			}
+			if (e.getException() instanceof IOException) {
+				throw (IOException) e.getException();
+			}
+			throw new SAXException(e);
+		}
+		return (Document) result.getNode();
+
+	}
+
+}
@@ -1,5 +1,7 @@
 package nl.uu.cs.arg.persuasion.model.dialogue;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import nl.uu.cs.arg.persuasion.model.PersuasionParticipant;
 import nl.uu.cs.arg.shared.dialogue.locutions.Locution;
 import nl.uu.cs.arg.shared.dialogue.locutions.SurrenderingLocution;
@@ -24,7 +26,7 @@ public class PersuasionMove<T extends Locution> implements IndexedObject {
     /**
      * A counter used to create unique move identifiers; buildMove() will use and increment this
      */
-    private static int uniqueMoveCounter = 0;
+    private static AtomicInteger uniqueMoveCounter = new AtomicInteger();
 
     /**
      * The index of the move in the sequence of moves that are added to the dialogue.
@@ -171,14 +173,14 @@ public class PersuasionMove<T extends Locution> implements IndexedObject {
      */
     public static <T extends Locution> PersuasionMove<T> buildMove(PersuasionParticipant player, PersuasionMove<? extends Locution> targetMove, T locution) {
         // Note that the move id counter is incremented (after the Move object was instantiated)
-        return new PersuasionMove<T>(uniqueMoveCounter++, player, targetMove, locution);
+        return new PersuasionMove<T>(uniqueMoveCounter.getAndIncrement(), player, targetMove, locution);
     }
 
     /**
      * Resets the internal move counter; to be used when starting a new dialogue (platform)
      */
     public static void resetMoveCounter() {
-        uniqueMoveCounter = 0;
+        uniqueMoveCounter.set(0);
     }
 
     /**
@@ -2,18 +2,18 @@ package nl.uu.cs.arg.persuasion.platform.local;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.StringReader;
 import java.util.HashMap;
 import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
+import nl.uu.cs.arg.platform.local.XmlElementReader;
+
 import org.aspic.inference.KnowledgeBase;
+import org.aspic.inference.KnowledgeBaseFile;
 import org.aspic.inference.parser.ParseException;
-import org.aspic.inference.parser.PrologSyntax;
+import org.aspic.inference.parser.RuleReader;
 import org.w3c.dom.Document;
-import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
@@ -33,32 +33,30 @@ public class AgentXmlData {
     private Map<String, Object> properties;
 
     public static AgentXmlData loadAgentDataFromXml(String name, File xmlFile) throws SAXException, IOException, ParserConfigurationException, ParseException {
-        // Read the XML file using a DOM parser
-        DocumentBuilderFactory xmlDocFactory = DocumentBuilderFactory.newInstance();
-        //xmlDocFactory.setCoalescing(true);
-        xmlDocFactory.setIgnoringComments(true);
-        //xmlDocFactory.setIgnoringElementContentWhitespace(true);
-        Document xmlDoc = xmlDocFactory.newDocumentBuilder().parse(xmlFile);
-        PrologSyntax prologSyntax = new PrologSyntax(new StringReader("")); // A reuseable Prolog syntax parser
-
-        // Read the <beliefbase> tag
-        NodeList bbTags = xmlDoc.getElementsByTagName(XML_BELIEFBASE);
+        // Read the XML file using a DOM parser, apart from the <beliefbase> contents, which can be very large
+        Document xmlDoc = XmlElementReader.parseDocumentWithout(xmlFile, XML_BELIEFBASE);
+
+        // Read the <beliefbase> tag, unless its compiled form is up to date (see nl.uu.cs.arg.platform.local.BeliefBaseConverter)
         KnowledgeBase beliefbase = null;
-        if (bbTags != null && bbTags.getLength() > 0 && bbTags.item(0).getChildNodes().getLength() > 0) {
-            for (int i = 0; i < bbTags.item(0).getChildNodes().getLength(); i++) {
-                Node node = bbTags.item(0).getChildNodes().item(i);
-                if (node != null && node.getTextContent() != null) {
-                    // Read the string contents into a parsed KnowledgeBase
-                    String content = node.getTextContent().trim();
-                    if (!content.equals("")) {
-                        prologSyntax.ReInit(new StringReader(content));
-                        beliefbase = prologSyntax.Knowledge();
-                    }
-                }
+        if (KnowledgeBaseFile.isCompiled(xmlFile)) {
+            File compiledFile = KnowledgeBaseFile.getCompiledFile(xmlFile);
+            try {
+                beliefbase = KnowledgeBaseFile.read(compiledFile);
+            } catch (IOException e) {
+                warnCompiledUnreadable(compiledFile, e);
+            } catch (RuntimeException e) {
+                // A corrupt file may not be noticed until its contents don't make sense
+                warnCompiledUnreadable(compiledFile, e);
             }
         }
         if (beliefbase == null) {
-            beliefbase = new KnowledgeBase();
+            // Stream the contents into a KnowledgeBase, one parsed rule at a time
+            XmlElementReader bbReader = new XmlElementReader(xmlFile, XML_BELIEFBASE);
+            try {
+                beliefbase = new RuleReader(bbReader).readKnowledgeBase();
+            } finally {
+                bbReader.close();
+            }
         }
 
         // Read the <properties> tag
@@ -93,6 +91,11 @@ public class AgentXmlData {
         return new AgentXmlData(name, beliefbase, properties);
     }
 
+    // Warns that the compiled form of a belief base can't be read (e.g. it is of an older version, corrupt or truncated), so the <beliefbase> tag is parsed instead
+    private static void warnCompiledUnreadable(File compiledFile, Exception e) {
+        System.err.println("Warning: cannot read " + compiledFile + " (" + e.getMessage() + "); the <" + XML_BELIEFBASE + "> tag is parsed instead");
+    }
+
     public AgentXmlData(String name, KnowledgeBase beliefBase, Map<String, Object> properties) {
         this.name = name;
         this.beliefBase = beliefBase;
@@ -1,6 +1,7 @@
 package nl.uu.cs.arg.persuasion.platform.local.agentimpl;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -26,8 +27,15 @@ public class StrategyHelper {
 
     public static StrategyHelper DefaultHelper = new StrategyHelper(Reasoner.PREFERRED_CREDULOUS);
 
+    // The number of knowledge bases whose engines are kept (the engine of the one queried least recently is dropped)
+    private static final int MAX_ENGINES = 32;
+
     private Reasoner reasonerToUse;
 
+    // The engines of the knowledge bases queried last, most recently queried first; every agent that uses this
+    // helper keeps an engine (and it's query cache) of its own
+    private LinkedList<Engine> engines = new LinkedList<Engine>();
+
     public StrategyHelper(Reasoner reasonerToUse) {
         this.reasonerToUse = reasonerToUse;
     }
@@ -53,13 +61,17 @@ public class StrategyHelper {
      */
     public List<RuleArgument> findProof(ConstantList query, Double needed, KnowledgeBase kb, Constant requiredPremise) throws ParseException, ReasonerException {
 
-        //KnowledgeBase useKb = (KnowledgeBase) kb.clone(); // KnowledgeBase.clone() leaks memory!
-        KnowledgeBase useKb = kb;
-
         // Start the reasoning engine on our query
-        Engine engine = new Engine(useKb);
-        engine.setProperty(Property.SEMANTICS, this.getReasonerToUse());
-        Query runQuery = engine.createQuery(query);
+        // (Other threads may query the same knowledge base, so the semantics are set and the query is created under
+        // one lock; the query is a copy of our own if it was answered from the query cache)
+        Engine engine = getEngine(kb);
+        Query runQuery;
+        synchronized (engine) {
+            if (engine.getProperty(Property.SEMANTICS) != this.getReasonerToUse()) {
+                engine.setProperty(Property.SEMANTICS, this.getReasonerToUse());
+            }
+            runQuery = engine.createQuery(query);
+        }
         List<RuleArgument> proofs = new LinkedList<RuleArgument>();
         for (RuleArgument proof: runQuery.getProof()) {
             // Throw away trivial undercutter counter-arguments: these are not allowed by ASPIC but the implementation does return them
@@ -80,6 +92,38 @@ public class StrategyHelper {
         return proofs;
     }
 
+    /**
+     * Get an engine for querying some knowledge base. Every knowledge base has an engine of
+     * its own, which is used again for every call, so that a question that was asked before
+     * (e.g. for a rebuttal) is answered from the engine's query cache, as long as the knowledge
+     * base hasn't changed in a way that affects the answer.
+     * @param kb A reference to knowledge base to query against
+     * @return An engine with the query cache switched on
+     */
+    private synchronized Engine getEngine(KnowledgeBase kb) {
+        //KnowledgeBase useKb = (KnowledgeBase) kb.clone(); // KnowledgeBase.clone() leaks memory!
+        // Find the knowledge base's engine (by identity, as equal knowledge bases may still change differently)
+        Engine engine = null;
+        for (Iterator<Engine> i = engines.iterator(); i.hasNext(); ) {
+            Engine candidate = i.next();
+            if (candidate.getKnowledgeBaseSource().getKnowledgeBase() == kb) {
+                i.remove();
+                engine = candidate;
+                break;
+            }
+        }
+        if (engine == null) {
+            engine = new Engine(kb);
+            engine.setProperty(Property.QUERY_CACHE, Engine.OnOff.ON);
+            engine.setProperty(Property.SEMANTICS, this.getReasonerToUse());
+            if (engines.size() >= MAX_ENGINES) {
+                engines.removeLast();
+            }
+        }
+        engines.addFirst(engine);
+        return engine;
+    }
+
     private boolean onBasisOfConstant(Constant p, RuleArgument arg) {
         if (arg.getClaim().isEqualModuloVariables(p)) {
             return true;